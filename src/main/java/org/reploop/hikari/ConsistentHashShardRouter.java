@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A {@link ShardRouter} that places each shard at a number of pseudo-random points of a hash ring, and routes
+ * a key to the shard of the first point at or after the hash of the key.  When a shard is added, only the
+ * keys that hash just before its points move, so adding the (n+1)th shard moves about 1/(n+1) of the keys,
+ * all of them to the new shard.
+ * <p>
+ * Keys are hashed from their {@code toString()} representation, so that keys route to the same shard in
+ * every JVM.
+ *
+ * @author Brett Wooldridge
+ */
+public final class ConsistentHashShardRouter implements ShardRouter {
+   private static final int DEFAULT_VIRTUAL_NODES = 160;
+
+   private final int virtualNodes;
+   // copy-on-write, shards are added rarely and keys are routed on every getConnection()
+   private volatile TreeMap<Long, String> ring;
+
+   /**
+    * Construct a ConsistentHashShardRouter with 160 points per shard.
+    */
+   public ConsistentHashShardRouter() {
+      this(DEFAULT_VIRTUAL_NODES);
+   }
+
+   /**
+    * Construct a ConsistentHashShardRouter.  More points per shard even out the share of the keys of each
+    * shard, at the cost of a larger ring.
+    *
+    * @param virtualNodes the number of points of each shard on the ring
+    */
+   public ConsistentHashShardRouter(final int virtualNodes) {
+      if (virtualNodes < 1) {
+         throw new IllegalArgumentException("virtualNodes cannot be less than 1");
+      }
+
+      this.virtualNodes = virtualNodes;
+      this.ring = new TreeMap<>();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public synchronized void addShard(final String shardId) {
+      final TreeMap<Long, String> newRing = new TreeMap<>(ring);
+      for (int i = 0; i < virtualNodes; i++) {
+         newRing.putIfAbsent(hash(shardId + "#" + i), shardId);
+      }
+      ring = newRing;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String route(final Object shardKey) {
+      final TreeMap<Long, String> current = ring;
+      if (current.isEmpty()) {
+         return null;
+      }
+
+      final Map.Entry<Long, String> entry = current.ceilingEntry(hash(String.valueOf(shardKey)));
+      return (entry != null ? entry : current.firstEntry()).getValue();
+   }
+
+   /**
+    * 64-bit FNV-1a of the UTF-8 bytes, followed by the MurmurHash3 finalizer to spread similar keys
+    * around the whole ring.
+    */
+   private static long hash(final String value) {
+      long h = 0xcbf29ce484222325L;
+      for (byte b : value.getBytes(UTF_8)) {
+         h ^= b;
+         h *= 0x100000001b3L;
+      }
+
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+   }
+}
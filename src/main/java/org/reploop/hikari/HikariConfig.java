@@ -18,6 +18,8 @@ package org.reploop.hikari;
 
 import com.codahale.metrics.health.HealthCheckRegistry;
 import org.reploop.hikari.metrics.MetricsTrackerFactory;
+import org.reploop.hikari.pool.PoolRuntime;
+import org.reploop.hikari.util.ConcurrentBag.IdleOrdering;
 import org.reploop.hikari.util.PropertyElf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +35,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.security.AccessControlException;
 import java.sql.Connection;
+import java.sql.Statement;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
@@ -43,6 +46,7 @@ import java.util.concurrent.ThreadLocalRandom;
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.reploop.hikari.util.UtilityElf.getNullIfEmpty;
+import static org.reploop.hikari.util.UtilityElf.maskJdbcUrls;
 import static org.reploop.hikari.util.UtilityElf.safeIsAssignableFrom;
 
 @SuppressWarnings({"SameParameterValue", "unused"})
@@ -55,6 +59,7 @@ public class HikariConfig implements HikariConfigMXBean {
    private static final long IDLE_TIMEOUT = MINUTES.toMillis(10);
    private static final long MAX_LIFETIME = MINUTES.toMillis(30);
    private static final int DEFAULT_POOL_SIZE = 10;
+   private static final String TENANT_QUOTAS_PATTERN = "\\s*[^=,\\s]+\\s*=\\s*[1-9]\\d*\\s*(,\\s*[^=,\\s]+\\s*=\\s*[1-9]\\d*\\s*)*";
 
    private static boolean unitTest = false;
 
@@ -65,6 +70,7 @@ public class HikariConfig implements HikariConfigMXBean {
    private volatile long validationTimeout;
    private volatile long idleTimeout;
    private volatile long leakDetectionThreshold;
+   private volatile long holdProfileThreshold;
    private volatile long maxLifetime;
    private volatile int maxPoolSize;
    private volatile int minIdle;
@@ -74,24 +80,40 @@ public class HikariConfig implements HikariConfigMXBean {
    // Properties NOT changeable at runtime
    //
    private long initializationFailTimeout;
+   private long shutdownTimeout;
+   private int preScaleAggressiveness;
+   private int maxConcurrentRetirements;
+   private int sqlMetricsSize;
+   private int batchCoalescingSize;
+   private int coalescedUpdateCount;
+   private long fetchMemoryLimit;
    private String connectionInitSql;
    private String connectionTestQuery;
    private String dataSourceClassName;
    private String dataSourceJndiName;
    private String driverClassName;
    private String jdbcUrl;
+   private String jdbcUrls;
+   private String fatalSqlStates;
+   private String tenantQuotas;
    private String poolName;
    private String schema;
    private String transactionIsolationName;
+   private String idleOrdering;
+   private String warmStartProfile;
    private boolean isAutoCommit;
    private boolean isReadOnly;
    private boolean isIsolateInternalQueries;
    private boolean isRegisterMbeans;
    private boolean isAllowPoolSuspension;
+   private boolean isTransactionScopedPooling;
+   private boolean isSessionStateAffinity;
+   private boolean isMakeBeforeBreak;
    private DataSource dataSource;
    private Properties dataSourceProperties;
    private ThreadFactory threadFactory;
    private ScheduledExecutorService scheduledExecutor;
+   private PoolRuntime poolRuntime;
    private MetricsTrackerFactory metricsTrackerFactory;
    private Object metricRegistry;
    private Object healthCheckRegistry;
@@ -114,6 +136,7 @@ public class HikariConfig implements HikariConfigMXBean {
       idleTimeout = IDLE_TIMEOUT;
       initializationFailTimeout = 1;
       isAutoCommit = true;
+      coalescedUpdateCount = Statement.SUCCESS_NO_INFO;
 
       String systemProp = System.getProperty("hikaricp.configurationFile");
       if (systemProp != null) {
@@ -222,6 +245,22 @@ public class HikariConfig implements HikariConfigMXBean {
       this.leakDetectionThreshold = leakDetectionThresholdMs;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public long getHoldProfileThreshold() {
+      return holdProfileThreshold;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setHoldProfileThreshold(long holdProfileThresholdMs) {
+      this.holdProfileThreshold = holdProfileThresholdMs;
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -506,6 +545,83 @@ public class HikariConfig implements HikariConfigMXBean {
       this.jdbcUrl = jdbcUrl;
    }
 
+   /**
+    * Get the JDBC URLs of the endpoints of a multi-host pool.
+    *
+    * @return the whitespace separated JDBC URLs, or null if the pool uses a single endpoint
+    */
+   public String getJdbcUrls() {
+      return jdbcUrls;
+   }
+
+   /**
+    * Set the JDBC URLs of the endpoints of a multi-host pool, in order of preference and separated by whitespace.
+    * Each new connection is created on the endpoint with the best recent connection success rate and connect
+    * latency.  When a connection attempt to an endpoint fails, or a connection to it fails with an SQLSTATE of
+    * class 08 (connection exception) or 57P0x (server shutdown), the endpoint is marked down, all of its
+    * connections are evicted and new connections go to the next best endpoint.  Endpoints that are down are
+    * probed in the background and receive new connections again once a probe succeeds.  Used instead of
+    * jdbcUrl, with the driver given by driverClassName or resolved from the URLs.
+    *
+    * @param jdbcUrls the whitespace separated JDBC URLs
+    */
+   public void setJdbcUrls(String jdbcUrls) {
+      checkIfSealed();
+      this.jdbcUrls = jdbcUrls;
+   }
+
+   /**
+    * Get the SQLSTATEs that indicate every connection of the pool is dead.
+    *
+    * @return the comma separated SQLSTATEs, or null if fatal state propagation is disabled
+    */
+   public String getFatalSqlStates() {
+      return fatalSqlStates;
+   }
+
+   /**
+    * Set the SQLSTATEs that indicate every connection of the pool is dead, for example {@code 57P01,57P02} for a
+    * PostgreSQL server restart.  When a connection fails with one of these states, besides evicting it the pool
+    * validates all idle connections in the background, on up to maximumPoolSize threads of its own, evicting the
+    * dead ones, and closes the connections in use when they are returned, instead of discovering each dead
+    * connection at its next borrow.  Propagation happens at most once per second however many connections see the
+    * state.  Setting this also makes the pool close any connection evicted while in use as soon as it is returned,
+    * rather than at its next borrow.  Default: none
+    *
+    * @param fatalSqlStates the comma separated SQLSTATEs
+    */
+   public void setFatalSqlStates(String fatalSqlStates) {
+      checkIfSealed();
+      this.fatalSqlStates = fatalSqlStates;
+   }
+
+   /**
+    * Get the per-tenant connection quotas.
+    *
+    * @return the comma separated tenant=quota pairs, or null if tenant quotas are disabled
+    */
+   public String getTenantQuotas() {
+      return tenantQuotas;
+   }
+
+   /**
+    * Set the per-tenant connection quotas, as comma separated {@code tenant=quota} pairs, for example
+    * {@code billing=8,reports=2,*=4}, where {@code *} is the quota of every tenant not listed.  Connections
+    * are borrowed for a tenant with {@code getConnection(String tenantId)}; connections borrowed without a
+    * tenant count against the unlisted tenant quota.
+    * <p>
+    * A tenant always gets a connection within its quota before any tenant beyond its own.  Quota that is not
+    * in use is lent to tenants that have used up theirs, and when connections are contended waiters are
+    * served in order of their tenant's connections in use relative to its quota, so that one busy tenant
+    * cannot hold every connection of the pool at the expense of the others.  Default: none
+    *
+    * @param tenantQuotas the comma separated tenant=quota pairs
+    */
+   public void setTenantQuotas(String tenantQuotas) {
+      checkIfSealed();
+      this.tenantQuotas = tenantQuotas;
+   }
+
    /**
     * Get the default auto-commit behavior of connections in the pool.
     *
@@ -546,6 +662,146 @@ public class HikariConfig implements HikariConfigMXBean {
       this.isAllowPoolSuspension = isAllowPoolSuspension;
    }
 
+   /**
+    * Get whether connections handed out by the pool are transaction-scoped.
+    *
+    * @return true if transaction-scoped pooling is enabled
+    */
+   public boolean isTransactionScopedPooling() {
+      return isTransactionScopedPooling;
+   }
+
+   /**
+    * Set whether connections handed out by the pool are transaction-scoped.  A transaction-scoped connection
+    * only holds a physical connection from the first statement execution until commit or rollback (or, in
+    * auto-commit mode, until its last open statement is closed), so that many long-lived logical connections
+    * can share a small pool.  Statements, prepared statements in particular, remain usable across transactions:
+    * while any are open the physical connection is kept at commit or rollback, and it is released once the last
+    * of them is closed outside a transaction.  Session state other than auto-commit, read-only, isolation,
+    * catalog, schema and network timeout (for example temporary tables or session variables) is not carried
+    * over when a later transaction runs on a different physical connection.
+    *
+    * @param isTransactionScopedPooling the desired transaction-scoped pooling behavior
+    */
+   public void setTransactionScopedPooling(boolean isTransactionScopedPooling) {
+      checkIfSealed();
+      this.isTransactionScopedPooling = isTransactionScopedPooling;
+   }
+
+   /**
+    * Get whether session state affinity is enabled.
+    *
+    * @return true if session state affinity is enabled
+    */
+   public boolean isSessionStateAffinity() {
+      return isSessionStateAffinity;
+   }
+
+   /**
+    * Set whether session state affinity is enabled.  When enabled, the readOnly, autoCommit, isolation, catalog
+    * and schema of a returned connection are not reset; instead the pool records the state of each connection,
+    * prefers an idle connection already in the state a borrower asks for, and changes only the attributes that
+    * differ when it hands a connection out.
+    *
+    * @param isSessionStateAffinity the desired session state affinity behavior
+    */
+   public void setSessionStateAffinity(boolean isSessionStateAffinity) {
+      checkIfSealed();
+      this.isSessionStateAffinity = isSessionStateAffinity;
+   }
+
+   /**
+    * Get the total time allowed for a parallel shutdown of the pool.
+    *
+    * @return the shutdown timeout in milliseconds, 0 if the standard shutdown is used
+    */
+   public long getShutdownTimeout() {
+      return shutdownTimeout;
+   }
+
+   /**
+    * Set the total time allowed for shutting down the pool.  When greater than zero, {@link HikariDataSource#close()}
+    * closes idle connections concurrently and aborts in-use connections on an executor shared by all pools, and
+    * returns once every connection is closed or this deadline passes, rather than closing connections one at a
+    * time for up to ten seconds or more.  The default of 0 uses the standard shutdown.
+    *
+    * @param shutdownTimeoutMs the shutdown deadline in milliseconds, or 0 for the standard shutdown
+    */
+   public void setShutdownTimeout(long shutdownTimeoutMs) {
+      checkIfSealed();
+      this.shutdownTimeout = shutdownTimeoutMs;
+   }
+
+   /**
+    * Get the aggressiveness of predictive pre-scaling, as a percentage of the projected demand.
+    *
+    * @return the pre-scaling aggressiveness, 0 if pre-scaling is disabled
+    */
+   public int getPreScaleAggressiveness() {
+      return preScaleAggressiveness;
+   }
+
+   /**
+    * Set the aggressiveness of predictive pre-scaling.  When greater than zero, the pool tracks the borrow rate
+    * and the number of active connections, projects the demand over the time it takes to create a connection,
+    * and starts creating connections before borrowers have to wait for them.  The pool is grown to this
+    * percentage of the projected demand, so 100 provisions for exactly the projection and 150 adds 50% headroom.
+    * The default of 0 only creates connections once a borrower is waiting.
+    *
+    * @param preScaleAggressiveness the percentage of the projected demand to provision for, or 0 to disable
+    */
+   public void setPreScaleAggressiveness(int preScaleAggressiveness) {
+      checkIfSealed();
+      this.preScaleAggressiveness = preScaleAggressiveness;
+   }
+
+   /**
+    * Get the maximum number of connections that are retired for passing maxLifetime at the same time.
+    *
+    * @return the maximum number of concurrent retirements, 0 if staggered retirement is disabled
+    */
+   public int getMaxConcurrentRetirements() {
+      return maxConcurrentRetirements;
+   }
+
+   /**
+    * Set the maximum number of connections that are retired for passing maxLifetime at the same time.  When
+    * greater than zero, connection lifetimes are spread evenly across the second half of maxLifetime so that
+    * connections created together do not retire together, and a retiring connection is replaced before it is
+    * closed.  While a replacement is being created the pool may exceed maximumPoolSize by up to this number of
+    * connections.  The default of 0 only varies each lifetime by up to 2.5% and refills after closing.
+    *
+    * @param maxConcurrentRetirements the maximum number of concurrent retirements, or 0 to disable
+    */
+   public void setMaxConcurrentRetirements(int maxConcurrentRetirements) {
+      checkIfSealed();
+      this.maxConcurrentRetirements = maxConcurrentRetirements;
+   }
+
+   /**
+    * Determine whether connections evicted by the pool are replaced before they are closed.
+    *
+    * @return {@code true} if make-before-break replacement is enabled
+    */
+   public boolean isMakeBeforeBreak() {
+      return isMakeBeforeBreak;
+   }
+
+   /**
+    * Set whether connections evicted by the pool, on passing maxLifetime or by
+    * {@link HikariPoolMXBean#softEvictConnections()}, are replaced before they are closed.  When enabled, a
+    * successor is created as soon as a connection is selected for eviction and the connection stays usable
+    * until the successor has been added, so the pool may exceed maximumPoolSize while successors are created.
+    * Connections that are broken or evicted through {@link HikariDataSource#evictConnection(Connection)} are
+    * still closed immediately.  Default: false
+    *
+    * @param isMakeBeforeBreak {@code true} to replace evicted connections before closing them
+    */
+   public void setMakeBeforeBreak(boolean isMakeBeforeBreak) {
+      checkIfSealed();
+      this.isMakeBeforeBreak = isMakeBeforeBreak;
+   }
+
    /**
     * Get the pool initialization failure timeout.  See {@code #setInitializationFailTimeout(long)}
     * for details.
@@ -781,6 +1037,27 @@ public class HikariConfig implements HikariConfigMXBean {
       this.scheduledExecutor = executor;
    }
 
+   /**
+    * Get the PoolRuntime whose threads are shared with other pools.
+    *
+    * @return the shared PoolRuntime, or null if this pool creates its own threads
+    */
+   public PoolRuntime getPoolRuntime() {
+      return poolRuntime;
+   }
+
+   /**
+    * Set a PoolRuntime to share housekeeping, connection creation/closing and network timeout threads with
+    * other pools using the same runtime.  A ScheduledExecutorService set via {@link #setScheduledExecutor}
+    * still takes precedence for housekeeping.  The runtime is not closed when the pool is closed.
+    *
+    * @param poolRuntime the shared PoolRuntime
+    */
+   public void setPoolRuntime(PoolRuntime poolRuntime) {
+      checkIfSealed();
+      this.poolRuntime = poolRuntime;
+   }
+
    public String getTransactionIsolation() {
       return transactionIsolationName;
    }
@@ -816,6 +1093,145 @@ public class HikariConfig implements HikariConfigMXBean {
       this.transactionIsolationName = isolationLevel;
    }
 
+   /**
+    * Get the number of SQL fingerprints for which execution statistics are kept.
+    *
+    * @return the number of fingerprints, 0 if SQL metrics are disabled
+    */
+   public int getSqlMetricsSize() {
+      return sqlMetricsSize;
+   }
+
+   /**
+    * Set the number of SQL fingerprints for which execution statistics are kept.  When greater than zero, the
+    * Statement proxies time every execution and aggregate the count, latency and rows per fingerprint (the SQL
+    * text with its literals replaced by {@code ?}), keeping the fingerprints with the largest total execution
+    * time.  The statistics are available through {@link HikariPoolMXBean#getSqlStats()} and each execution is
+    * passed to {@link org.reploop.hikari.metrics.IMetricsTracker#recordSqlExecutionNanos(String, long, long)}.
+    * Default: 0
+    *
+    * @param sqlMetricsSize the number of fingerprints, or 0 to disable SQL metrics
+    */
+   public void setSqlMetricsSize(int sqlMetricsSize) {
+      checkIfSealed();
+      this.sqlMetricsSize = sqlMetricsSize;
+   }
+
+   /**
+    * Get the maximum number of coalesced updates buffered by a PreparedStatement.
+    *
+    * @return the maximum number of buffered updates, 0 if batch coalescing is disabled
+    */
+   public int getBatchCoalescingSize() {
+      return batchCoalescingSize;
+   }
+
+   /**
+    * Set the maximum number of coalesced updates buffered by a PreparedStatement.  When greater than zero,
+    * {@code executeUpdate()} on a PreparedStatement of a connection that is not in auto-commit mode is turned
+    * into {@code addBatch()}, and the buffered updates are sent with a single {@code executeBatch()} when this
+    * many are buffered, when any other statement is executed on the connection, and at commit, savepoint or
+    * statement close.  A rollback discards the buffered updates.  Errors of a buffered update are reported by
+    * the call that flushes it.  Statements prepared for generated keys and CallableStatements are never
+    * coalesced.  Default: 0
+    *
+    * @param batchCoalescingSize the maximum number of buffered updates, or 0 to disable batch coalescing
+    */
+   public void setBatchCoalescingSize(int batchCoalescingSize) {
+      checkIfSealed();
+      this.batchCoalescingSize = batchCoalescingSize;
+   }
+
+   /**
+    * Get the memory limit in bytes of one fetch of a tuned ResultSet.
+    *
+    * @return the memory limit in bytes, 0 if fetch size autotuning is disabled
+    */
+   public long getFetchMemoryLimit() {
+      return fetchMemoryLimit;
+   }
+
+   /**
+    * Set the memory limit in bytes of one fetch of a tuned ResultSet.  When greater than zero, the Statement
+    * proxies count the rows consumed from each query's ResultSet, and later executions of the same SQL
+    * fingerprint are given a fetch size that returns the most rows consumed so far in a single round trip.  The
+    * fetch size only grows, up to a cap that keeps one fetch within this many bytes, using a row size estimated
+    * from the ResultSetMetaData.  It is never set below the fetch size the driver gives the statement, and a
+    * fetch size set by the application is never changed.  Default: 0
+    *
+    * @param fetchMemoryLimit the memory limit in bytes, or 0 to disable fetch size autotuning
+    */
+   public void setFetchMemoryLimit(long fetchMemoryLimit) {
+      checkIfSealed();
+      this.fetchMemoryLimit = fetchMemoryLimit;
+   }
+
+   /**
+    * Get the update count returned by a coalesced {@code executeUpdate()}.
+    *
+    * @return the update count
+    */
+   public int getCoalescedUpdateCount() {
+      return coalescedUpdateCount;
+   }
+
+   /**
+    * Set the update count returned by a coalesced {@code executeUpdate()}, whose actual count is not known
+    * until the batch is flushed.  Applications that check for single-row updates can set this to 1.
+    * Default: {@link Statement#SUCCESS_NO_INFO}
+    *
+    * @param coalescedUpdateCount the update count
+    */
+   public void setCoalescedUpdateCount(int coalescedUpdateCount) {
+      checkIfSealed();
+      this.coalescedUpdateCount = coalescedUpdateCount;
+   }
+
+   /**
+    * Get the order in which idle connections are handed out.
+    *
+    * @return the name of the idle ordering
+    */
+   public String getIdleOrdering() {
+      return idleOrdering;
+   }
+
+   /**
+    * Set the order in which idle connections are handed out.  <code>FIFO</code> (the default)
+    * prefers connections recently returned by the calling thread, <code>LIFO</code> prefers the
+    * most recently returned connection so that surplus connections reach their idle timeout, and
+    * <code>ROUND_ROBIN</code> prefers the least recently returned connection so that use is spread
+    * evenly, for example across database backends behind a proxy.
+    *
+    * @param idleOrdering one of <code>FIFO</code>, <code>LIFO</code> or <code>ROUND_ROBIN</code>
+    */
+   public void setIdleOrdering(String idleOrdering) {
+      checkIfSealed();
+      this.idleOrdering = idleOrdering;
+   }
+
+   /**
+    * Get the path of the file in which the pool keeps its warm start profile.
+    *
+    * @return the warm start profile path, or null if warm start is disabled
+    */
+   public String getWarmStartProfile() {
+      return warmStartProfile;
+   }
+
+   /**
+    * Set the path of a file in which the pool keeps the peak connection demand it observed for each hour
+    * of the day.  The profile is written when the pool is shut down, and when the pool next starts it
+    * creates connections in parallel up to the demand predicted for the current hour, rather than starting
+    * with <code>minimumIdle</code> connections and growing only as requests arrive.
+    *
+    * @param warmStartProfile the path of the profile file, or null to disable warm start
+    */
+   public void setWarmStartProfile(String warmStartProfile) {
+      checkIfSealed();
+      this.warmStartProfile = warmStartProfile;
+   }
+
    /**
     * Get the thread factory used to create threads.
     *
@@ -877,10 +1293,15 @@ public class HikariConfig implements HikariConfigMXBean {
       connectionInitSql = getNullIfEmpty(connectionInitSql);
       connectionTestQuery = getNullIfEmpty(connectionTestQuery);
       transactionIsolationName = getNullIfEmpty(transactionIsolationName);
+      idleOrdering = getNullIfEmpty(idleOrdering);
+      warmStartProfile = getNullIfEmpty(warmStartProfile);
       dataSourceClassName = getNullIfEmpty(dataSourceClassName);
       dataSourceJndiName = getNullIfEmpty(dataSourceJndiName);
       driverClassName = getNullIfEmpty(driverClassName);
       jdbcUrl = getNullIfEmpty(jdbcUrl);
+      jdbcUrls = getNullIfEmpty(jdbcUrls);
+      fatalSqlStates = getNullIfEmpty(fatalSqlStates);
+      tenantQuotas = getNullIfEmpty(tenantQuotas);
 
       // Check Data Source Options
       if (dataSource != null) {
@@ -893,9 +1314,13 @@ public class HikariConfig implements HikariConfigMXBean {
             // NOTE: This exception text is referenced by a Spring Boot FailureAnalyzer, it should not be
             // changed without first notifying the Spring Boot developers.
             throw new IllegalStateException("cannot use driverClassName and dataSourceClassName together.");
-         } else if (jdbcUrl != null) {
+         } else if (jdbcUrl != null || jdbcUrls != null) {
             LOGGER.warn("{} - using dataSourceClassName and ignoring jdbcUrl.", poolName);
          }
+      } else if (jdbcUrls != null) {
+         if (jdbcUrl != null) {
+            LOGGER.warn("{} - using jdbcUrls and ignoring jdbcUrl.", poolName);
+         }
       } else if (jdbcUrl != null || dataSourceJndiName != null) {
          // ok
       } else if (driverClassName != null) {
@@ -906,6 +1331,20 @@ public class HikariConfig implements HikariConfigMXBean {
          throw new IllegalArgumentException("dataSource or dataSourceClassName or jdbcUrl is required.");
       }
 
+      if (idleOrdering != null) {
+         try {
+            idleOrdering = IdleOrdering.valueOf(idleOrdering.trim().toUpperCase()).name();
+         } catch (IllegalArgumentException e) {
+            LOGGER.error("{} - idleOrdering must be one of FIFO, LIFO or ROUND_ROBIN.", poolName);
+            throw new IllegalArgumentException("idleOrdering must be one of FIFO, LIFO or ROUND_ROBIN.");
+         }
+      }
+
+      if (tenantQuotas != null && !tenantQuotas.matches(TENANT_QUOTAS_PATTERN)) {
+         LOGGER.error("{} - tenantQuotas must be comma separated tenant=quota pairs, with quotas of at least 1.", poolName);
+         throw new IllegalArgumentException("tenantQuotas must be comma separated tenant=quota pairs, with quotas of at least 1.");
+      }
+
       validateNumerics();
 
       if (LOGGER.isDebugEnabled() || unitTest) {
@@ -954,6 +1393,41 @@ public class HikariConfig implements HikariConfigMXBean {
          minIdle = maxPoolSize;
       }
 
+      if (shutdownTimeout < 0) {
+         LOGGER.warn("{} - shutdownTimeout cannot be negative, using the standard shutdown.", poolName);
+         shutdownTimeout = 0;
+      }
+
+      if (preScaleAggressiveness < 0) {
+         LOGGER.warn("{} - preScaleAggressiveness cannot be negative, disabling pre-scaling.", poolName);
+         preScaleAggressiveness = 0;
+      }
+
+      if (holdProfileThreshold < 0) {
+         LOGGER.warn("{} - holdProfileThreshold cannot be negative, disabling hold profiling.", poolName);
+         holdProfileThreshold = 0;
+      }
+
+      if (sqlMetricsSize < 0) {
+         LOGGER.warn("{} - sqlMetricsSize cannot be negative, disabling SQL metrics.", poolName);
+         sqlMetricsSize = 0;
+      }
+
+      if (batchCoalescingSize < 0) {
+         LOGGER.warn("{} - batchCoalescingSize cannot be negative, disabling batch coalescing.", poolName);
+         batchCoalescingSize = 0;
+      }
+
+      if (fetchMemoryLimit < 0) {
+         LOGGER.warn("{} - fetchMemoryLimit cannot be negative, disabling fetch size autotuning.", poolName);
+         fetchMemoryLimit = 0;
+      }
+
+      if (maxConcurrentRetirements < 0) {
+         LOGGER.warn("{} - maxConcurrentRetirements cannot be negative, disabling staggered retirement.", poolName);
+         maxConcurrentRetirements = 0;
+      }
+
       if (idleTimeout != IDLE_TIMEOUT && idleTimeout != 0 && minIdle == maxPoolSize) {
          LOGGER.warn("{} - idleTimeout has been set but has no effect because the pool is operating as a fixed size pool.");
       }
@@ -981,10 +1455,12 @@ public class HikariConfig implements HikariConfigMXBean {
                value = "infinite";
             } else if ("transactionIsolation".equals(prop) && transactionIsolationName == null) {
                value = "default";
-            } else if (prop.matches("scheduledExecutorService|threadFactory") && value == null) {
+            } else if ("idleOrdering".equals(prop) && idleOrdering == null) {
+               value = "FIFO";
+            } else if (prop.matches("scheduledExecutorService|threadFactory|poolRuntime") && value == null) {
                value = "internal";
             } else if (prop.contains("jdbcUrl") && value instanceof String) {
-               value = ((String) value).replaceAll("([?&;]password=)[^&#;]*(.*)", "$1<masked>$2");
+               value = maskJdbcUrls((String) value);
             } else if (prop.contains("password")) {
                value = "<masked>";
             } else if (value instanceof String) {
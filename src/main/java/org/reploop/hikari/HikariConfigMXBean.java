@@ -92,6 +92,25 @@ public interface HikariConfigMXBean {
     */
    void setLeakDetectionThreshold(long leakDetectionThresholdMs);
 
+   /**
+    * This property controls the amount of time that a connection can be held before the hold is reported, when
+    * the connection is closed, together with the site that borrowed it and the slowest statements executed on
+    * it. A value of 0 means hold profiling is disabled.
+    *
+    * @return the hold profiling threshold in milliseconds
+    */
+   long getHoldProfileThreshold();
+
+   /**
+    * This property controls the amount of time that a connection can be held before the hold is reported, when
+    * the connection is closed, together with the site that borrowed it and the slowest statements executed on
+    * it. A value of 0 means hold profiling is disabled.  Only connections borrowed after this property is
+    * changed are profiled according to the new value.
+    *
+    * @param holdProfileThresholdMs the hold profiling threshold in milliseconds
+    */
+   void setHoldProfileThreshold(long holdProfileThresholdMs);
+
    /**
     * This property controls the maximum lifetime of a connection in the pool. When a connection reaches this
     * timeout, even if recently used, it will be retired from the pool. An in-use connection will never be
@@ -18,6 +18,7 @@ package org.reploop.hikari;
 
 import org.reploop.hikari.metrics.MetricsTrackerFactory;
 import org.reploop.hikari.pool.HikariPool;
+import org.reploop.hikari.pool.SessionState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -95,6 +96,71 @@ public class HikariDataSource extends HikariConfig implements DataSource, Closea
          return fastPathPool.getConnection();
       }
 
+      return getOrStartPool().getConnection();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Connection getConnection(String username, String password) throws SQLException {
+      throw new SQLFeatureNotSupportedException();
+   }
+
+   /**
+    * Get a connection that is required before the specified absolute deadline.  If the pool is saturated and the
+    * estimated wait exceeds the remaining time, an exception is thrown immediately instead of blocking.
+    *
+    * @param deadline the wall-clock time (as per {@link System#currentTimeMillis()}) by which a connection is required
+    * @param priority {@link HikariPool#PRIORITY_HIGH} to be served ahead of other waiters, or {@link HikariPool#PRIORITY_NORMAL}
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if the deadline cannot be met or a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnection(long deadline, int priority) throws SQLException {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getOrStartPool()).getConnection(deadline, priority);
+   }
+
+   /**
+    * Get a connection in the specified session state.  See {@link HikariConfig#setSessionStateAffinity(boolean)}.
+    *
+    * @param sessionState the desired session state
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnection(SessionState sessionState) throws SQLException {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getOrStartPool()).getConnection(sessionState);
+   }
+
+   /**
+    * Get a connection for the specified tenant.  See {@link HikariConfig#setTenantQuotas(String)}.
+    *
+    * @param tenantId the tenant
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnection(String tenantId) throws SQLException {
+      if (isClosed()) {
+         throw new SQLException("HikariDataSource " + this + " has been closed.");
+      }
+
+      return (fastPathPool != null ? fastPathPool : getOrStartPool()).getConnection(tenantId);
+   }
+
+   /**
+    * Get the pool, starting it first if this HikariDataSource was constructed without a {@link HikariConfig}.
+    *
+    * @return the HikariPool instance
+    * @throws SQLException thrown if the pool fails to initialize
+    */
+   private HikariPool getOrStartPool() throws SQLException {
       // See http://en.wikipedia.org/wiki/Double-checked_locking#Usage_in_Java
       HikariPool result = pool;
       if (result == null) {
@@ -118,15 +184,7 @@ public class HikariDataSource extends HikariConfig implements DataSource, Closea
          }
       }
 
-      return result.getConnection();
-   }
-
-   /**
-    * {@inheritDoc}
-    */
-   @Override
-   public Connection getConnection(String username, String password) throws SQLException {
-      throw new SQLFeatureNotSupportedException();
+      return result;
    }
 
    /**
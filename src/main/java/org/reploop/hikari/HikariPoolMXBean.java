@@ -16,7 +16,11 @@
 
 package org.reploop.hikari;
 
+import org.reploop.hikari.metrics.SqlStats;
+
 import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * The javax.management MBean for a Hikari pool instance.
@@ -64,6 +68,17 @@ public interface HikariPoolMXBean {
     */
    int getThreadsAwaitingConnection();
 
+   /**
+    * Get the execution statistics of the SQL fingerprints with the largest total execution time.  The return
+    * value is a point-in-time measurement, and is empty unless {@link HikariConfig#setSqlMetricsSize(int)} has
+    * been configured.
+    *
+    * @return the statistics, ordered by decreasing total execution time
+    */
+   default List<SqlStats> getSqlStats() {
+      return Collections.emptyList();
+   }
+
    /**
     * Evict currently idle connections from the pool, and mark active (in-use) connections for eviction when they are
     * returned to the pool.
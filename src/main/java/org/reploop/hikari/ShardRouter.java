@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari;
+
+/**
+ * Routes shard keys to the shards of a {@link ShardedDataSource}.  Implementations must be thread-safe:
+ * shards may be added while other threads are routing keys.
+ *
+ * @author Brett Wooldridge
+ */
+public interface ShardRouter {
+   /**
+    * Add a shard, which from now on may be returned by {@link #route(Object)}.
+    *
+    * @param shardId the id of the shard
+    */
+   void addShard(String shardId);
+
+   /**
+    * Get the shard of a key.
+    *
+    * @param shardKey the shard key
+    * @return the id of the shard, or null if no shard has been added
+    */
+   String route(Object shardKey);
+}
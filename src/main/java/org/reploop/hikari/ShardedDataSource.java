@@ -0,0 +1,453 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari;
+
+import org.reploop.hikari.metrics.SqlStats;
+import org.reploop.hikari.pool.PoolRuntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A DataSource over a set of shards, each with its own {@link HikariDataSource} created from a common
+ * configuration template.  Connections are obtained with {@link #getConnection(Object)}, which routes the
+ * shard key to a shard through a pluggable {@link ShardRouter}, by default a {@link ConsistentHashShardRouter}.
+ * <p>
+ * All shards share one {@link PoolRuntime}, so that the number of housekeeping and connection creation
+ * threads does not grow with the number of shards, and the metrics tracker factory, metric registry and
+ * health check registry of the template.  Each shard pool is named {@code <poolName>-<shardId>} and has its
+ * own {@link HikariPoolMXBean}; the MXBean of the ShardedDataSource, registered under the template pool name,
+ * aggregates the statistics of all shards.
+ * <p>
+ * Shards can be added while the ShardedDataSource is in use.  A new shard receives keys as soon as it has
+ * started; with consistent hashing, only the keys that move to the new shard route differently.
+ *
+ * @author Brett Wooldridge
+ */
+public class ShardedDataSource implements DataSource, Closeable {
+   private static final Logger LOGGER = LoggerFactory.getLogger(ShardedDataSource.class);
+
+   private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+   private final HikariConfig template;
+   private final String poolName;
+   private final ShardRouter router;
+   private final PoolRuntime poolRuntime;
+   private final boolean isOwnRuntime;
+   private final Map<String, HikariDataSource> shards;
+   private final ShardedPoolMXBean poolMXBean;
+   private final AtomicBoolean isShutdown;
+
+   /**
+    * Construct a ShardedDataSource routing keys by consistent hashing.
+    *
+    * @param template the configuration of every shard, except for the settings applied by {@link #addShard(String, Consumer)}
+    */
+   public ShardedDataSource(HikariConfig template) {
+      this(template, new ConsistentHashShardRouter());
+   }
+
+   /**
+    * Construct a ShardedDataSource.  The template is copied, and can be modified without affecting the
+    * ShardedDataSource.  If the template has no {@link PoolRuntime}, the ShardedDataSource creates one and
+    * closes it on {@link #close()}.
+    *
+    * @param template the configuration of every shard, except for the settings applied by {@link #addShard(String, Consumer)}
+    * @param router   the router of shard keys
+    */
+   public ShardedDataSource(HikariConfig template, ShardRouter router) {
+      this.template = new HikariConfig();
+      template.copyStateTo(this.template);
+      this.poolName = template.getPoolName() != null ? template.getPoolName() : "ShardedPool-" + POOL_NUMBER.incrementAndGet();
+      this.router = router;
+      this.isOwnRuntime = template.getPoolRuntime() == null;
+      this.poolRuntime = isOwnRuntime ? new PoolRuntime() : template.getPoolRuntime();
+      this.shards = new ConcurrentHashMap<>();
+      this.poolMXBean = new ShardedPoolMXBean();
+      this.isShutdown = new AtomicBoolean();
+
+      registerMBean();
+   }
+
+   // ***********************************************************************
+   //                          Shard methods
+   // ***********************************************************************
+
+   /**
+    * Add a shard connecting to the specified JDBC URL.
+    *
+    * @param shardId the id of the shard
+    * @param jdbcUrl the JDBC URL of the shard database
+    * @return the HikariDataSource of the shard
+    */
+   public HikariDataSource addShard(String shardId, String jdbcUrl) {
+      return addShard(shardId, config -> config.setJdbcUrl(jdbcUrl));
+   }
+
+   /**
+    * Add a shard.  The pool of the shard is started, then the shard is added to the router, so keys only
+    * route to the shard once it can serve connections.
+    *
+    * @param shardId    the id of the shard
+    * @param customizer applies the settings specific to the shard, such as its JDBC URL or DataSource properties,
+    *                   to a copy of the template
+    * @return the HikariDataSource of the shard
+    */
+   public synchronized HikariDataSource addShard(String shardId, Consumer<HikariConfig> customizer) {
+      if (isShutdown.get()) {
+         throw new IllegalStateException("ShardedDataSource " + poolName + " has been closed.");
+      }
+      if (shards.containsKey(shardId)) {
+         throw new IllegalArgumentException("Shard " + shardId + " already exists in " + poolName);
+      }
+
+      final HikariConfig config = new HikariConfig();
+      template.copyStateTo(config);
+      customizer.accept(config);
+      config.setPoolName(poolName + "-" + shardId);
+      config.setPoolRuntime(poolRuntime);
+
+      final HikariDataSource dataSource = new HikariDataSource(config);
+      shards.put(shardId, dataSource);
+      router.addShard(shardId);
+
+      LOGGER.info("{} - Added shard {}, {} shards.", poolName, shardId, shards.size());
+      return dataSource;
+   }
+
+   /**
+    * Get the ids of the shards.
+    *
+    * @return the sorted shard ids
+    */
+   public Set<String> getShardIds() {
+      return Collections.unmodifiableSet(new TreeSet<>(shards.keySet()));
+   }
+
+   /**
+    * Get the HikariDataSource of a shard.
+    *
+    * @param shardId the id of the shard
+    * @return the HikariDataSource, or null if there is no such shard
+    */
+   public HikariDataSource getShard(String shardId) {
+      return shards.get(shardId);
+   }
+
+   /**
+    * Get the HikariDataSource of the shard a key routes to.
+    *
+    * @param shardKey the shard key
+    * @return the HikariDataSource of the shard
+    * @throws SQLException if no shard has been added
+    */
+   public HikariDataSource getShardFor(Object shardKey) throws SQLException {
+      final String shardId = router.route(shardKey);
+      final HikariDataSource dataSource = shardId != null ? shards.get(shardId) : null;
+      if (dataSource == null) {
+         throw new SQLException("ShardedDataSource " + poolName + " has no shard for key " + shardKey);
+      }
+      return dataSource;
+   }
+
+   /**
+    * Get a connection to the shard a key routes to.
+    *
+    * @param shardKey the shard key
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if no shard has been added or a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnection(Object shardKey) throws SQLException {
+      if (isShutdown.get()) {
+         throw new SQLException("ShardedDataSource " + poolName + " has been closed.");
+      }
+
+      return getShardFor(shardKey).getConnection();
+   }
+
+   // ***********************************************************************
+   //                          DataSource methods
+   // ***********************************************************************
+
+   /**
+    * Not supported, a shard key is required.  Use {@link #getConnection(Object)}.
+    *
+    * @throws SQLException always
+    */
+   @Override
+   public Connection getConnection() throws SQLException {
+      throw new SQLFeatureNotSupportedException("ShardedDataSource requires a shard key, use getConnection(Object)");
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Connection getConnection(String username, String password) throws SQLException {
+      throw new SQLFeatureNotSupportedException();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PrintWriter getLogWriter() throws SQLException {
+      final HikariDataSource dataSource = anyShard();
+      return (dataSource != null ? dataSource.getLogWriter() : null);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setLogWriter(PrintWriter out) throws SQLException {
+      for (HikariDataSource dataSource : shards.values()) {
+         dataSource.setLogWriter(out);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setLoginTimeout(int seconds) throws SQLException {
+      for (HikariDataSource dataSource : shards.values()) {
+         dataSource.setLoginTimeout(seconds);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int getLoginTimeout() throws SQLException {
+      final HikariDataSource dataSource = anyShard();
+      return (dataSource != null ? dataSource.getLoginTimeout() : 0);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   @SuppressWarnings("unchecked")
+   public <T> T unwrap(Class<T> iface) throws SQLException {
+      if (iface.isInstance(this)) {
+         return (T) this;
+      }
+
+      throw new SQLException("ShardedDataSource is not an instance of " + iface);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isWrapperFor(Class<?> iface) {
+      return iface.isInstance(this);
+   }
+
+   // ***********************************************************************
+   //                        HikariCP-specific methods
+   // ***********************************************************************
+
+   /**
+    * Get the {@code HikariPoolMXBean} aggregating the statistics of all shards.  Its operations apply to
+    * every shard.
+    *
+    * @return the aggregate {@code HikariPoolMXBean}
+    */
+   public HikariPoolMXBean getHikariPoolMXBean() {
+      return poolMXBean;
+   }
+
+   /**
+    * Get the {@code HikariPoolMXBean} of a shard.
+    *
+    * @param shardId the id of the shard
+    * @return the {@code HikariPoolMXBean} of the shard, or null if there is no such shard
+    */
+   public HikariPoolMXBean getHikariPoolMXBean(String shardId) {
+      final HikariDataSource dataSource = shards.get(shardId);
+      return dataSource != null ? dataSource.getHikariPoolMXBean() : null;
+   }
+
+   /**
+    * Determine whether the ShardedDataSource has been closed.
+    *
+    * @return true if the ShardedDataSource has been closed, false otherwise
+    */
+   public boolean isClosed() {
+      return isShutdown.get();
+   }
+
+   /**
+    * Shutdown the pools of all shards, and the PoolRuntime if it was created by this ShardedDataSource.
+    */
+   @Override
+   public synchronized void close() {
+      if (isShutdown.getAndSet(true)) {
+         return;
+      }
+
+      LOGGER.info("{} - Shutdown initiated...", poolName);
+      shards.values().forEach(HikariDataSource::close);
+      if (isOwnRuntime) {
+         poolRuntime.close();
+      }
+      unregisterMBean();
+      LOGGER.info("{} - Shutdown completed.", poolName);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString() {
+      return "ShardedDataSource (" + poolName + ")";
+   }
+
+   // ***********************************************************************
+   //                          Private methods
+   // ***********************************************************************
+
+   private HikariDataSource anyShard() {
+      final Iterator<HikariDataSource> iterator = shards.values().iterator();
+      return iterator.hasNext() ? iterator.next() : null;
+   }
+
+   private void registerMBean() {
+      if (!template.isRegisterMbeans()) {
+         return;
+      }
+
+      try {
+         final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+         final ObjectName beanPoolName = new ObjectName("org.reploop.hikari:type=Pool (" + poolName + ")");
+         if (!mBeanServer.isRegistered(beanPoolName)) {
+            mBeanServer.registerMBean(new StandardMBean(poolMXBean, HikariPoolMXBean.class, true), beanPoolName);
+         } else {
+            LOGGER.error("{} - JMX name ({}) is already registered.", poolName, poolName);
+         }
+      } catch (Exception e) {
+         LOGGER.warn("{} - Failed to register management beans.", poolName, e);
+      }
+   }
+
+   private void unregisterMBean() {
+      if (!template.isRegisterMbeans()) {
+         return;
+      }
+
+      try {
+         final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+         final ObjectName beanPoolName = new ObjectName("org.reploop.hikari:type=Pool (" + poolName + ")");
+         if (mBeanServer.isRegistered(beanPoolName)) {
+            mBeanServer.unregisterMBean(beanPoolName);
+         }
+      } catch (Exception e) {
+         LOGGER.warn("{} - Failed to unregister management beans.", poolName, e);
+      }
+   }
+
+   /**
+    * The MXBean of the ShardedDataSource: connection counts are the sums over the shards, and SQL statistics
+    * of the same fingerprint are merged, taking the maximum of the shard percentiles as an upper bound.
+    */
+   private final class ShardedPoolMXBean implements HikariPoolMXBean {
+      @Override
+      public int getIdleConnections() {
+         return shards.values().stream().mapToInt(ds -> ds.getHikariPoolMXBean().getIdleConnections()).sum();
+      }
+
+      @Override
+      public int getActiveConnections() {
+         return shards.values().stream().mapToInt(ds -> ds.getHikariPoolMXBean().getActiveConnections()).sum();
+      }
+
+      @Override
+      public int getTotalConnections() {
+         return shards.values().stream().mapToInt(ds -> ds.getHikariPoolMXBean().getTotalConnections()).sum();
+      }
+
+      @Override
+      public int getThreadsAwaitingConnection() {
+         return shards.values().stream().mapToInt(ds -> ds.getHikariPoolMXBean().getThreadsAwaitingConnection()).sum();
+      }
+
+      @Override
+      public List<SqlStats> getSqlStats() {
+         final Map<String, SqlStats> merged = new HashMap<>();
+         for (HikariDataSource dataSource : shards.values()) {
+            for (SqlStats stats : dataSource.getHikariPoolMXBean().getSqlStats()) {
+               merged.merge(stats.getFingerprint(), stats, (a, b) -> new SqlStats(a.getFingerprint(),
+                  a.getExecutions() + b.getExecutions(), a.getRows() + b.getRows(), a.getTotalMillis() + b.getTotalMillis(),
+                  Math.max(a.getMaxMillis(), b.getMaxMillis()), Math.max(a.getP50Millis(), b.getP50Millis()),
+                  Math.max(a.getP99Millis(), b.getP99Millis())));
+            }
+         }
+
+         final List<SqlStats> stats = new ArrayList<>(merged.values());
+         stats.sort((a, b) -> Double.compare(b.getTotalMillis(), a.getTotalMillis()));
+         return stats;
+      }
+
+      @Override
+      public void softEvictConnections() {
+         shards.values().forEach(ds -> ds.getHikariPoolMXBean().softEvictConnections());
+      }
+
+      @Override
+      public void suspendPool() {
+         shards.values().forEach(ds -> ds.getHikariPoolMXBean().suspendPool());
+      }
+
+      @Override
+      public void resumePool() {
+         shards.values().forEach(ds -> ds.getHikariPoolMXBean().resumePool());
+      }
+   }
+}
@@ -30,6 +30,7 @@ import java.util.Properties;
 public class HikariConfigurationUtil {
    public static final String CONFIG_PREFIX = "hibernate.hikari.";
    public static final String CONFIG_PREFIX_DATASOURCE = "hibernate.hikari.dataSource.";
+   public static final String CONFIG_AGGRESSIVE_RELEASE = "hibernate.hikari.aggressiveRelease";
 
    /**
     * Create/load a HikariConfig from Hibernate properties.
@@ -49,18 +50,37 @@ public class HikariConfigurationUtil {
 
       for (Object keyo : props.keySet()) {
          String key = (String) keyo;
-         if (key.startsWith(CONFIG_PREFIX)) {
-            hikariProps.setProperty(key.substring(CONFIG_PREFIX.length()), (String) props.get(key));
+         if (key.startsWith(CONFIG_PREFIX) && !key.equals(CONFIG_AGGRESSIVE_RELEASE)) {
+            // numeric and boolean settings of the pool, such as batchCoalescingSize, may be given as non-String values
+            hikariProps.setProperty(key.substring(CONFIG_PREFIX.length()), String.valueOf(props.get(key)));
          }
       }
 
       return new HikariConfig(hikariProps);
    }
 
+   /**
+    * Determine whether the connection provider should let Hibernate release connections after each statement.
+    * This is enabled by {@value #CONFIG_AGGRESSIVE_RELEASE}, or otherwise by a Hibernate release mode of
+    * {@code after_statement}.
+    *
+    * @param props a map of Hibernate properties
+    * @return true if aggressive release is supported
+    */
+   @SuppressWarnings("rawtypes")
+   public static boolean isAggressiveRelease(Map props) {
+      if (props.containsKey(CONFIG_AGGRESSIVE_RELEASE)) {
+         return Boolean.parseBoolean(String.valueOf(props.get(CONFIG_AGGRESSIVE_RELEASE)).trim());
+      }
+
+      final Object releaseMode = props.get(AvailableSettings.RELEASE_CONNECTIONS);
+      return releaseMode != null && "after_statement".equalsIgnoreCase(String.valueOf(releaseMode).trim());
+   }
+
    @SuppressWarnings("rawtypes")
    private static void copyProperty(String srcKey, Map src, String dstKey, Properties dst) {
       if (src.containsKey(srcKey)) {
-         dst.setProperty(dstKey, (String) src.get(srcKey));
+         dst.setProperty(dstKey, String.valueOf(src.get(srcKey)));
       }
    }
 }
@@ -24,6 +24,7 @@ import org.hibernate.service.spi.Configurable;
 import org.hibernate.service.spi.Stoppable;
 import org.reploop.hikari.HikariConfig;
 import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.pool.SessionState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +43,8 @@ public class HikariConnectionProvider implements ConnectionProvider, Configurabl
 
    private static final Logger LOGGER = LoggerFactory.getLogger(HikariConnectionProvider.class);
 
+   private static final ThreadLocal<Boolean> READ_ONLY_HINT = new ThreadLocal<>();
+
    /**
     * HikariCP configuration.
     */
@@ -52,6 +55,17 @@ public class HikariConnectionProvider implements ConnectionProvider, Configurabl
     */
    private HikariDataSource hds;
 
+   /**
+    * Whether Hibernate may release connections after each statement.
+    */
+   private boolean isAggressiveRelease;
+
+   /**
+    * The session states requested for read-only and read-write sessions.
+    */
+   private SessionState readOnlyState;
+   private SessionState readWriteState;
+
    // *************************************************************************
    //
    // *************************************************************************
@@ -80,6 +94,14 @@ public class HikariConnectionProvider implements ConnectionProvider, Configurabl
 
          this.hcfg = HikariConfigurationUtil.loadConfiguration(props);
          this.hds = new HikariDataSource(this.hcfg);
+         this.isAggressiveRelease = HikariConfigurationUtil.isAggressiveRelease(props);
+         this.readOnlyState = new SessionState(true, hcfg.isAutoCommit(), -1, null, null);
+         this.readWriteState = new SessionState(false, hcfg.isAutoCommit(), -1, null, null);
+
+         if (isAggressiveRelease && !hcfg.isAutoCommit()) {
+            LOGGER.warn("{} - Aggressive release is enabled but connections are not in auto-commit mode, Hibernate "
+               + "will only release them after each statement in JTA transactions.", hcfg.getPoolName());
+         }
 
       } catch (Exception e) {
          throw new HibernateException(e);
@@ -96,7 +118,12 @@ public class HikariConnectionProvider implements ConnectionProvider, Configurabl
    public Connection getConnection() throws SQLException {
       Connection conn = null;
       if (this.hds != null) {
-         conn = this.hds.getConnection();
+         final Boolean readOnly = READ_ONLY_HINT.get();
+         if (readOnly == null) {
+            conn = this.hds.getConnection();
+         } else {
+            conn = this.hds.getConnection(readOnly ? readOnlyState : readWriteState);
+         }
       }
 
       return conn;
@@ -109,7 +136,7 @@ public class HikariConnectionProvider implements ConnectionProvider, Configurabl
 
    @Override
    public boolean supportsAggressiveRelease() {
-      return false;
+      return isAggressiveRelease;
    }
 
    @Override
@@ -131,6 +158,35 @@ public class HikariConnectionProvider implements ConnectionProvider, Configurabl
       }
    }
 
+   // *************************************************************************
+   // Read-only hint
+   // *************************************************************************
+
+   /**
+    * Set the read-only hint of the Hibernate session running on the current thread, for example from a
+    * {@code SessionEventListener} or a read-only transaction interceptor.  Connections obtained by this thread
+    * are then borrowed in the matching read-only state, which with session state affinity enabled prefers an
+    * idle connection already in that state.  See {@link HikariConfig#setSessionStateAffinity(boolean)}.
+    *
+    * @param readOnly the read-only hint, or null to borrow connections in the pool default state
+    */
+   public static void setReadOnlyHint(Boolean readOnly) {
+      if (readOnly == null) {
+         READ_ONLY_HINT.remove();
+      } else {
+         READ_ONLY_HINT.set(readOnly);
+      }
+   }
+
+   /**
+    * Get the read-only hint of the Hibernate session running on the current thread.
+    *
+    * @return the read-only hint, or null if none is set
+    */
+   public static Boolean getReadOnlyHint() {
+      return READ_ONLY_HINT.get();
+   }
+
    // *************************************************************************
    // Stoppable
    // *************************************************************************
@@ -32,6 +32,35 @@ public interface IMetricsTracker extends AutoCloseable {
    default void recordConnectionTimeout() {
    }
 
+   /**
+    * Record an execution of a SQL statement.  Only called if {@code sqlMetricsSize} is configured.
+    *
+    * @param fingerprint  the SQL text with its literals replaced by {@code ?} and its whitespace collapsed
+    * @param elapsedNanos the execution time
+    * @param rows         the number of rows updated, or 0 if unknown
+    */
+   default void recordSqlExecutionNanos(final String fingerprint, final long elapsedNanos, final long rows) {
+   }
+
+   /**
+    * Record the time a borrower of a tenant waited for a connection, including the wait for its tenant's share
+    * of the pool.  Only called if {@code tenantQuotas} is configured.
+    *
+    * @param tenant               the tenant, {@code *} for connections borrowed without a tenant
+    * @param elapsedAcquiredNanos the time waited
+    */
+   default void recordTenantAcquiredNanos(final String tenant, final long elapsedAcquiredNanos) {
+   }
+
+   /**
+    * Record the time a connection borrowed by a tenant was in use.  Only called if {@code tenantQuotas} is configured.
+    *
+    * @param tenant                the tenant, {@code *} for connections borrowed without a tenant
+    * @param elapsedBorrowedMillis the time the connection was in use
+    */
+   default void recordTenantUsageMillis(final String tenant, final long elapsedBorrowedMillis) {
+   }
+
    @Override
    default void close() {
    }
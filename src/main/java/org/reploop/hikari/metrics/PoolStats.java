@@ -91,7 +91,7 @@ public abstract class PoolStats {
 
    private boolean shouldLoad() {
       for (; ; ) {
-         final long now = ClockSource.currentTime();
+         final long now = ClockSource.coarseTime();
          final long reloadTime = reloadAt.get();
          if (reloadTime > now) {
             return false;
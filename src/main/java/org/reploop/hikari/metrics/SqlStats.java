@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A point-in-time snapshot of the executions of one SQL fingerprint, that is the SQL text with its literals
+ * replaced by {@code ?} and its whitespace collapsed.  Percentiles are the upper bounds of power-of-two
+ * microsecond buckets, so they are accurate to within a factor of two.
+ *
+ * @author Brett Wooldridge
+ */
+public final class SqlStats {
+   private final String fingerprint;
+   private final long executions;
+   private final long rows;
+   private final double totalMillis;
+   private final double maxMillis;
+   private final double p50Millis;
+   private final double p99Millis;
+
+   @ConstructorProperties({"fingerprint", "executions", "rows", "totalMillis", "maxMillis", "p50Millis", "p99Millis"})
+   public SqlStats(final String fingerprint, final long executions, final long rows, final double totalMillis,
+                   final double maxMillis, final double p50Millis, final double p99Millis) {
+      this.fingerprint = fingerprint;
+      this.executions = executions;
+      this.rows = rows;
+      this.totalMillis = totalMillis;
+      this.maxMillis = maxMillis;
+      this.p50Millis = p50Millis;
+      this.p99Millis = p99Millis;
+   }
+
+   public String getFingerprint() {
+      return fingerprint;
+   }
+
+   public long getExecutions() {
+      return executions;
+   }
+
+   /**
+    * Get the number of rows updated, or read through the ResultSets, of the executions.
+    *
+    * @return the number of rows
+    */
+   public long getRows() {
+      return rows;
+   }
+
+   public double getTotalMillis() {
+      return totalMillis;
+   }
+
+   public double getMeanMillis() {
+      return executions == 0 ? 0.0 : totalMillis / executions;
+   }
+
+   public double getMaxMillis() {
+      return maxMillis;
+   }
+
+   public double getP50Millis() {
+      return p50Millis;
+   }
+
+   public double getP99Millis() {
+      return p99Millis;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString() {
+      return String.format("%s (executions=%d, rows=%d, total=%.3fms, mean=%.3fms, max=%.3fms, p50=%.3fms, p99=%.3fms)",
+         fingerprint, executions, rows, totalMillis, getMeanMillis(), maxMillis, p50Millis, p99Millis);
+   }
+}
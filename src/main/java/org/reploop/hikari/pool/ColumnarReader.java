@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A bulk reader of numeric and temporal columns of a ResultSet into primitive arrays.  Each call to
+ * {@link #next()} reads up to a batch of rows into arrays that are allocated once and reused, so reading
+ * any number of rows allocates nothing per row and holds at most one batch in memory.
+ * <p>
+ * For a ResultSet of a pool connection, the rows are read from the driver's ResultSet directly instead of
+ * through the proxy, while still being counted for SQL metrics and fetch size autotuning.
+ * <pre>
+ * ColumnarReader reader = new ColumnarReader(resultSet, 4096)
+ *    .column(1, ColumnarReader.ColumnType.LONG)
+ *    .column(2, ColumnarReader.ColumnType.DOUBLE);
+ * for (int rows = reader.next(); rows &gt; 0; rows = reader.next()) {
+ *    long[] ids = reader.getLongs(0);
+ *    double[] amounts = reader.getDoubles(1);
+ *    ...
+ * }
+ * </pre>
+ *
+ * @author Brett Wooldridge
+ */
+public final class ColumnarReader {
+   /**
+    * The primitive representation of a column.
+    */
+   public enum ColumnType {
+      /** {@code getInt()} into an {@code int[]} */
+      INT,
+      /** {@code getLong()} into a {@code long[]} */
+      LONG,
+      /** {@code getDouble()} into a {@code double[]} */
+      DOUBLE,
+      /** {@code getDate()} as days since the epoch into a {@code long[]} */
+      EPOCH_DAY,
+      /** {@code getTimestamp()} as milliseconds since the epoch into a {@code long[]} */
+      EPOCH_MILLIS
+   }
+
+   private final ResultSet resultSet;
+   private final ProxyResultSet proxyResultSet;
+   private final int batchSize;
+   private final List<Column> columns;
+
+   private boolean isExhausted;
+
+   /**
+    * Construct a ColumnarReader.
+    *
+    * @param resultSet the ResultSet to read, positioned before the first row to read
+    * @param batchSize the maximum number of rows read by one call to {@link #next()}
+    */
+   public ColumnarReader(final ResultSet resultSet, final int batchSize) {
+      if (batchSize < 1) {
+         throw new IllegalArgumentException("batchSize must be greater than zero");
+      }
+
+      this.proxyResultSet = resultSet instanceof ProxyResultSet ? (ProxyResultSet) resultSet : null;
+      this.resultSet = proxyResultSet != null ? proxyResultSet.delegate : resultSet;
+      this.batchSize = batchSize;
+      this.columns = new ArrayList<>();
+   }
+
+   /**
+    * Add a column to read.  Columns are numbered for the getters in the order they are added, from 0.
+    *
+    * @param columnIndex the index of the column in the ResultSet, from 1
+    * @param type        the primitive representation of the column
+    * @return this reader
+    */
+   public ColumnarReader column(final int columnIndex, final ColumnType type) {
+      if (isExhausted) {
+         throw new IllegalStateException("The ResultSet has been read");
+      }
+
+      columns.add(new Column(columnIndex, type, batchSize));
+      return this;
+   }
+
+   /**
+    * Read the next batch of rows into the arrays of the columns, replacing the previous batch.
+    *
+    * @return the number of rows read, 0 once the ResultSet is exhausted
+    * @throws SQLException if the ResultSet throws
+    */
+   public int next() throws SQLException {
+      if (isExhausted) {
+         return 0;
+      }
+
+      final int columnCount = columns.size();
+      final Column[] batch = columns.toArray(new Column[columnCount]);
+      for (Column column : batch) {
+         column.nulls.clear();
+      }
+
+      int rows = 0;
+      try {
+         while (rows < batchSize) {
+            if (!resultSet.next()) {
+               isExhausted = true;
+               break;
+            }
+
+            for (int i = 0; i < columnCount; i++) {
+               batch[i].read(resultSet, rows);
+            }
+            rows++;
+         }
+      } catch (SQLException e) {
+         throw proxyResultSet != null ? proxyResultSet.checkException(e) : e;
+      } finally {
+         if (proxyResultSet != null) {
+            proxyResultSet.addRowsConsumed(rows, isExhausted);
+         }
+      }
+
+      return rows;
+   }
+
+   /**
+    * Get the values of an {@link ColumnType#INT} column in the current batch.
+    *
+    * @param column the column number, in the order the columns were added
+    * @return the values, valid up to the number of rows returned by {@link #next()}
+    */
+   public int[] getInts(final int column) {
+      return getColumn(column, ColumnType.INT).ints;
+   }
+
+   /**
+    * Get the values of a {@link ColumnType#LONG}, {@link ColumnType#EPOCH_DAY} or {@link ColumnType#EPOCH_MILLIS}
+    * column in the current batch.
+    *
+    * @param column the column number, in the order the columns were added
+    * @return the values, valid up to the number of rows returned by {@link #next()}
+    */
+   public long[] getLongs(final int column) {
+      final Column c = columns.get(column);
+      if (c.longs == null) {
+         throw new IllegalArgumentException("Column " + column + " is " + c.type + ", not a long column");
+      }
+      return c.longs;
+   }
+
+   /**
+    * Get the values of a {@link ColumnType#DOUBLE} column in the current batch.
+    *
+    * @param column the column number, in the order the columns were added
+    * @return the values, valid up to the number of rows returned by {@link #next()}
+    */
+   public double[] getDoubles(final int column) {
+      return getColumn(column, ColumnType.DOUBLE).doubles;
+   }
+
+   /**
+    * Get the rows of the current batch in which a column is SQL NULL.  The values of those rows are 0.
+    *
+    * @param column the column number, in the order the columns were added
+    * @return the rows that are SQL NULL
+    */
+   public BitSet getNulls(final int column) {
+      return columns.get(column).nulls;
+   }
+
+   private Column getColumn(final int column, final ColumnType type) {
+      final Column c = columns.get(column);
+      if (c.type != type) {
+         throw new IllegalArgumentException("Column " + column + " is " + c.type + ", not " + type);
+      }
+      return c;
+   }
+
+   private static final class Column {
+      private final int columnIndex;
+      private final ColumnType type;
+      private final int[] ints;
+      private final long[] longs;
+      private final double[] doubles;
+      private final BitSet nulls;
+
+      private Column(final int columnIndex, final ColumnType type, final int batchSize) {
+         this.columnIndex = columnIndex;
+         this.type = type;
+         this.ints = type == ColumnType.INT ? new int[batchSize] : null;
+         this.longs = type == ColumnType.LONG || type == ColumnType.EPOCH_DAY || type == ColumnType.EPOCH_MILLIS ? new long[batchSize] : null;
+         this.doubles = type == ColumnType.DOUBLE ? new double[batchSize] : null;
+         this.nulls = new BitSet(batchSize);
+      }
+
+      private void read(final ResultSet resultSet, final int row) throws SQLException {
+         switch (type) {
+            case INT:
+               ints[row] = resultSet.getInt(columnIndex);
+               break;
+            case LONG:
+               longs[row] = resultSet.getLong(columnIndex);
+               break;
+            case DOUBLE:
+               doubles[row] = resultSet.getDouble(columnIndex);
+               break;
+            case EPOCH_DAY:
+               final Date date = resultSet.getDate(columnIndex);
+               longs[row] = date == null ? 0L : date.toLocalDate().toEpochDay();
+               break;
+            case EPOCH_MILLIS:
+               final Timestamp timestamp = resultSet.getTimestamp(columnIndex);
+               longs[row] = timestamp == null ? 0L : timestamp.getTime();
+               break;
+         }
+
+         if (resultSet.wasNull()) {
+            nulls.set(row);
+         }
+      }
+   }
+}
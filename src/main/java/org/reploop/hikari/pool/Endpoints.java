@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.reploop.hikari.util.ClockSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.util.function.Consumer;
+
+import static org.reploop.hikari.util.UtilityElf.maskJdbcUrls;
+
+/**
+ * The database endpoints of a multi-host pool.  Each endpoint keeps a moving average of its connection creation
+ * success rate and connect latency, and new connections are created on the endpoint with the best score.  An
+ * endpoint that fails to create a connection, or whose connections report that the server is unreachable or
+ * shutting down, is marked down and receives no new connections until a background probe succeeds.
+ * <p>
+ * Endpoints are listed in order of preference: a later endpoint only takes over from an earlier one that is up
+ * when its score is clearly better, so that the pool does not flap between endpoints of similar latency.
+ *
+ * @author Brett Wooldridge
+ */
+final class Endpoints {
+   private static final Logger LOGGER = LoggerFactory.getLogger(Endpoints.class);
+
+   private static final double EWMA_ALPHA = 0.2;
+   // a connect latency of this many milliseconds halves the score of an endpoint
+   private static final double LATENCY_HALVING_MS = 100.0;
+   // the factor by which a later endpoint must outscore an earlier one to be preferred
+   private static final double PREFERENCE_MARGIN = 1.25;
+
+   private final String poolName;
+   private final Endpoint[] endpoints;
+   private volatile Consumer<Endpoint> downListener;
+
+   Endpoints(final String poolName, final String[] urls, final DataSource[] dataSources) {
+      this.poolName = poolName;
+      this.endpoints = new Endpoint[urls.length];
+      for (int i = 0; i < urls.length; i++) {
+         endpoints[i] = new Endpoint(urls[i], dataSources[i]);
+      }
+   }
+
+   /**
+    * Set the listener called, outside of any lock, when an endpoint is marked down.
+    *
+    * @param downListener the listener
+    */
+   void setDownListener(final Consumer<Endpoint> downListener) {
+      this.downListener = downListener;
+   }
+
+   Endpoint[] getEndpoints() {
+      return endpoints.clone();
+   }
+
+   boolean isAnyUp() {
+      for (Endpoint endpoint : endpoints) {
+         if (!endpoint.isDown) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Select the endpoint for a new connection: the best scoring endpoint that is up, or if all are down the one
+    * that has been down for the longest time, which is the most likely to have recovered.
+    *
+    * @return the selected endpoint
+    */
+   Endpoint select() {
+      Endpoint best = null;
+      double bestScore = 0.0;
+      for (Endpoint endpoint : endpoints) {
+         if (!endpoint.isDown) {
+            final double score = endpoint.score();
+            if (best == null || score > bestScore * PREFERENCE_MARGIN) {
+               best = endpoint;
+               bestScore = score;
+            }
+         }
+      }
+
+      if (best == null) {
+         best = endpoints[0];
+         for (Endpoint endpoint : endpoints) {
+            if (endpoint.downSince < best.downSince) {
+               best = endpoint;
+            }
+         }
+      }
+
+      return best;
+   }
+
+   /**
+    * Record the outcome of a connection attempt, marking the endpoint down if it failed.
+    *
+    * @param endpoint      the endpoint
+    * @param elapsedMillis the time taken by the attempt
+    * @param success       true if a connection was created
+    */
+   void recordConnect(final Endpoint endpoint, final long elapsedMillis, final boolean success) {
+      //noinspection NonAtomicOperationOnVolatileField -- the averages only need to be approximately right
+      endpoint.successRate += ((success ? 1.0 : 0.0) - endpoint.successRate) * EWMA_ALPHA;
+      if (success) {
+         //noinspection NonAtomicOperationOnVolatileField
+         endpoint.connectMillis += (elapsedMillis - endpoint.connectMillis) * EWMA_ALPHA;
+      } else {
+         markDown(endpoint, "connection attempt failed");
+      }
+   }
+
+   /**
+    * Mark an endpoint down, calling the down listener if it was up.
+    *
+    * @param endpoint the endpoint
+    * @param reason   the reason, for logging
+    * @return true if the endpoint was up
+    */
+   boolean markDown(final Endpoint endpoint, final String reason) {
+      synchronized (endpoint) {
+         if (endpoint.isDown) {
+            return false;
+         }
+         endpoint.downSince = ClockSource.currentTime();
+         endpoint.isDown = true;
+      }
+
+      LOGGER.warn("{} - Endpoint {} is down ({}), new connections go to {}.", poolName, endpoint, reason, select());
+      final Consumer<Endpoint> listener = downListener;
+      if (listener != null) {
+         listener.accept(endpoint);
+      }
+      return true;
+   }
+
+   /**
+    * Mark an endpoint up after a successful probe.
+    *
+    * @param endpoint the endpoint
+    */
+   void markUp(final Endpoint endpoint) {
+      synchronized (endpoint) {
+         if (!endpoint.isDown) {
+            return;
+         }
+         endpoint.isDown = false;
+      }
+
+      LOGGER.info("{} - Endpoint {} is up again after {}ms.", poolName, endpoint, ClockSource.elapsedMillis(endpoint.downSince));
+   }
+
+   /**
+    * A database endpoint.
+    */
+   static final class Endpoint {
+      final String url;
+      final DataSource dataSource;
+
+      private volatile double successRate;
+      private volatile double connectMillis;
+      private volatile boolean isDown;
+      private volatile long downSince;
+      private boolean isProbing;
+
+      Endpoint(final String url, final DataSource dataSource) {
+         this.url = url;
+         this.dataSource = dataSource;
+         this.successRate = 1.0;
+      }
+
+      boolean isDown() {
+         return isDown;
+      }
+
+      double score() {
+         return successRate / (1.0 + connectMillis / LATENCY_HALVING_MS);
+      }
+
+      synchronized boolean tryBeginProbe() {
+         if (isProbing || !isDown) {
+            return false;
+         }
+         isProbing = true;
+         return true;
+      }
+
+      synchronized void endProbe() {
+         isProbing = false;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public String toString() {
+         return maskJdbcUrls(url);
+      }
+   }
+}
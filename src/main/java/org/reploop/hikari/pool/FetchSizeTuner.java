@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fetch size autotuning per SQL fingerprint.  The Statement proxies report the number of rows the application
+ * consumed from each ResultSet, and later executions of the same fingerprint are given a fetch size that
+ * returns the most rows consumed so far in a single round trip, capped so that one fetch holds no more than the
+ * memory limit in rows.  The fetch size only grows: a small or abandoned ResultSet does not make the next large
+ * one take more round trips, and the Statement proxies never set it below the driver's own fetch size.  The
+ * size of a row is estimated once per fingerprint from the column display sizes of its ResultSetMetaData.
+ *
+ * @author Brett Wooldridge
+ */
+final class FetchSizeTuner {
+   // the row size assumed when the driver does not describe the columns
+   static final int DEFAULT_ROW_BYTES = 256;
+
+   private static final int MAX_ENTRIES = 4096;
+   private static final int MAX_FETCH_SIZE = 10_000;
+   private static final int MAX_COLUMN_BYTES = 4096;
+   private static final int COLUMN_OVERHEAD_BYTES = 8;
+
+   private final long memoryLimit;
+   private final ConcurrentHashMap<String, Entry> entries;
+
+   FetchSizeTuner(final long memoryLimit) {
+      this.memoryLimit = memoryLimit;
+      this.entries = new ConcurrentHashMap<>();
+   }
+
+   /**
+    * Get the entry of the fingerprint of the specified SQL, adding it if necessary.
+    *
+    * @param sql the SQL text
+    * @return the entry
+    */
+   Entry entry(final String sql) {
+      final String fingerprint = SqlMetrics.fingerprint(sql);
+      final Entry entry = entries.get(fingerprint);
+      if (entry != null) {
+         return entry;
+      }
+
+      if (entries.size() >= MAX_ENTRIES) {
+         // the application generates SQL with unbounded variety, start learning afresh
+         entries.clear();
+      }
+      return entries.computeIfAbsent(fingerprint, f -> new Entry());
+   }
+
+   /**
+    * The rows consumed by the executions of one fingerprint.
+    */
+   final class Entry {
+      private volatile long peakRows = -1L;
+      private volatile int rowBytes;
+
+      /**
+       * Get the fetch size for the next execution.
+       *
+       * @return the fetch size, or 0 to leave the driver default until a ResultSet has been consumed
+       */
+      int getFetchSize() {
+         final long rows = peakRows;
+         if (rows < 0L) {
+            return 0;
+         }
+
+         // one row more than expected, so that the driver sees the end of the results in the same round trip
+         final long wanted = rows + 1L;
+         final long memoryCap = Math.max(1L, memoryLimit / Math.max(1, rowBytes));
+         return (int) Math.min(Math.min(wanted, memoryCap), MAX_FETCH_SIZE);
+      }
+
+      /**
+       * Record the number of rows consumed from a ResultSet of this fingerprint.
+       *
+       * @param rows      the number of rows consumed
+       * @param resultSet the ResultSet, to estimate the row size from on the first call
+       */
+      void record(final long rows, final ResultSet resultSet) {
+         if (rows > peakRows) {
+            //noinspection NonAtomicOperationOnVolatileField -- a racing smaller peak is corrected by the next record
+            peakRows = rows;
+         }
+
+         if (rowBytes == 0) {
+            rowBytes = estimateRowBytes(resultSet);
+         }
+      }
+
+      private int estimateRowBytes(final ResultSet resultSet) {
+         try {
+            final ResultSetMetaData metaData = resultSet.getMetaData();
+            if (metaData != null && metaData.getColumnCount() > 0) {
+               long bytes = 0;
+               for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                  bytes += Math.min(Math.max(metaData.getColumnDisplaySize(i), 1), MAX_COLUMN_BYTES) + COLUMN_OVERHEAD_BYTES;
+               }
+               return (int) Math.min(bytes, Integer.MAX_VALUE);
+            }
+         } catch (SQLException | RuntimeException e) {
+            // fall through to the default, some drivers do not implement the ResultSetMetaData of every ResultSet
+         }
+
+         return DEFAULT_ROW_BYTES;
+      }
+   }
+}
@@ -24,11 +24,14 @@ import org.reploop.hikari.HikariDataSource;
 import org.reploop.hikari.HikariPoolMXBean;
 import org.reploop.hikari.metrics.MetricsTrackerFactory;
 import org.reploop.hikari.metrics.PoolStats;
+import org.reploop.hikari.metrics.SqlStats;
 import org.reploop.hikari.metrics.dropwizard.CodahaleHealthChecker;
 import org.reploop.hikari.metrics.dropwizard.CodahaleMetricsTrackerFactory;
 import org.reploop.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
 import org.reploop.hikari.util.ConcurrentBag;
 import org.reploop.hikari.util.ConcurrentBag.IBagStateListener;
+import org.reploop.hikari.util.ConcurrentBag.IdleOrdering;
+import org.reploop.hikari.util.FastList;
 import org.reploop.hikari.util.SuspendResumeLock;
 import org.reploop.hikari.util.UtilityElf.*;
 import org.slf4j.Logger;
@@ -37,10 +40,15 @@ import org.slf4j.LoggerFactory;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLTransientConnectionException;
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static java.util.Collections.unmodifiableCollection;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -48,6 +56,7 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.reploop.hikari.util.ClockSource.*;
 import static org.reploop.hikari.util.ConcurrentBag.IConcurrentBagEntry.STATE_IN_USE;
 import static org.reploop.hikari.util.ConcurrentBag.IConcurrentBagEntry.STATE_NOT_IN_USE;
+import static org.reploop.hikari.util.ConcurrentBag.IConcurrentBagEntry.STATE_REMOVED;
 import static org.reploop.hikari.util.UtilityElf.*;
 
 /**
@@ -63,10 +72,19 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
    public static final int POOL_SUSPENDED = 1;
    public static final int POOL_SHUTDOWN = 2;
 
+   public static final int PRIORITY_NORMAL = 0;
+   public static final int PRIORITY_HIGH = 1;
+
    public volatile int poolState;
 
    private final long ALIVE_BYPASS_WINDOW_MS = Long.getLong("org.reploop.hikari.aliveBypassWindowMs", MILLISECONDS.toMillis(500));
    private final long HOUSEKEEPING_PERIOD_MS = Long.getLong("org.reploop.hikari.housekeeping.periodMs", SECONDS.toMillis(30));
+   private final long PRE_SCALE_PERIOD_MS = Long.getLong("org.reploop.hikari.preScale.periodMs", 100L);
+   private final long FATAL_STATE_WINDOW_MS = Long.getLong("org.reploop.hikari.fatalState.windowMs", SECONDS.toMillis(1));
+   private final long ENDPOINT_PROBE_PERIOD_MS = Long.getLong("org.reploop.hikari.endpointProbe.periodMs", SECONDS.toMillis(1));
+
+   private static final double USAGE_EWMA_ALPHA = 0.1;
+   private static final double PRE_SCALE_EWMA_ALPHA = 0.3;
 
    private static final String EVICTED_CONNECTION_MESSAGE = "(connection was evicted)";
    private static final String DEAD_CONNECTION_MESSAGE = "(connection is dead)";
@@ -74,8 +92,9 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
    private final PoolEntryCreator POOL_ENTRY_CREATOR = new PoolEntryCreator(null /*logging prefix*/);
    private final PoolEntryCreator POST_FILL_POOL_ENTRY_CREATOR = new PoolEntryCreator("After adding ");
    private final Collection<Runnable> addConnectionQueue;
-   private final ThreadPoolExecutor addConnectionExecutor;
-   private final ThreadPoolExecutor closeConnectionExecutor;
+   private final ExecutorService addConnectionExecutor;
+   private final PoolRuntime.Lane addConnectionLane;
+   private final ExecutorService closeConnectionExecutor;
 
    private final ConcurrentBag<PoolEntry> connectionBag;
 
@@ -85,6 +104,24 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
    private final ScheduledExecutorService houseKeepingExecutorService;
    private ScheduledFuture<?> houseKeeperTask;
 
+   private final WarmStartProfile warmStartProfile;
+   private final LifetimeScheduler lifetimeScheduler;
+
+   private volatile double meanUsageMillis;
+   private volatile double meanCreationMillis;
+
+   private final LongAdder borrowCounter;
+   private ScheduledFuture<?> preScalerTask;
+   private volatile int preScaleTarget;
+
+   private ScheduledFuture<?> endpointProberTask;
+   private final ThreadPoolExecutor endpointProbeExecutor;
+
+   private final AtomicLong lastFatalStatePropagation;
+   private final ThreadPoolExecutor fatalStateValidationExecutor;
+
+   final TenantQuotas tenantQuotas;
+
    /**
     * Construct a HikariPool with the specified configuration.
     *
@@ -93,8 +130,13 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
    public HikariPool(final HikariConfig config) {
       super(config);
 
-      this.connectionBag = new ConcurrentBag<>(this);
+      final String idleOrdering = config.getIdleOrdering();
+      this.connectionBag = new ConcurrentBag<>(this, idleOrdering == null ? IdleOrdering.FIFO : IdleOrdering.valueOf(idleOrdering));
       this.suspendResumeLock = config.isAllowPoolSuspension() ? new SuspendResumeLock() : SuspendResumeLock.FAUX_LOCK;
+      this.borrowCounter = config.getPreScaleAggressiveness() > 0 ? new LongAdder() : null;
+      this.lifetimeScheduler = config.getMaxConcurrentRetirements() > 0 ? new LifetimeScheduler(config.getMaxConcurrentRetirements()) : null;
+      this.tenantQuotas = config.getTenantQuotas() != null ? new TenantQuotas(config.getTenantQuotas(), config.getMaximumPoolSize()) : null;
+      this.lastFatalStatePropagation = new AtomicLong(currentTime() - MILLISECONDS.toNanos(FATAL_STATE_WINDOW_MS));
 
       this.houseKeepingExecutorService = initializeHouseKeepingExecutorService();
 
@@ -110,16 +152,40 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
 
       registerMBeans(this);
 
-      ThreadFactory threadFactory = config.getThreadFactory();
+      final PoolRuntime poolRuntime = config.getPoolRuntime();
+      if (poolRuntime != null) {
+         final PoolRuntime.Lane addConnectionLane = poolRuntime.newLane(config.getMaximumPoolSize(), false);
+         this.addConnectionQueue = addConnectionLane.getQueue();
+         this.addConnectionExecutor = addConnectionLane;
+         this.addConnectionLane = addConnectionLane;
+         this.closeConnectionExecutor = poolRuntime.newLane(config.getMaximumPoolSize(), true);
+      } else {
+         ThreadFactory threadFactory = config.getThreadFactory();
 
-      LinkedBlockingQueue<Runnable> addConnectionQueue = new LinkedBlockingQueue<>(config.getMaximumPoolSize());
-      this.addConnectionQueue = unmodifiableCollection(addConnectionQueue);
-      this.addConnectionExecutor = createThreadPoolExecutor(addConnectionQueue, poolName + " connection adder", threadFactory, new ThreadPoolExecutor.DiscardPolicy());
-      this.closeConnectionExecutor = createThreadPoolExecutor(config.getMaximumPoolSize(), poolName + " connection closer", threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+         LinkedBlockingQueue<Runnable> addConnectionQueue = new LinkedBlockingQueue<>(config.getMaximumPoolSize());
+         this.addConnectionQueue = unmodifiableCollection(addConnectionQueue);
+         this.addConnectionExecutor = createThreadPoolExecutor(addConnectionQueue, poolName + " connection adder", threadFactory, new ThreadPoolExecutor.DiscardPolicy());
+         this.addConnectionLane = null;
+         this.closeConnectionExecutor = createThreadPoolExecutor(config.getMaximumPoolSize(), poolName + " connection closer", threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+      }
 
       this.leakTaskFactory = new ProxyLeakTaskFactory(config.getLeakDetectionThreshold(), houseKeepingExecutorService);
 
+      this.warmStartProfile = config.getWarmStartProfile() != null ? new WarmStartProfile(config.getWarmStartProfile(), poolName) : null;
+      if (warmStartProfile != null) {
+         warmStart();
+      }
+
       this.houseKeeperTask = houseKeepingExecutorService.scheduleWithFixedDelay(new HouseKeeper(), 100L, HOUSEKEEPING_PERIOD_MS, MILLISECONDS);
+      if (borrowCounter != null) {
+         this.preScalerTask = houseKeepingExecutorService.scheduleWithFixedDelay(new PreScaler(), PRE_SCALE_PERIOD_MS, PRE_SCALE_PERIOD_MS, MILLISECONDS);
+      }
+      this.endpointProbeExecutor = endpoints != null ? createParallelExecutor(endpoints.getEndpoints().length, "endpoint prober") : null;
+      this.fatalStateValidationExecutor = config.getFatalSqlStates() != null ? createParallelExecutor(config.getMaximumPoolSize(), "connection validator") : null;
+      if (endpoints != null) {
+         endpoints.setDownListener(this::evictEndpointConnections);
+         this.endpointProberTask = houseKeepingExecutorService.scheduleWithFixedDelay(this::probeEndpoints, ENDPOINT_PROBE_PERIOD_MS, ENDPOINT_PROBE_PERIOD_MS, MILLISECONDS);
+      }
 
       if (Boolean.getBoolean("org.reploop.hikari.blockUntilFilled") && config.getInitializationFailTimeout() > 1) {
          final long startTime = currentTime();
@@ -147,13 +213,132 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
     * @throws SQLException thrown if a timeout occurs trying to obtain a connection
     */
    public Connection getConnection(final long hardTimeout) throws SQLException {
+      return getConnection(hardTimeout, false, null, null);
+   }
+
+   /**
+    * Get a connection from the pool in the specified session state, or timeout after connectionTimeout milliseconds.
+    * With session state affinity enabled an idle connection already in that state is preferred, and only the
+    * attributes that differ are changed.
+    *
+    * @param sessionState the desired session state
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnection(final SessionState sessionState) throws SQLException {
+      return getConnection(connectionTimeout, false, sessionState, null);
+   }
+
+   /**
+    * Get a connection from the pool for the specified tenant, or timeout after connectionTimeout milliseconds.
+    * See {@link org.reploop.hikari.HikariConfig#setTenantQuotas(String)}; without tenant quotas the tenant is ignored.
+    *
+    * @param tenantId the tenant
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnection(final String tenantId) throws SQLException {
+      return getConnection(connectionTimeout, false, null, tenantId);
+   }
+
+   /**
+    * Get a connection from the pool before the specified absolute deadline.  If the wait estimated from the
+    * number of threads already waiting and the mean connection usage time cannot be met within the remaining
+    * budget, fail immediately rather than occupying the calling thread until the deadline passes.
+    *
+    * @param deadline the wall-clock time (as per {@link System#currentTimeMillis()}) by which a connection is required
+    * @param priority {@link #PRIORITY_HIGH} to be served ahead of other waiters, or {@link #PRIORITY_NORMAL}
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if the deadline cannot be met or a timeout occurs trying to obtain a connection
+    */
+   public Connection getConnection(final long deadline, final int priority) throws SQLException {
+      final long budget = deadline - System.currentTimeMillis();
+      final long estimatedWait = estimateWaitMillis();
+      if (budget <= 0 || estimatedWait > budget) {
+         metricsTracker.recordConnectionTimeout();
+         logPoolState("Deadline rejection ");
+         throw new SQLTransientConnectionException(poolName + " - Connection is not available, estimated wait of " + estimatedWait
+            + "ms exceeds the remaining deadline budget of " + Math.max(0L, budget) + "ms.");
+      }
+
+      return getConnection(budget, priority > PRIORITY_NORMAL, null, null);
+   }
+
+   /**
+    * Get a connection from the pool, or timeout after the specified number of milliseconds.
+    *
+    * @param hardTimeout  the maximum time to wait for a connection from the pool
+    * @param isPriority   true if the caller should be served ahead of other waiters
+    * @param sessionState the desired session state, or null for the pool defaults
+    * @param tenantId     the tenant, or null for the default tenant
+    * @return a java.sql.Connection instance
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   private Connection getConnection(final long hardTimeout, final boolean isPriority, final SessionState sessionState, final String tenantId) throws SQLException {
+      if (config.isTransactionScopedPooling()) {
+         final ProxyConnection proxyConnection = ProxyFactory.getProxyConnection(null, null, new FastList<>(ProxyStatement.class, 16),
+            ProxyLeakTask.NO_LEAK, currentTime(), config.isReadOnly(), config.isAutoCommit());
+         proxyConnection.bindOnDemand(this);
+         if (sessionState != null) {
+            applySessionState(proxyConnection, sessionState);
+         }
+         return proxyConnection;
+      }
+
+      final PoolEntry poolEntry = borrowPoolEntry(hardTimeout, isPriority, sessionState, tenantId);
+      final ProxyConnection connection = (ProxyConnection) poolEntry.createProxyConnection(leakTaskFactory.schedule(poolEntry), poolEntry.lastBorrowed);
+      final long holdProfileThreshold = config.getHoldProfileThreshold();
+      if (holdProfileThreshold > 0) {
+         connection.holdProfile = new HoldProfile(holdProfileThreshold, poolEntry.lastBorrowed);
+      }
+      if (sessionState != null && !isSessionStateAffinity) {
+         try {
+            applySessionState(connection, sessionState);
+         } catch (SQLException e) {
+            connection.close();
+            throw e;
+         }
+      }
+
+      return connection;
+   }
+
+   /**
+    * Borrow a PoolEntry from the pool, or timeout after the specified number of milliseconds.  With session state
+    * affinity enabled the physical connection is brought into the desired session state before it is returned.
+    *
+    * @param hardTimeout  the maximum time to wait for a connection from the pool
+    * @param isPriority   true if the caller should be served ahead of other waiters
+    * @param sessionState the desired session state, or null for the pool defaults
+    * @param tenantId     the tenant, or null for the default tenant
+    * @return a borrowed PoolEntry
+    * @throws SQLException thrown if a timeout occurs trying to obtain a connection
+    */
+   PoolEntry borrowPoolEntry(final long hardTimeout, final boolean isPriority, final SessionState sessionState, final String tenantId) throws SQLException {
       suspendResumeLock.acquire();
       final long startTime = currentTime();
+      final SessionState target = isSessionStateAffinity ? resolveSessionState(sessionState) : null;
+      TenantQuotas.Tenant tenant = null;
 
       try {
          long timeout = hardTimeout;
+         if (tenantQuotas != null) {
+            tenant = tenantQuotas.acquire(tenantId, timeout);
+            if (tenant == null) {
+               metricsTracker.recordBorrowTimeoutStats(startTime);
+               throw createTimeoutException(startTime);
+            }
+            timeout = hardTimeout - elapsedMillis(startTime);
+         }
+
+         boolean firstAttempt = true;
          do {
-            PoolEntry poolEntry = connectionBag.borrow(timeout, MILLISECONDS);
+            // only the first attempt looks for an idle connection already in the target state
+            PoolEntry poolEntry = (target != null && firstAttempt) ? connectionBag.borrowMatching(e -> target.equals(getSessionState(e))) : null;
+            firstAttempt = false;
+            if (poolEntry == null) {
+               poolEntry = connectionBag.borrow(timeout, MILLISECONDS, isPriority);
+            }
             if (poolEntry == null) {
                break; // We timed out... break and throw exception
             }
@@ -162,9 +347,23 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
             if (poolEntry.isMarkedEvicted() || (elapsedMillis(poolEntry.lastAccessed, now) > ALIVE_BYPASS_WINDOW_MS && !isConnectionAlive(poolEntry.connection))) {
                closeConnection(poolEntry, poolEntry.isMarkedEvicted() ? EVICTED_CONNECTION_MESSAGE : DEAD_CONNECTION_MESSAGE);
                timeout = hardTimeout - elapsedMillis(startTime);
+            } else if (target != null && !trySessionState(poolEntry, target)) {
+               timeout = hardTimeout - elapsedMillis(startTime);
             } else {
+               poolEntry.lastBorrowed = now;
                metricsTracker.recordBorrowStats(poolEntry, startTime);
-               return poolEntry.createProxyConnection(leakTaskFactory.schedule(poolEntry), now);
+               if (tenant != null) {
+                  metricsTracker.recordTenantBorrowStats(tenant.id, startTime);
+                  poolEntry.tenant = tenant;
+                  tenant = null;
+               }
+               if (borrowCounter != null) {
+                  borrowCounter.increment();
+               }
+               if (traceRecorder != null) {
+                  traceRecorder.record(TraceRecorder.BORROW, poolEntry.connection, elapsedNanos(startTime, now));
+               }
+               return poolEntry;
             }
          } while (timeout > 0L);
 
@@ -174,6 +373,9 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
          Thread.currentThread().interrupt();
          throw new SQLException(poolName + " - Interrupted during connection acquisition", e);
       } finally {
+         if (tenant != null) {
+            tenantQuotas.release(tenant);
+         }
          suspendResumeLock.release();
       }
    }
@@ -194,11 +396,35 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
 
          logPoolState("Before shutdown ");
 
+         if (warmStartProfile != null) {
+            warmStartProfile.save();
+         }
+
          if (houseKeeperTask != null) {
             houseKeeperTask.cancel(false);
             houseKeeperTask = null;
          }
 
+         if (preScalerTask != null) {
+            preScalerTask.cancel(false);
+            preScalerTask = null;
+         }
+
+         if (endpointProberTask != null) {
+            endpointProberTask.cancel(false);
+            endpointProberTask = null;
+            endpointProbeExecutor.shutdownNow();
+         }
+
+         if (fatalStateValidationExecutor != null) {
+            fatalStateValidationExecutor.shutdownNow();
+         }
+
+         if (config.getShutdownTimeout() > 0) {
+            parallelShutdown(config.getShutdownTimeout());
+            return;
+         }
+
          softEvictConnections();
 
          addConnectionExecutor.shutdown();
@@ -228,6 +454,76 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
          logPoolState("After shutdown ");
          unregisterMBeans();
          metricsTracker.close();
+         if (traceRecorder != null) {
+            traceRecorder.close();
+         }
+      }
+   }
+
+   /**
+    * Shutdown the pool within a bounded total deadline.  Idle connections are closed concurrently and in-use
+    * connections are aborted, both on an executor shared by all pools, and the time spent in each phase is logged.
+    *
+    * @param timeoutMs the total time allowed for the shutdown
+    * @throws InterruptedException thrown if the thread is interrupted during shutdown
+    */
+   private void parallelShutdown(final long timeoutMs) throws InterruptedException {
+      final long startTime = currentTime();
+      final ExecutorService drainer = ShutdownDrainer.EXECUTOR;
+      final List<Future<?>> closing = new ArrayList<>();
+
+      // stop creating connections, but let a creation that is in flight finish so its connection can be drained
+      addConnectionExecutor.shutdown();
+
+      closeIdleConnections(drainer, closing, timeoutMs);
+      final long idleTime = currentTime();
+
+      abortActiveConnections(drainer);
+      final long abortTime = currentTime();
+
+      addConnectionExecutor.awaitTermination(Math.max(0L, timeoutMs - elapsedMillis(startTime)), MILLISECONDS);
+      connectionBag.close();
+      // connections added by creations that were in flight
+      closeIdleConnections(drainer, closing, timeoutMs);
+      abortActiveConnections(drainer);
+
+      int pending = 0;
+      for (Future<?> future : closing) {
+         try {
+            future.get(Math.max(0L, timeoutMs - elapsedMillis(startTime)), MILLISECONDS);
+         } catch (TimeoutException e) {
+            pending++;
+         } catch (ExecutionException e) {
+            // quietlyCloseConnection does not throw
+         }
+      }
+      final long awaitTime = currentTime();
+
+      destroyHouseKeepingExecutorService();
+      shutdownNetworkTimeoutExecutor();
+      closeConnectionExecutor.shutdown();
+
+      LOGGER.info("{} - Parallel shutdown of {} connections completed in {}ms (close idle {}ms, abort active {}ms, await {}ms), {} still closing.",
+         poolName, closing.size(), elapsedMillis(startTime), elapsedMillis(startTime, idleTime), elapsedMillis(idleTime, abortTime),
+         elapsedMillis(abortTime, awaitTime), pending);
+   }
+
+   /**
+    * Reserve every idle connection, remove it from the pool and close it on the specified executor.
+    *
+    * @param drainer   the executor on which to close the connections
+    * @param closing   receives the Future of each close
+    * @param timeoutMs the network timeout to set on each connection before closing it
+    */
+   private void closeIdleConnections(final ExecutorService drainer, final List<Future<?>> closing, final long timeoutMs) {
+      for (PoolEntry poolEntry : connectionBag.values(STATE_NOT_IN_USE)) {
+         if (connectionBag.reserve(poolEntry) && connectionBag.remove(poolEntry)) {
+            final Connection connection = poolEntry.close();
+            if (traceRecorder != null) {
+               traceRecorder.record(TraceRecorder.EVICT, connection, 0L);
+            }
+            closing.add(drainer.submit(() -> quietlyCloseConnection(connection, "(connection evicted during shutdown)", timeoutMs)));
+         }
       }
    }
 
@@ -238,6 +534,10 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
     */
    public void evictConnection(Connection connection) {
       ProxyConnection proxyConnection = (ProxyConnection) connection;
+      if (proxyConnection.getPoolEntry() == null) {
+         return; // a transaction-scoped connection that is not currently bound to a physical connection
+      }
+
       proxyConnection.cancelLeakTask();
 
       try {
@@ -297,6 +597,10 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
     */
    @Override
    public void addBagItem(final int waiting) {
+      if (warmStartProfile != null) {
+         warmStartProfile.recordDemand(getActiveConnections() + waiting);
+      }
+
       final boolean shouldAdd = waiting - addConnectionQueue.size() >= 0; // Yes, >= is intentional.
       if (shouldAdd) {
          addConnectionExecutor.submit(POOL_ENTRY_CREATOR);
@@ -339,12 +643,24 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
       return connectionBag.getWaitingThreadCount();
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public List<SqlStats> getSqlStats() {
+      return sqlMetrics != null ? sqlMetrics.getStats() : Collections.emptyList();
+   }
+
    /**
     * {@inheritDoc}
     */
    @Override
    public void softEvictConnections() {
-      connectionBag.values().forEach(poolEntry -> softEvictConnection(poolEntry, "(connection evicted)", false /* not owner */));
+      if (config.isMakeBeforeBreak() && poolState == POOL_NORMAL) {
+         connectionBag.values().forEach(poolEntry -> closeConnectionExecutor.execute(() -> replaceConnection(poolEntry, "(connection evicted)", false /* not retiring */)));
+      } else {
+         connectionBag.values().forEach(poolEntry -> softEvictConnection(poolEntry, "(connection evicted)", false /* not owner */));
+      }
    }
 
    /**
@@ -397,8 +713,105 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
    @Override
    void recycle(final PoolEntry poolEntry) {
       metricsTracker.recordConnectionUsage(poolEntry);
+      // lastAccessed is stamped by the coarse clock, which can lag the precise lastBorrowed by up to a tick
+      final long usageMillis = Math.max(0L, elapsedMillis(poolEntry.lastBorrowed, poolEntry.lastAccessed));
+      //noinspection NonAtomicOperationOnVolatileField -- the mean only needs to be approximately right
+      meanUsageMillis += (usageMillis - meanUsageMillis) * USAGE_EWMA_ALPHA;
+
+      final TenantQuotas.Tenant tenant = poolEntry.tenant;
+      poolEntry.tenant = null;
+      // before the entry is requited, another thread may borrow it and reset lastBorrowed right after
+      final long tenantUsageMillis = tenant != null ? poolEntry.getMillisSinceBorrowed() : 0L;
+
+      if (fatalStateValidationExecutor != null && poolEntry.isMarkedEvicted() && poolState == POOL_NORMAL) {
+         // evicted while in use by fatal state propagation, close it now rather than at the next borrow
+         closeConnection(poolEntry, EVICTED_CONNECTION_MESSAGE);
+      } else {
+         connectionBag.requite(poolEntry);
+      }
+
+      if (tenant != null) {
+         metricsTracker.recordTenantUsage(tenant.id, tenantUsageMillis);
+         tenantQuotas.release(tenant);
+      }
+   }
+
+   /**
+    * Get the number of connections a tenant has in use.
+    *
+    * @param tenantId the tenant, or null for the default tenant
+    * @return the number of connections in use by the tenant, or 0 if tenant quotas are not configured
+    */
+   int getTenantConnections(final String tenantId) {
+      return tenantQuotas != null ? tenantQuotas.getInUse(tenantId) : 0;
+   }
 
-      connectionBag.requite(poolEntry);
+   /**
+    * Mark the endpoint of a broken connection down if its SQLSTATE says the server went away, and propagate a
+    * fatal SQLSTATE to the whole pool.  The endpoint is marked down at once, so that no new connection is made to
+    * it in the meantime, but the eviction of its connections and the propagation both evict, and may close, other
+    * connections, so they run on the house keeping executor and the thread that got the exception has it back
+    * at once.
+    *
+    * @param poolEntry the PoolEntry whose connection is broken, evicted by the caller
+    * @param sqlState  the SQLSTATE of the exception
+    * @param isFatal   true if the SQLSTATE is one of the configured fatal states
+    */
+   void handleBrokenConnection(final PoolEntry poolEntry, final String sqlState, final boolean isFatal) {
+      if (poolEntry.endpoint != null && sqlState != null && (sqlState.startsWith("08") || sqlState.startsWith("57P0"))) {
+         endpoints.markDown(poolEntry.endpoint, "SQLSTATE " + sqlState);
+      }
+      if (!isFatal) {
+         return;
+      }
+
+      try {
+         houseKeepingExecutorService.execute(() -> propagateFatalState(poolEntry, sqlState));
+      } catch (RejectedExecutionException e) {
+         LOGGER.debug("{} - House keeping executor rejected the propagation of SQLSTATE({}), the pool is shutting down", poolName, sqlState);
+      }
+   }
+
+   /**
+    * Propagate a fatal SQLSTATE seen on one connection to the whole pool: idle connections are validated in
+    * parallel on the connection validator threads and the dead ones evicted, connections in use are marked evicted
+    * so that they are closed when returned.  An idle connection that finds every validator thread busy is soft
+    * evicted without a round trip, so the thread that saw the state never validates.  Runs at most once per window,
+    * however many connections see the state.
+    *
+    * @param failed   the PoolEntry whose connection saw the state, already evicted by the caller
+    * @param sqlState the fatal SQLSTATE
+    */
+   void propagateFatalState(final PoolEntry failed, final String sqlState) {
+      final long now = currentTime();
+      final long last = lastFatalStatePropagation.get();
+      if (elapsedMillis(last, now) < FATAL_STATE_WINDOW_MS || !lastFatalStatePropagation.compareAndSet(last, now) || poolState != POOL_NORMAL) {
+         return;
+      }
+
+      LOGGER.warn("{} - Fatal SQLSTATE({}) on connection {}, validating idle connections and evicting connections in use.", poolName, sqlState, failed.connection);
+      connectionBag.values().forEach(poolEntry -> {
+         if (poolEntry == failed) {
+            return;
+         }
+
+         if (connectionBag.reserve(poolEntry)) {
+            try {
+               fatalStateValidationExecutor.execute(() -> {
+                  if (isConnectionAlive(poolEntry.connection)) {
+                     connectionBag.unreserve(poolEntry);
+                  } else {
+                     closeConnection(poolEntry, DEAD_CONNECTION_MESSAGE);
+                  }
+               });
+            } catch (RejectedExecutionException e) {
+               poolEntry.markEvicted();
+               connectionBag.unreserve(poolEntry);
+            }
+         } else {
+            poolEntry.markEvicted();
+         }
+      });
    }
 
    /**
@@ -410,6 +823,9 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
    void closeConnection(final PoolEntry poolEntry, final String closureReason) {
       if (connectionBag.remove(poolEntry)) {
          final Connection connection = poolEntry.close();
+         if (traceRecorder != null) {
+            traceRecorder.record(TraceRecorder.EVICT, connection, 0L);
+         }
          closeConnectionExecutor.execute(() -> {
             quietlyCloseConnection(connection, closureReason);
             if (poolState == POOL_NORMAL) {
@@ -419,6 +835,16 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
       }
    }
 
+   /**
+    * Schedule a leak detection task for a PoolEntry bound to a transaction-scoped connection.
+    *
+    * @param poolEntry the borrowed PoolEntry
+    * @return the scheduled ProxyLeakTask
+    */
+   ProxyLeakTask scheduleLeakTask(final PoolEntry poolEntry) {
+      return leakTaskFactory.schedule(poolEntry);
+   }
+
    @SuppressWarnings("unused")
    int[] getPoolStateCounts() {
       return connectionBag.getStateCounts();
@@ -431,24 +857,37 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
 
    /**
     * Creating new poolEntry.  If maxLifetime is configured, create a future End-of-life task with 2.5% variance from
-    * the maxLifetime time to ensure there is no massive die-off of Connections in the pool.
+    * the maxLifetime time to ensure there is no massive die-off of Connections in the pool, or with the lifetime
+    * assigned by the {@link LifetimeScheduler} if staggered retirement is enabled.
     */
    private PoolEntry createPoolEntry() {
       try {
+         final long startTime = currentTime();
          final PoolEntry poolEntry = newPoolEntry();
+         //noinspection NonAtomicOperationOnVolatileField -- the mean only needs to be approximately right
+         meanCreationMillis += (elapsedMillis(startTime) - meanCreationMillis) * USAGE_EWMA_ALPHA;
 
          final long maxLifetime = config.getMaxLifetime();
-         if (maxLifetime > 0) {
+         if (maxLifetime > 0 && lifetimeScheduler != null) {
+            final long lifetime = lifetimeScheduler.nextLifetime(maxLifetime, config.getMaximumPoolSize());
+            poolEntry.setFutureEol(houseKeepingExecutorService.schedule(() -> retireConnection(poolEntry), lifetime, MILLISECONDS));
+         } else if (maxLifetime > 0) {
             // variance up to 2.5% of the maxlifetime
             final long variance = maxLifetime > 10_000 ? ThreadLocalRandom.current().nextLong(maxLifetime / 40) : 0;
             final long lifetime = maxLifetime - variance;
-            poolEntry.setFutureEol(houseKeepingExecutorService.schedule(
-               () -> {
-                  if (softEvictConnection(poolEntry, "(connection has passed maxLifetime)", false /* not owner */)) {
-                     addBagItem(connectionBag.getWaitingThreadCount());
-                  }
-               },
-               lifetime, MILLISECONDS));
+            if (config.isMakeBeforeBreak()) {
+               poolEntry.setFutureEol(houseKeepingExecutorService.schedule(
+                  () -> closeConnectionExecutor.execute(() -> replaceConnection(poolEntry, "(connection has passed maxLifetime)", true /* retiring */)),
+                  lifetime, MILLISECONDS));
+            } else {
+               poolEntry.setFutureEol(houseKeepingExecutorService.schedule(
+                  () -> {
+                     if (softEvictConnection(poolEntry, "(connection has passed maxLifetime)", false /* not owner */)) {
+                        addBagItem(connectionBag.getWaitingThreadCount());
+                     }
+                  },
+                  lifetime, MILLISECONDS));
+            }
          }
 
          return poolEntry;
@@ -470,6 +909,135 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
       }
    }
 
+   /**
+    * Retire a connection that has reached the end of its staggered lifetime.  If maxConcurrentRetirements are
+    * already in progress the retirement is retried shortly, otherwise a replacement connection is created and
+    * added to the pool before the retiring connection is evicted (make-before-break).
+    *
+    * @param poolEntry the PoolEntry to retire
+    */
+   private void retireConnection(final PoolEntry poolEntry) {
+      if (poolState != POOL_NORMAL || poolEntry.isMarkedEvicted()) {
+         return;
+      }
+
+      if (!lifetimeScheduler.tryBeginRetirement()) {
+         poolEntry.setFutureEol(houseKeepingExecutorService.schedule(() -> retireConnection(poolEntry), lifetimeScheduler.getRetryDelay(), MILLISECONDS));
+         return;
+      }
+
+      closeConnectionExecutor.execute(() -> {
+         try {
+            replaceConnection(poolEntry, "(connection has passed maxLifetime)", true /* retiring */);
+         } finally {
+            lifetimeScheduler.endRetirement();
+         }
+      });
+   }
+
+   /**
+    * Evict a connection only after a successor has been created and added to the pool, so that the eviction
+    * never reduces the capacity available to borrowers.  The connection remains usable until then.  If the
+    * successor cannot be created the connection is evicted anyway and the pool is refilled as usual.  No successor
+    * is created for a connection already removed from the pool, which the pool refills on its own.  A retiring
+    * connection is always succeeded, so the pool is over maximumPoolSize for as long as the retirement takes, but
+    * an evicted one is not when the pool is at maximumPoolSize with more than minimumIdle connections idle, as its
+    * capacity is not needed.
+    *
+    * @param poolEntry  the PoolEntry to replace
+    * @param reason     the reason that the connection is being evicted
+    * @param isRetiring true if the connection has reached the end of its lifetime
+    */
+   private void replaceConnection(final PoolEntry poolEntry, final String reason, final boolean isRetiring) {
+      if (!poolEntry.beginReplacement() || poolEntry.isMarkedEvicted() || poolEntry.getState() == STATE_REMOVED) {
+         return;
+      }
+
+      final boolean isCapacityNeeded = isRetiring || getTotalConnections() < config.getMaximumPoolSize() || getIdleConnections() <= config.getMinimumIdle();
+      final PoolEntry successor = poolState == POOL_NORMAL && isCapacityNeeded ? createPoolEntry() : null;
+      if (successor != null) {
+         if (poolEntry.getState() == STATE_REMOVED) {
+            // removed while the successor was being created, and the pool refills in its place
+            quietlyCloseConnection(successor.close(), reason);
+            return;
+         }
+
+         connectionBag.add(successor);
+         LOGGER.debug("{} - Added connection {} to replace {}", poolName, successor.connection, poolEntry.connection);
+      }
+
+      softEvictConnection(poolEntry, reason, false /* not owner */);
+   }
+
+   /**
+    * Evict all connections to an endpoint that has been marked down.  Idle connections are closed immediately
+    * and replaced by connections to the endpoint now selected, connections in use are closed instead of being
+    * handed out again.  The eviction runs on the house keeping executor, as the thread that marks the endpoint
+    * down may be an application thread that just got an exception.
+    *
+    * @param endpoint the endpoint that is down
+    */
+   private void evictEndpointConnections(final Endpoints.Endpoint endpoint) {
+      if (poolState == POOL_SHUTDOWN) {
+         return;
+      }
+
+      try {
+         houseKeepingExecutorService.execute(() -> connectionBag.values().forEach(poolEntry -> {
+            if (poolEntry.endpoint == endpoint) {
+               softEvictConnection(poolEntry, "(endpoint is down)", false /* not owner */);
+            }
+         }));
+      } catch (RejectedExecutionException e) {
+         LOGGER.debug("{} - House keeping executor rejected the eviction of connections to {}, the pool is shutting down", poolName, endpoint);
+      }
+   }
+
+   /**
+    * Probe the endpoints that are down, each on its own prober thread so that an unresponsive endpoint holds up
+    * neither the house keeper, nor the connection closer, nor the probes of the other endpoints.  An endpoint
+    * whose previous probe is still running is skipped in this cycle.
+    */
+   private void probeEndpoints() {
+      if (poolState != POOL_NORMAL) {
+         return;
+      }
+
+      for (Endpoints.Endpoint endpoint : endpoints.getEndpoints()) {
+         if (endpoint.tryBeginProbe()) {
+            try {
+               endpointProbeExecutor.execute(() -> {
+                  try {
+                     if (probeEndpoint(endpoint)) {
+                        endpoints.markUp(endpoint);
+                     }
+                  } finally {
+                     endpoint.endProbe();
+                  }
+               });
+            } catch (RejectedExecutionException e) {
+               // shutting down
+               endpoint.endProbe();
+            }
+         }
+      }
+   }
+
+   /**
+    * Create an executor that runs up to the specified number of tasks in parallel.  It never queues a task and
+    * never runs one on the submitting thread, a task submitted while all of its threads are busy is rejected.
+    *
+    * @param threads    the maximum number of threads
+    * @param threadName the thread name, after the pool name
+    * @return a ThreadPoolExecutor whose threads time out when idle
+    */
+   private ThreadPoolExecutor createParallelExecutor(final int threads, final String threadName) {
+      final ThreadFactory threadFactory = config.getThreadFactory() != null ? config.getThreadFactory() : new DefaultThreadFactory(poolName + " " + threadName, true);
+      final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 5, SECONDS, new SynchronousQueue<>(), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+   }
+
    /**
     * Fill pool up from current idle connections (as they are perceived at the point of execution) to minimumIdle connections.
     */
@@ -481,6 +1049,108 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
       }
    }
 
+   /**
+    * Create connections in parallel up to the demand the warm start profile predicts for the current hour of
+    * the day, waiting at most connectionTimeout for them.  Runs before the house keeper is scheduled and before
+    * the pool is handed to any borrower, so nothing else is adding connections at the same time.
+    */
+   private void warmStart() {
+      final int predicted = Math.min(config.getMaximumPoolSize(), warmStartProfile.predict(LocalTime.now()));
+      final int connectionsToAdd = predicted - getTotalConnections();
+      if (connectionsToAdd <= 0) {
+         return;
+      }
+
+      LOGGER.info("{} - Warm start, adding {} connections for a predicted demand of {}.", poolName, connectionsToAdd, predicted);
+
+      final ThreadFactory threadFactory = config.getThreadFactory() != null ? config.getThreadFactory() : new DefaultThreadFactory(poolName + " warm start", true);
+      final ThreadPoolExecutor warmer = new ThreadPoolExecutor(connectionsToAdd, connectionsToAdd, 5, SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+      for (int i = 0; i < connectionsToAdd; i++) {
+         warmer.execute(() -> {
+            final PoolEntry poolEntry = createPoolEntry();
+            if (poolEntry != null) {
+               if (poolState == POOL_NORMAL && getTotalConnections() < config.getMaximumPoolSize()) {
+                  connectionBag.add(poolEntry);
+                  LOGGER.debug("{} - Added connection {}", poolName, poolEntry.connection);
+               } else {
+                  quietlyCloseConnection(poolEntry.close(), "(warm start connection not needed)");
+               }
+            }
+         });
+      }
+
+      warmer.shutdown();
+      try {
+         if (!warmer.awaitTermination(connectionTimeout, MILLISECONDS)) {
+            LOGGER.debug("{} - Warm start still in progress after {}ms, continuing in the background.", poolName, connectionTimeout);
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+
+      logPoolState("After warm start ");
+   }
+
+   /**
+    * Apply a requested session state through the setters of a ProxyConnection, so that it is reset when the
+    * connection is closed.  Used when session state affinity is disabled.
+    *
+    * @param connection   the ProxyConnection
+    * @param sessionState the requested session state
+    * @throws SQLException thrown if changing the state fails
+    */
+   private void applySessionState(final Connection connection, final SessionState sessionState) throws SQLException {
+      if (sessionState.readOnly != config.isReadOnly()) {
+         connection.setReadOnly(sessionState.readOnly);
+      }
+      if (sessionState.autoCommit != config.isAutoCommit()) {
+         connection.setAutoCommit(sessionState.autoCommit);
+      }
+      if (sessionState.transactionIsolation != -1) {
+         connection.setTransactionIsolation(sessionState.transactionIsolation);
+      }
+      if (sessionState.catalog != null) {
+         connection.setCatalog(sessionState.catalog);
+      }
+      if (sessionState.schema != null) {
+         connection.setSchema(sessionState.schema);
+      }
+   }
+
+   /**
+    * Bring a borrowed PoolEntry into the target session state, closing it if that fails.
+    *
+    * @param poolEntry the borrowed PoolEntry
+    * @param target    the resolved session state
+    * @return true if the state was applied, false if the connection was closed
+    */
+   private boolean trySessionState(final PoolEntry poolEntry, final SessionState target) {
+      try {
+         applySessionState(poolEntry, target);
+         return true;
+      } catch (SQLException e) {
+         LOGGER.warn("{} - Failed to apply {} on connection {}", poolName, target, poolEntry.connection, e);
+         closeConnection(poolEntry, "(session state could not be applied)");
+         return false;
+      }
+   }
+
+   /**
+    * Estimate how long a new borrower would wait for a connection.  If a connection is idle, or the pool can still
+    * grow, the wait is assumed to be zero.  Otherwise every thread ahead of the borrower is assumed to be served by
+    * one of the pool's connections after its mean usage time.
+    *
+    * @return the estimated wait in milliseconds
+    */
+   private long estimateWaitMillis() {
+      final int waiting = connectionBag.getWaitingThreadCount();
+      if (waiting == 0 && getIdleConnections() > 0 || getTotalConnections() < config.getMaximumPoolSize()) {
+         return 0L;
+      }
+
+      return (long) ((waiting + 1) * meanUsageMillis / config.getMaximumPoolSize());
+   }
+
    /**
     * Attempt to abort or close active connections.
     *
@@ -513,7 +1183,12 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
 
       final long startTime = currentTime();
       do {
-         final PoolEntry poolEntry = createPoolEntry();
+         PoolEntry poolEntry = createPoolEntry();
+         // in a multi-host pool each failed connection attempt marks its endpoint down, try the others right away
+         while (poolEntry == null && endpoints != null && endpoints.isAnyUp() && !(getLastConnectionFailure() instanceof ConnectionSetupException)) {
+            poolEntry = createPoolEntry();
+         }
+
          if (poolEntry != null) {
             if (config.getMinimumIdle() > 0) {
                connectionBag.add(poolEntry);
@@ -574,13 +1249,15 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
 
    /**
     * Create/initialize the Housekeeping service {@link ScheduledExecutorService}.  If the user specified an Executor
-    * to be used in the {@link HikariConfig}, then we use that.  If no Executor was specified (typical), then create
-    * an Executor and configure it.
+    * to be used in the {@link HikariConfig}, then we use that, otherwise if a shared {@link PoolRuntime} was specified
+    * we use its scheduler.  If neither was specified (typical), then create an Executor and configure it.
     *
-    * @return either the user specified {@link ScheduledExecutorService}, or the one we created
+    * @return either the user specified {@link ScheduledExecutorService}, the shared one, or the one we created
     */
    private ScheduledExecutorService initializeHouseKeepingExecutorService() {
-      if (config.getScheduledExecutor() == null) {
+      if (config.getScheduledExecutor() == null && config.getPoolRuntime() != null) {
+         return config.getPoolRuntime().getScheduler();
+      } else if (config.getScheduledExecutor() == null) {
          final ThreadFactory threadFactory = Optional.ofNullable(config.getThreadFactory()).orElseGet(() -> new DefaultThreadFactory(poolName + " housekeeper", true));
          final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, threadFactory, new ThreadPoolExecutor.DiscardPolicy());
          executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
@@ -595,7 +1272,7 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
     * Destroy (/shutdown) the Housekeeping service Executor, if it was the one that we created.
     */
    private void destroyHouseKeepingExecutorService() {
-      if (config.getScheduledExecutor() == null) {
+      if (config.getScheduledExecutor() == null && config.getPoolRuntime() == null) {
          houseKeepingExecutorService.shutdownNow();
       }
    }
@@ -654,18 +1331,26 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
    // ***********************************************************************
 
    /**
-    * Creating and adding poolEntries (connections) to the pool.
+    * Creating and adding poolEntries (connections) to the pool.  On a shared {@link PoolRuntime} a creator makes
+    * a single attempt per lane turn, and a failed attempt is retried by a new creator queued after the backoff,
+    * so that a pool whose database is down does not hold a shared worker while it backs off.
     */
    private final class PoolEntryCreator implements Callable<Boolean> {
       private final String loggingPrefix;
+      private final long initialBackoff;
 
       PoolEntryCreator(String loggingPrefix) {
+         this(loggingPrefix, 250L);
+      }
+
+      private PoolEntryCreator(String loggingPrefix, long initialBackoff) {
          this.loggingPrefix = loggingPrefix;
+         this.initialBackoff = initialBackoff;
       }
 
       @Override
       public Boolean call() {
-         long sleepBackoff = 250L;
+         long sleepBackoff = initialBackoff;
          while (poolState == POOL_NORMAL && shouldCreateAnotherConnection()) {
             final PoolEntry poolEntry = createPoolEntry();
             if (poolEntry != null) {
@@ -677,9 +1362,17 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
                return Boolean.TRUE;
             }
 
+            final long nextBackoff = Math.min(SECONDS.toMillis(10), Math.min(connectionTimeout, (long) (sleepBackoff * 1.5)));
+            if (addConnectionLane != null) {
+               // failed to get connection from db, retry on a later lane turn
+               final PoolEntryCreator retry = new PoolEntryCreator(loggingPrefix, nextBackoff);
+               addConnectionLane.executeLater(retry::call, sleepBackoff, MILLISECONDS);
+               return Boolean.FALSE;
+            }
+
             // failed to get connection from db, sleep and retry
             quietlySleep(sleepBackoff);
-            sleepBackoff = Math.min(SECONDS.toMillis(10), Math.min(connectionTimeout, (long) (sleepBackoff * 1.5)));
+            sleepBackoff = nextBackoff;
          }
          // Pool is suspended or shutdown or at max size
          return Boolean.FALSE;
@@ -692,8 +1385,54 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
        * @return true if we should create a connection, false if the need has disappeared
        */
       private boolean shouldCreateAnotherConnection() {
-         return getTotalConnections() < config.getMaximumPoolSize() &&
-            (connectionBag.getWaitingThreadCount() > 0 || getIdleConnections() < config.getMinimumIdle());
+         final int total = getTotalConnections();
+         return total < config.getMaximumPoolSize() &&
+            (connectionBag.getWaitingThreadCount() > 0 || getIdleConnections() < config.getMinimumIdle() || total < preScaleTarget);
+      }
+   }
+
+   /**
+    * The predictive pre-scaling task.  Tracks the borrow rate and the number of active connections with an
+    * EWMA, projects both trends over the time it takes to create a connection, and starts creating connections
+    * when the projected demand (per Little's law, the borrow rate times the mean usage time, or the projected
+    * active count if higher) exceeds the connections the pool has or is already adding.
+    */
+   private final class PreScaler implements Runnable {
+      private long previousTime = currentTime();
+      private long previousBorrows;
+      private double borrowRate;
+      private double activeConnections;
+
+      @Override
+      public void run() {
+         try {
+            final long now = currentTime();
+            final long borrows = borrowCounter.sum();
+            final double elapsed = Math.max(1L, elapsedMillis(previousTime, now));
+
+            final double previousRate = borrowRate;
+            final double previousActive = activeConnections;
+            borrowRate += ((borrows - previousBorrows) / elapsed - borrowRate) * PRE_SCALE_EWMA_ALPHA;
+            activeConnections += (getActiveConnections() - activeConnections) * PRE_SCALE_EWMA_ALPHA;
+            previousTime = now;
+            previousBorrows = borrows;
+
+            // only rising trends are projected, the house keeper retires surplus connections once demand falls
+            final double horizon = meanCreationMillis + elapsed;
+            final double projectedRate = borrowRate + Math.max(0.0, borrowRate - previousRate) / elapsed * horizon;
+            final double projectedActive = activeConnections + Math.max(0.0, activeConnections - previousActive) / elapsed * horizon;
+            final double projectedDemand = Math.max(projectedRate * meanUsageMillis, projectedActive) + connectionBag.getWaitingThreadCount();
+
+            final int target = Math.min(config.getMaximumPoolSize(), (int) Math.ceil(projectedDemand * config.getPreScaleAggressiveness() / 100.0));
+            preScaleTarget = target;
+
+            final int connectionsToAdd = target - getTotalConnections() - addConnectionQueue.size();
+            for (int i = 0; i < connectionsToAdd && poolState == POOL_NORMAL; i++) {
+               addConnectionExecutor.submit(POOL_ENTRY_CREATOR);
+            }
+         } catch (Exception e) {
+            LOGGER.error("Unexpected exception in pre-scaling task", e);
+         }
       }
    }
 
@@ -701,7 +1440,7 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
     * The house keeping task to retire and maintain minimum idle connections.
     */
    private final class HouseKeeper implements Runnable {
-      private volatile long previous = plusMillis(currentTime(), -HOUSEKEEPING_PERIOD_MS);
+      private volatile long previous = plusMillis(coarseTime(), -HOUSEKEEPING_PERIOD_MS);
 
       @Override
       public void run() {
@@ -711,9 +1450,12 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
             validationTimeout = config.getValidationTimeout();
             leakTaskFactory.updateLeakDetectionThreshold(config.getLeakDetectionThreshold());
             catalog = (config.getCatalog() != null && !config.getCatalog().equals(catalog)) ? config.getCatalog() : catalog;
+            if (tenantQuotas != null) {
+               tenantQuotas.setPermits(config.getMaximumPoolSize());
+            }
 
             final long idleTimeout = config.getIdleTimeout();
-            final long now = currentTime();
+            final long now = coarseTime();
 
             // Detect retrograde time, allowing +128ms as per NTP spec.
             if (plusMillis(now, 128) < plusMillis(previous, HOUSEKEEPING_PERIOD_MS)) {
@@ -746,6 +1488,10 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
 
             logPoolState(afterPrefix);
 
+            if (warmStartProfile != null) {
+               warmStartProfile.recordDemand(getActiveConnections() + getThreadsAwaitingConnection());
+            }
+
             fillPool(); // Try to maintain minimum connections
          } catch (Exception e) {
             LOGGER.error("Unexpected exception in housekeeping task", e);
@@ -753,6 +1499,21 @@ public final class HikariPool extends PoolBase implements HikariPoolMXBean, IBag
       }
    }
 
+   /**
+    * Holder of the executor on which all pools close and abort connections during a parallel shutdown.
+    */
+   private static final class ShutdownDrainer {
+      private static final int THREADS = Integer.getInteger("org.reploop.hikari.shutdownThreads", 64);
+      private static final ExecutorService EXECUTOR;
+
+      static {
+         final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 5L, SECONDS, new LinkedBlockingQueue<>(),
+            new DefaultThreadFactory("HikariCP shutdown drainer", true));
+         executor.allowCoreThreadTimeOut(true);
+         EXECUTOR = executor;
+      }
+   }
+
    public static class PoolInitializationException extends RuntimeException {
       private static final long serialVersionUID = 929872118275916520L;
 
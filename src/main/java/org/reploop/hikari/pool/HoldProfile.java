@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.reploop.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.reploop.hikari.util.ClockSource.elapsedMillis;
+
+/**
+ * The profile of one connection hold: where the connection was borrowed and the slowest statements executed
+ * on it.  When the connection is closed after being held for longer than the threshold, one event is logged
+ * with the hold time, the statement count and time, the slowest statements and the borrow site.
+ * <p>
+ * The borrow site is captured as an unresolved stack trace, the JVM only turns it into StackTraceElements
+ * for holds that are reported.
+ *
+ * @author Brett Wooldridge
+ */
+final class HoldProfile {
+   private static final Logger LOGGER = LoggerFactory.getLogger(HoldProfile.class);
+   private static final int MAX_STATEMENTS = 10;
+
+   private final long thresholdMs;
+   private final long borrowTime;
+   private final String threadName;
+   private final Exception borrowSite;
+
+   private final String[] sqls;
+   private final long[] nanos;
+   private int size;
+   private int executions;
+   private long statementNanos;
+
+   HoldProfile(final long thresholdMs, final long borrowTime) {
+      this.thresholdMs = thresholdMs;
+      this.borrowTime = borrowTime;
+      this.threadName = Thread.currentThread().getName();
+      this.borrowSite = new Exception("Connection borrowed here");
+      this.sqls = new String[MAX_STATEMENTS];
+      this.nanos = new long[MAX_STATEMENTS];
+   }
+
+   /**
+    * Record a statement execution, keeping the slowest {@value #MAX_STATEMENTS}.
+    *
+    * @param sql          the SQL text
+    * @param elapsedNanos the execution time
+    */
+   synchronized void recordStatement(final String sql, final long elapsedNanos) {
+      executions++;
+      statementNanos += elapsedNanos;
+
+      int slot = size;
+      if (size == MAX_STATEMENTS) {
+         slot = 0;
+         for (int i = 1; i < size; i++) {
+            if (nanos[i] < nanos[slot]) {
+               slot = i;
+            }
+         }
+         if (nanos[slot] >= elapsedNanos) {
+            return;
+         }
+      } else {
+         size++;
+      }
+
+      sqls[slot] = sql;
+      nanos[slot] = elapsedNanos;
+   }
+
+   synchronized int getExecutions() {
+      return executions;
+   }
+
+   /**
+    * Report the hold if it was longer than the threshold.
+    *
+    * @param poolName       the name of the pool
+    * @param connectionName the name of the physical connection
+    * @return true if the hold was reported
+    */
+   synchronized boolean report(final String poolName, final String connectionName) {
+      final long heldMillis = elapsedMillis(borrowTime);
+      if (heldMillis < thresholdMs) {
+         return false;
+      }
+
+      final Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+         order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Long.compare(nanos[b], nanos[a]));
+
+      final StringBuilder slowest = new StringBuilder();
+      for (int i : order) {
+         slowest.append(slowest.length() == 0 ? "" : "; ").append(NANOSECONDS.toMillis(nanos[i])).append("ms ").append(sqls[i]);
+      }
+
+      trimBorrowSite();
+      LOGGER.warn("{} - Long connection hold: connection={}, thread={}, heldMs={}, statements={}, statementMs={}, outsideStatementsMs={}, slowest=[{}], borrow site follows",
+         poolName, connectionName, threadName, heldMillis, executions, NANOSECONDS.toMillis(statementNanos),
+         Math.max(0L, heldMillis - NANOSECONDS.toMillis(statementNanos)), slowest, borrowSite);
+      return true;
+   }
+
+   /**
+    * Remove the frames of the pool itself from the top of the borrow site.
+    */
+   private void trimBorrowSite() {
+      final StackTraceElement[] stackTrace = borrowSite.getStackTrace();
+      int first = 0;
+      while (first < stackTrace.length - 1 && isPoolFrame(stackTrace[first])) {
+         first++;
+      }
+      borrowSite.setStackTrace(Arrays.copyOfRange(stackTrace, first, stackTrace.length));
+   }
+
+   private static boolean isPoolFrame(final StackTraceElement frame) {
+      final String className = frame.getClassName();
+      return className.equals(HoldProfile.class.getName()) || className.equals(HikariPool.class.getName()) || className.equals(HikariDataSource.class.getName());
+   }
+}
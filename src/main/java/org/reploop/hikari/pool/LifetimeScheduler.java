@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Assigns connection lifetimes so that retirements are spread evenly over time instead of happening in
+ * cohorts, and limits the number of retirements in progress at the same time.
+ * <p>
+ * Each connection is given the latest retirement time, no later than maxLifetime less 2.5% from its creation
+ * and no earlier than half of maxLifetime, that is at least {@code maxLifetime / (2 * maximumPoolSize)} away
+ * from every other scheduled retirement.  A pool filled all at once therefore retires its connections one
+ * at a time across the second half of their lifetime, and the replacements inherit that spacing.
+ *
+ * @author Brett Wooldridge
+ */
+final class LifetimeScheduler {
+   private final Semaphore retirements;
+   private final TreeSet<Long> slots;
+   private volatile long spacing;
+
+   LifetimeScheduler(final int maxConcurrentRetirements) {
+      this.retirements = new Semaphore(maxConcurrentRetirements);
+      this.slots = new TreeSet<>();
+      this.spacing = 1L;
+   }
+
+   /**
+    * Assign the lifetime of a connection created now.
+    *
+    * @param maxLifetime     the maximum lifetime of a connection
+    * @param maximumPoolSize the maximum size of the pool
+    * @return the lifetime in milliseconds
+    */
+   synchronized long nextLifetime(final long maxLifetime, final int maximumPoolSize) {
+      final long now = NANOSECONDS.toMillis(System.nanoTime());
+      final long spacing = Math.max(1L, maxLifetime / (2L * maximumPoolSize));
+      this.spacing = spacing;
+      slots.headSet(now).clear();
+
+      final long latest = now + maxLifetime - maxLifetime / 40;
+      final long earliest = now + maxLifetime / 2;
+      long time = latest;
+      while (time >= earliest) {
+         final Long lower = slots.floor(time);
+         final Long higher = slots.ceiling(time);
+         if (lower != null && time - lower < spacing) {
+            time = lower - spacing;
+         } else if (higher != null && higher - time < spacing) {
+            time = higher - spacing;
+         } else {
+            slots.add(time);
+            return time - now;
+         }
+      }
+
+      // every slot is taken, which only happens when connections are created faster than they are retired
+      slots.add(latest);
+      return latest - now;
+   }
+
+   /**
+    * Get the delay after which a retirement that could not begin should be attempted again.
+    *
+    * @return the delay in milliseconds
+    */
+   long getRetryDelay() {
+      return Math.min(spacing, 1000L);
+   }
+
+   /**
+    * Begin a retirement if fewer than maxConcurrentRetirements are in progress.
+    *
+    * @return true if the retirement may begin, in which case {@link #endRetirement()} must follow
+    */
+   boolean tryBeginRetirement() {
+      return retirements.tryAcquire();
+   }
+
+   void endRetirement() {
+      retirements.release();
+   }
+}
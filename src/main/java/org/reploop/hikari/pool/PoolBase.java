@@ -35,7 +35,10 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLTransientConnectionException;
 import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -77,6 +80,16 @@ abstract class PoolBase {
 
    private final boolean isUseJdbc4Validation;
    private final boolean isIsolateInternalQueries;
+   final boolean isSessionStateAffinity;
+   final int batchCoalescingSize;
+   final int coalescedUpdateCount;
+   final TraceRecorder traceRecorder;
+   final SqlMetrics sqlMetrics;
+   final FetchSizeTuner fetchSizeTuner;
+   final Endpoints endpoints;
+   private final Set<String> fatalSqlStates;
+
+   private volatile SessionState defaultSessionState;
 
    private volatile boolean isValidChecked;
 
@@ -94,11 +107,26 @@ abstract class PoolBase {
       this.isNetworkTimeoutSupported = UNINITIALIZED;
       this.isUseJdbc4Validation = config.getConnectionTestQuery() == null;
       this.isIsolateInternalQueries = config.isIsolateInternalQueries();
+      this.isSessionStateAffinity = config.isSessionStateAffinity();
+      this.batchCoalescingSize = config.getBatchCoalescingSize();
+      this.coalescedUpdateCount = config.getCoalescedUpdateCount();
 
       this.poolName = config.getPoolName();
       this.connectionTimeout = config.getConnectionTimeout();
       this.validationTimeout = config.getValidationTimeout();
       this.lastConnectionFailure = new AtomicReference<>();
+      this.traceRecorder = TraceRecorder.create(poolName);
+      this.sqlMetrics = config.getSqlMetricsSize() > 0 ? new SqlMetrics(config.getSqlMetricsSize(), this) : null;
+      this.fetchSizeTuner = config.getFetchMemoryLimit() > 0 ? new FetchSizeTuner(config.getFetchMemoryLimit()) : null;
+      this.endpoints = createEndpoints();
+      this.fatalSqlStates = new HashSet<>();
+      if (config.getFatalSqlStates() != null) {
+         for (String sqlState : config.getFatalSqlStates().split(",")) {
+            if (!sqlState.trim().isEmpty()) {
+               fatalSqlStates.add(sqlState.trim());
+            }
+         }
+      }
 
       initializeDataSource();
    }
@@ -118,12 +146,16 @@ abstract class PoolBase {
    // ***********************************************************************
 
    void quietlyCloseConnection(final Connection connection, final String closureReason) {
+      quietlyCloseConnection(connection, closureReason, SECONDS.toMillis(15));
+   }
+
+   void quietlyCloseConnection(final Connection connection, final String closureReason, final long closeTimeoutMs) {
       if (connection != null) {
          try {
             LOGGER.debug("{} - Closing connection {}: {}", poolName, connection, closureReason);
 
             try {
-               setNetworkTimeout(connection, SECONDS.toMillis(15));
+               setNetworkTimeout(connection, closeTimeoutMs);
             } catch (SQLException e) {
                // ignore
             } finally {
@@ -136,6 +168,14 @@ abstract class PoolBase {
    }
 
    boolean isConnectionAlive(final Connection connection) {
+      final boolean isAlive = checkConnectionAlive(connection);
+      if (traceRecorder != null) {
+         traceRecorder.record(TraceRecorder.VALIDATE, connection, isAlive ? 1L : 0L);
+      }
+      return isAlive;
+   }
+
+   private boolean checkConnectionAlive(final Connection connection) {
       try {
          try {
             setNetworkTimeout(connection, validationTimeout);
@@ -170,6 +210,16 @@ abstract class PoolBase {
       }
    }
 
+   /**
+    * Determine whether an SQLSTATE indicates that every connection of the pool is dead.
+    *
+    * @param sqlState the SQLSTATE
+    * @return true if the state is one of the configured fatal SQLSTATEs
+    */
+   boolean isFatalSqlState(final String sqlState) {
+      return sqlState != null && fatalSqlStates.contains(sqlState);
+   }
+
    Throwable getLastConnectionFailure() {
       return lastConnectionFailure.get();
    }
@@ -183,7 +233,32 @@ abstract class PoolBase {
    // ***********************************************************************
 
    PoolEntry newPoolEntry() throws Exception {
-      return new PoolEntry(newConnection(), this, isReadOnly, isAutoCommit);
+      final Endpoints.Endpoint endpoint = endpoints != null ? endpoints.select() : null;
+      if (traceRecorder == null) {
+         return new PoolEntry(newConnection(endpoint), this, endpoint, isReadOnly, isAutoCommit);
+      }
+
+      final long start = System.nanoTime();
+      final Connection connection = newConnection(endpoint);
+      traceRecorder.record(TraceRecorder.CREATE, connection, System.nanoTime() - start);
+      return new PoolEntry(connection, this, endpoint, isReadOnly, isAutoCommit);
+   }
+
+   /**
+    * Probe an endpoint that is down by creating a connection to it and validating it.
+    *
+    * @param endpoint the endpoint to probe
+    * @return true if the endpoint is reachable again
+    */
+   boolean probeEndpoint(final Endpoints.Endpoint endpoint) {
+      final String username = config.getUsername();
+      final String password = config.getPassword();
+      try (Connection connection = (username == null) ? endpoint.dataSource.getConnection() : endpoint.dataSource.getConnection(username, password)) {
+         return connection != null && connection.isValid((int) MILLISECONDS.toSeconds(Math.max(1000L, validationTimeout)));
+      } catch (Exception e) {
+         LOGGER.debug("{} - Probe of endpoint {} failed: {}", poolName, endpoint, e.getMessage());
+         return false;
+      }
    }
 
    void resetConnectionState(final Connection connection, final ProxyConnection proxyConnection, final int dirtyBits) throws SQLException {
@@ -224,8 +299,126 @@ abstract class PoolBase {
       }
    }
 
+   /**
+    * Reset the state of a returned connection.  With session state affinity the reset is deferred: only the network
+    * timeout is reset, and the resulting session state is recorded in the PoolEntry to be matched or changed lazily
+    * by the next borrower.
+    *
+    * @param poolEntry       the PoolEntry being returned
+    * @param proxyConnection the ProxyConnection holding the session state
+    * @param dirtyBits       the session attributes changed through the ProxyConnection
+    * @throws SQLException thrown if a reset fails
+    */
+   void resetConnectionState(final PoolEntry poolEntry, final ProxyConnection proxyConnection, final int dirtyBits) throws SQLException {
+      if (!isSessionStateAffinity) {
+         resetConnectionState(poolEntry.connection, proxyConnection, dirtyBits);
+         return;
+      }
+
+      if ((dirtyBits & ProxyConnection.DIRTY_BIT_NETTIMEOUT) != 0) {
+         resetConnectionState(poolEntry.connection, proxyConnection, ProxyConnection.DIRTY_BIT_NETTIMEOUT);
+      }
+
+      final SessionState current = getSessionState(poolEntry);
+      poolEntry.sessionState = new SessionState(
+         (dirtyBits & ProxyConnection.DIRTY_BIT_READONLY) != 0 ? proxyConnection.getReadOnlyState() : current.readOnly,
+         (dirtyBits & ProxyConnection.DIRTY_BIT_AUTOCOMMIT) != 0 ? proxyConnection.getAutoCommitState() : current.autoCommit,
+         (dirtyBits & ProxyConnection.DIRTY_BIT_ISOLATION) != 0 ? proxyConnection.getTransactionIsolationState() : current.transactionIsolation,
+         (dirtyBits & ProxyConnection.DIRTY_BIT_CATALOG) != 0 ? proxyConnection.getCatalogState() : current.catalog,
+         (dirtyBits & ProxyConnection.DIRTY_BIT_SCHEMA) != 0 ? proxyConnection.getSchemaState() : current.schema);
+   }
+
+   /**
+    * Get the session state of the physical connection held by a PoolEntry.
+    *
+    * @param poolEntry the PoolEntry
+    * @return the recorded session state, or the pool defaults if none was recorded
+    */
+   SessionState getSessionState(final PoolEntry poolEntry) {
+      final SessionState state = poolEntry.sessionState;
+      return state != null ? state : resolveSessionState(null);
+   }
+
+   /**
+    * Resolve the attributes of a SessionState that refer to the pool defaults.
+    *
+    * @param state the requested state, or null for the pool defaults
+    * @return a SessionState without unspecified attributes
+    */
+   SessionState resolveSessionState(final SessionState state) {
+      if (state == null) {
+         SessionState defaults = defaultSessionState;
+         if (defaults == null || defaults.transactionIsolation != transactionIsolation || !Objects.equals(defaults.catalog, catalog)) {
+            defaultSessionState = defaults = new SessionState(isReadOnly, isAutoCommit, transactionIsolation, catalog, schema);
+         }
+         return defaults;
+      }
+
+      if (state.transactionIsolation != -1 && state.catalog != null && state.schema != null) {
+         return state;
+      }
+
+      return new SessionState(state.readOnly, state.autoCommit,
+         state.transactionIsolation != -1 ? state.transactionIsolation : transactionIsolation,
+         state.catalog != null ? state.catalog : catalog,
+         state.schema != null ? state.schema : schema);
+   }
+
+   /**
+    * Bring the physical connection of a borrowed PoolEntry into the specified (resolved) session state, changing
+    * only the attributes that differ from its recorded state.
+    *
+    * @param poolEntry the borrowed PoolEntry
+    * @param target    the resolved SessionState
+    * @throws SQLException thrown if changing the state fails
+    */
+   void applySessionState(final PoolEntry poolEntry, final SessionState target) throws SQLException {
+      final SessionState current = getSessionState(poolEntry);
+      if (current.equals(target)) {
+         return;
+      }
+
+      final Connection connection = poolEntry.connection;
+      int resetBits = 0;
+
+      if (current.readOnly != target.readOnly) {
+         connection.setReadOnly(target.readOnly);
+         resetBits |= ProxyConnection.DIRTY_BIT_READONLY;
+      }
+
+      if (current.autoCommit != target.autoCommit) {
+         connection.setAutoCommit(target.autoCommit);
+         resetBits |= ProxyConnection.DIRTY_BIT_AUTOCOMMIT;
+      }
+
+      if (current.transactionIsolation != target.transactionIsolation && target.transactionIsolation != -1) {
+         connection.setTransactionIsolation(target.transactionIsolation);
+         resetBits |= ProxyConnection.DIRTY_BIT_ISOLATION;
+      }
+
+      if (target.catalog != null && !target.catalog.equals(current.catalog)) {
+         connection.setCatalog(target.catalog);
+         resetBits |= ProxyConnection.DIRTY_BIT_CATALOG;
+      }
+
+      if (target.schema != null && !target.schema.equals(current.schema)) {
+         connection.setSchema(target.schema);
+         resetBits |= ProxyConnection.DIRTY_BIT_SCHEMA;
+      }
+
+      poolEntry.sessionState = target;
+
+      if (resetBits != 0 && LOGGER.isDebugEnabled()) {
+         LOGGER.debug("{} - Applied ({}) on connection {}", poolName, stringFromResetBits(resetBits), connection);
+      }
+   }
+
+   Executor getNetworkTimeoutExecutor() {
+      return netTimeoutExecutor;
+   }
+
    void shutdownNetworkTimeoutExecutor() {
-      if (netTimeoutExecutor instanceof ThreadPoolExecutor) {
+      if (netTimeoutExecutor instanceof ThreadPoolExecutor && config.getPoolRuntime() == null) {
          ((ThreadPoolExecutor) netTimeoutExecutor).shutdownNow();
       }
    }
@@ -294,11 +487,31 @@ abstract class PoolBase {
    //                          Private methods
    // ***********************************************************************
 
+   /**
+    * Create the endpoints of a multi-host pool, one DriverDataSource for each of the configured jdbcUrls.
+    *
+    * @return the endpoints, or null if the pool uses a single DataSource
+    */
+   private Endpoints createEndpoints() {
+      final String jdbcUrls = config.getJdbcUrls();
+      if (jdbcUrls == null || config.getDataSource() != null || config.getDataSourceClassName() != null) {
+         return null;
+      }
+
+      final String[] urls = jdbcUrls.trim().split("\\s+");
+      final DataSource[] dataSources = new DataSource[urls.length];
+      for (int i = 0; i < urls.length; i++) {
+         dataSources[i] = new DriverDataSource(urls[i], config.getDriverClassName(), config.getDataSourceProperties(), config.getUsername(), config.getPassword());
+      }
+
+      return new Endpoints(poolName, urls, dataSources);
+   }
+
    /**
     * Create/initialize the underlying DataSource.
     */
    private void initializeDataSource() {
-      final String jdbcUrl = config.getJdbcUrl();
+      final String jdbcUrl = endpoints != null ? endpoints.getEndpoints()[0].url : config.getJdbcUrl();
       final String username = config.getUsername();
       final String password = config.getPassword();
       final String dsClassName = config.getDataSourceClassName();
@@ -307,7 +520,9 @@ abstract class PoolBase {
       final Properties dataSourceProperties = config.getDataSourceProperties();
 
       DataSource dataSource = config.getDataSource();
-      if (dsClassName != null && dataSource == null) {
+      if (endpoints != null) {
+         dataSource = endpoints.getEndpoints()[0].dataSource;
+      } else if (dsClassName != null && dataSource == null) {
          dataSource = UtilityElf.createInstance(dsClassName, DataSource.class);
          PropertyElf.setTargetFromProperties(dataSource, dataSourceProperties);
       } else if (jdbcUrl != null && dataSource == null) {
@@ -332,9 +547,10 @@ abstract class PoolBase {
    /**
     * Obtain connection from data source.
     *
+    * @param endpoint the endpoint to connect to, or null if the pool uses a single DataSource
     * @return a Connection connection
     */
-   private Connection newConnection() throws Exception {
+   private Connection newConnection(final Endpoints.Endpoint endpoint) throws Exception {
       final long start = ClockSource.currentTime();
 
       Connection connection = null;
@@ -342,15 +558,24 @@ abstract class PoolBase {
          String username = config.getUsername();
          String password = config.getPassword();
 
+         final DataSource dataSource = endpoint != null ? endpoint.dataSource : this.dataSource;
          connection = (username == null) ? dataSource.getConnection() : dataSource.getConnection(username, password);
          if (connection == null) {
             throw new SQLTransientConnectionException("DataSource returned null unexpectedly");
          }
 
+         if (endpoint != null) {
+            endpoints.recordConnect(endpoint, ClockSource.elapsedMillis(start), true);
+         }
+
          setupConnection(connection);
          lastConnectionFailure.set(null);
          return connection;
       } catch (Exception e) {
+         if (endpoint != null && connection == null) {
+            endpoints.recordConnect(endpoint, ClockSource.elapsedMillis(start), false);
+         }
+
          if (connection != null) {
             quietlyCloseConnection(connection, "(Failed to create/setup connection)");
          } else if (getLastConnectionFailure() == null) {
@@ -542,6 +767,8 @@ abstract class PoolBase {
          (jdbcUrl != null && jdbcUrl.contains("mysql")) ||
          (dataSource != null && dataSource.getClass().getName().contains("Mysql"))) {
          netTimeoutExecutor = new SynchronousExecutor();
+      } else if (config.getPoolRuntime() != null) {
+         netTimeoutExecutor = config.getPoolRuntime().getNetworkTimeoutExecutor();
       } else {
          ThreadFactory threadFactory = config.getThreadFactory();
          threadFactory = threadFactory != null ? threadFactory : new UtilityElf.DefaultThreadFactory(poolName + " network timeout executor", true);
@@ -635,6 +862,15 @@ abstract class PoolBase {
       default void recordConnectionTimeout() {
       }
 
+      default void recordSqlExecution(final String fingerprint, final long elapsedNanos, final long rows) {
+      }
+
+      default void recordTenantBorrowStats(final String tenant, final long startTime) {
+      }
+
+      default void recordTenantUsage(final String tenant, final long usageMillis) {
+      }
+
       @Override
       default void close() {
       }
@@ -679,6 +915,21 @@ abstract class PoolBase {
          tracker.recordConnectionTimeout();
       }
 
+      @Override
+      public void recordSqlExecution(final String fingerprint, final long elapsedNanos, final long rows) {
+         tracker.recordSqlExecutionNanos(fingerprint, elapsedNanos, rows);
+      }
+
+      @Override
+      public void recordTenantBorrowStats(final String tenant, final long startTime) {
+         tracker.recordTenantAcquiredNanos(tenant, ClockSource.elapsedNanos(startTime));
+      }
+
+      @Override
+      public void recordTenantUsage(final String tenant, final long usageMillis) {
+         tracker.recordTenantUsageMillis(tenant, usageMillis);
+      }
+
       @Override
       public void close() {
          tracker.close();
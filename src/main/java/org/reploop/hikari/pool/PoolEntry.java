@@ -23,7 +23,6 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
@@ -35,34 +34,43 @@ import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 final class PoolEntry implements ConcurrentBag.IConcurrentBagEntry {
    private static final Logger LOGGER = LoggerFactory.getLogger(PoolEntry.class);
    private static final AtomicIntegerFieldUpdater<PoolEntry> stateUpdater;
+   private static final AtomicIntegerFieldUpdater<PoolEntry> replacingUpdater;
 
    Connection connection;
    long lastAccessed;
    long lastBorrowed;
+   SessionState sessionState;
+   TenantQuotas.Tenant tenant;
 
    @SuppressWarnings("FieldCanBeLocal")
    private volatile int state = 0;
    private volatile boolean evict;
+   @SuppressWarnings("FieldCanBeLocal")
+   private volatile int replacing = 0;
 
    private volatile ScheduledFuture<?> endOfLife;
 
-   private final FastList<Statement> openStatements;
+   private final FastList<ProxyStatement> openStatements;
    private final HikariPool hikariPool;
+   // the endpoint of a multi-host pool this connection was created on, null for a single endpoint pool
+   final Endpoints.Endpoint endpoint;
 
    private final boolean isReadOnly;
    private final boolean isAutoCommit;
 
    static {
       stateUpdater = AtomicIntegerFieldUpdater.newUpdater(PoolEntry.class, "state");
+      replacingUpdater = AtomicIntegerFieldUpdater.newUpdater(PoolEntry.class, "replacing");
    }
 
-   PoolEntry(final Connection connection, final PoolBase pool, final boolean isReadOnly, final boolean isAutoCommit) {
+   PoolEntry(final Connection connection, final PoolBase pool, final Endpoints.Endpoint endpoint, final boolean isReadOnly, final boolean isAutoCommit) {
       this.connection = connection;
       this.hikariPool = (HikariPool) pool;
+      this.endpoint = endpoint;
       this.isReadOnly = isReadOnly;
       this.isAutoCommit = isAutoCommit;
-      this.lastAccessed = ClockSource.currentTime();
-      this.openStatements = new FastList<>(Statement.class, 16);
+      this.lastAccessed = ClockSource.coarseTime();
+      this.openStatements = new FastList<>(ProxyStatement.class, 16);
    }
 
    /**
@@ -73,6 +81,9 @@ final class PoolEntry implements ConcurrentBag.IConcurrentBagEntry {
    void recycle(final long lastAccessed) {
       if (connection != null) {
          this.lastAccessed = lastAccessed;
+         if (hikariPool.traceRecorder != null) {
+            hikariPool.traceRecorder.record(TraceRecorder.RETURN, connection, ClockSource.elapsedNanos(lastBorrowed));
+         }
          hikariPool.recycle(this);
       }
    }
@@ -87,11 +98,22 @@ final class PoolEntry implements ConcurrentBag.IConcurrentBagEntry {
    }
 
    Connection createProxyConnection(final ProxyLeakTask leakTask, final long now) {
-      return ProxyFactory.getProxyConnection(this, connection, openStatements, leakTask, now, isReadOnly, isAutoCommit);
+      final SessionState state = sessionState;
+      return state == null
+         ? ProxyFactory.getProxyConnection(this, connection, openStatements, leakTask, now, isReadOnly, isAutoCommit)
+         : ProxyFactory.getProxyConnection(this, connection, openStatements, leakTask, now, state.readOnly, state.autoCommit);
    }
 
    void resetConnectionState(final ProxyConnection proxyConnection, final int dirtyBits) throws SQLException {
-      hikariPool.resetConnectionState(connection, proxyConnection, dirtyBits);
+      hikariPool.resetConnectionState(this, proxyConnection, dirtyBits);
+   }
+
+   FastList<ProxyStatement> getOpenStatements() {
+      return openStatements;
+   }
+
+   HikariPool getPool() {
+      return hikariPool;
    }
 
    String getPoolName() {
@@ -106,6 +128,15 @@ final class PoolEntry implements ConcurrentBag.IConcurrentBagEntry {
       this.evict = true;
    }
 
+   /**
+    * Claim the replacement of this entry by a successor, so that it is replaced only once.
+    *
+    * @return true if the caller should create the successor, false if another caller already is
+    */
+   boolean beginReplacement() {
+      return replacingUpdater.compareAndSet(this, 0, 1);
+   }
+
    void evict(final String closureReason) {
       hikariPool.closeConnection(this, closureReason);
    }
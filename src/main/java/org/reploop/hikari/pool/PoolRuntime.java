@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.reploop.hikari.util.UtilityElf.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Executor infrastructure that can be shared by any number of pools, so that the number of background
+ * threads does not grow with the number of pools.  A PoolRuntime holds a single housekeeping scheduler,
+ * a bounded set of workers that create and close connections, and a single network timeout executor.
+ * <p>
+ * Each pool submits connection creation and closing work to its own {@link Lane}.  A lane runs at most
+ * one task at a time, just as the per-pool adder and closer executors do, and after each task it goes to
+ * the back of the workers' queue, so a pool with a long backlog cannot starve the other pools.  A task that
+ * must wait before it runs again, such as a connection creation retry, waits on the scheduler rather than
+ * on a worker.
+ * <p>
+ * Pools opt in via {@link org.reploop.hikari.HikariConfig#setPoolRuntime(PoolRuntime)}.  Pools never shut
+ * down a shared runtime; the owner should {@link #close()} it after the pools using it have been closed.
+ *
+ * @author Brett Wooldridge
+ */
+public final class PoolRuntime implements AutoCloseable {
+   private static final Logger LOGGER = LoggerFactory.getLogger(PoolRuntime.class);
+
+   private final ScheduledThreadPoolExecutor scheduler;
+   private final ThreadPoolExecutor workers;
+   private final ThreadPoolExecutor networkTimeoutExecutor;
+
+   /**
+    * Construct a PoolRuntime with one worker per available processor.
+    */
+   public PoolRuntime() {
+      this(Runtime.getRuntime().availableProcessors(), null);
+   }
+
+   /**
+    * Construct a PoolRuntime with the specified number of connection creation/closing workers.
+    *
+    * @param workerThreads the maximum number of threads creating or closing connections across all pools
+    * @param threadFactory an optional ThreadFactory, if null daemon threads are created
+    */
+   public PoolRuntime(final int workerThreads, final ThreadFactory threadFactory) {
+      if (workerThreads < 1) {
+         throw new IllegalArgumentException("workerThreads cannot be less than 1");
+      }
+
+      this.scheduler = new ScheduledThreadPoolExecutor(1, factory(threadFactory, "HikariCP housekeeper"), new ThreadPoolExecutor.DiscardPolicy());
+      this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      this.scheduler.setRemoveOnCancelPolicy(true);
+
+      this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 5, SECONDS, new LinkedBlockingQueue<>(),
+         factory(threadFactory, "HikariCP connection worker"), new ThreadPoolExecutor.DiscardPolicy());
+      this.workers.allowCoreThreadTimeOut(true);
+
+      this.networkTimeoutExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 15, SECONDS, new SynchronousQueue<>(),
+         factory(threadFactory, "HikariCP network timeout executor"));
+   }
+
+   /**
+    * Get the scheduler shared by all pools for housekeeping, maxLifetime and leak detection tasks.
+    *
+    * @return the shared scheduler
+    */
+   public ScheduledExecutorService getScheduler() {
+      return scheduler;
+   }
+
+   /**
+    * Get the executor shared by all pools for {@link java.sql.Connection#setNetworkTimeout}.
+    *
+    * @return the shared network timeout executor
+    */
+   public Executor getNetworkTimeoutExecutor() {
+      return networkTimeoutExecutor;
+   }
+
+   /**
+    * Get the number of threads currently alive in this runtime.
+    *
+    * @return the current thread count
+    */
+   public int getThreadCount() {
+      return scheduler.getPoolSize() + workers.getPoolSize() + networkTimeoutExecutor.getPoolSize();
+   }
+
+   /**
+    * Shutdown the scheduler, workers and network timeout executor of this runtime.
+    */
+   @Override
+   public void close() {
+      scheduler.shutdownNow();
+      workers.shutdownNow();
+      networkTimeoutExecutor.shutdownNow();
+   }
+
+   /**
+    * Create a new lane on which a pool serially executes its tasks using the shared workers.
+    *
+    * @param queueSize          the maximum number of queued tasks
+    * @param callerRunsWhenFull true if a task that does not fit in the queue is run by the calling thread,
+    *                           false if it is discarded
+    * @return a new Lane
+    */
+   Lane newLane(final int queueSize, final boolean callerRunsWhenFull) {
+      return new Lane(queueSize, callerRunsWhenFull);
+   }
+
+   private static ThreadFactory factory(final ThreadFactory threadFactory, final String threadName) {
+      return threadFactory != null ? threadFactory : new DefaultThreadFactory(threadName, true);
+   }
+
+   /**
+    * A per-pool executor that runs its tasks one at a time on the shared workers.  While it has queued tasks
+    * the lane itself is queued on the workers exactly once, and it runs a single task each time it is dequeued,
+    * which gives the lanes of all pools round-robin access to the workers.
+    */
+   final class Lane extends AbstractExecutorService implements Runnable {
+      private final BlockingQueue<Runnable> queue;
+      private final ConcurrentLinkedQueue<Runnable> delayed;
+      private final Collection<Runnable> queueView;
+      private final boolean callerRunsWhenFull;
+      private final AtomicBoolean scheduled;
+      private volatile boolean shutdown;
+      private volatile boolean running;
+
+      private Lane(final int queueSize, final boolean callerRunsWhenFull) {
+         this.queue = new LinkedBlockingQueue<>(queueSize);
+         this.delayed = new ConcurrentLinkedQueue<>();
+         this.queueView = new AbstractCollection<Runnable>() {
+            @Override
+            public Iterator<Runnable> iterator() {
+               final List<Runnable> tasks = new ArrayList<>(queue);
+               tasks.addAll(delayed);
+               return unmodifiableList(tasks).iterator();
+            }
+
+            @Override
+            public int size() {
+               return queue.size() + delayed.size();
+            }
+         };
+         this.callerRunsWhenFull = callerRunsWhenFull;
+         this.scheduled = new AtomicBoolean();
+      }
+
+      /**
+       * Get a read-only view of the queued tasks, including the tasks waiting to be queued by
+       * {@link #executeLater(Runnable, long, TimeUnit)}.
+       *
+       * @return the queued tasks
+       */
+      Collection<Runnable> getQueue() {
+         return queueView;
+      }
+
+      /**
+       * Queue the specified task on this lane after the specified delay.  The task waits on the shared scheduler,
+       * so no worker is held while it waits.
+       *
+       * @param task  the task to execute
+       * @param delay the time to wait before queueing the task
+       * @param unit  the unit of the delay
+       */
+      void executeLater(final Runnable task, final long delay, final TimeUnit unit) {
+         if (shutdown) {
+            return;
+         }
+
+         delayed.add(task);
+         scheduler.schedule(() -> {
+            if (delayed.remove(task)) {
+               execute(task);
+            }
+         }, delay, unit);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void execute(final Runnable task) {
+         if (shutdown) {
+            return;
+         }
+
+         if (!queue.offer(task)) {
+            if (callerRunsWhenFull) {
+               task.run();
+            }
+            return;
+         }
+
+         if (scheduled.compareAndSet(false, true)) {
+            workers.execute(this);
+         }
+      }
+
+      /**
+       * Run a single queued task, then requeue this lane behind the other lanes if more tasks remain.
+       */
+      @Override
+      public void run() {
+         final Runnable task = queue.poll();
+         if (task != null) {
+            running = true;
+            try {
+               task.run();
+            } catch (Throwable e) {
+               LOGGER.warn("Exception thrown by a task executed by the shared pool runtime", e);
+            } finally {
+               running = false;
+            }
+         }
+
+         scheduled.set(false);
+         if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            workers.execute(this);
+         } else if (shutdown) {
+            synchronized (this) {
+               notifyAll();
+            }
+         }
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void shutdown() {
+         shutdown = true;
+         delayed.clear();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public List<Runnable> shutdownNow() {
+         shutdown = true;
+         final List<Runnable> pending = new ArrayList<>();
+         queue.drainTo(pending);
+         pending.addAll(delayed);
+         delayed.clear();
+         return pending;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public boolean isShutdown() {
+         return shutdown;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public boolean isTerminated() {
+         return shutdown && !running && queue.isEmpty();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public synchronized boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+         final long deadline = System.nanoTime() + unit.toNanos(timeout);
+         while (!isTerminated()) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || workers.isShutdown()) {
+               return isTerminated();
+            }
+
+            // a short bounded wait, since the final task may complete between the check and the wait
+            wait(Math.max(1L, Math.min(TimeUnit.NANOSECONDS.toMillis(remaining), 100L)));
+         }
+
+         return true;
+      }
+   }
+}
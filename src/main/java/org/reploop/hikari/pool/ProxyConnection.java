@@ -22,6 +22,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.HashSet;
@@ -48,11 +50,17 @@ public abstract class ProxyConnection implements Connection {
    @SuppressWarnings("WeakerAccess")
    protected Connection delegate;
 
-   private final PoolEntry poolEntry;
-   private final ProxyLeakTask leakTask;
-   private final FastList<Statement> openStatements;
+   private PoolEntry poolEntry;
+   private ProxyLeakTask leakTask;
+   private FastList<ProxyStatement> openStatements;
+
+   private HikariPool transactionScopePool;
+   private Connection unboundConnection;
 
    private int dirtyBits;
+   HoldProfile holdProfile;
+   // the statement with coalesced updates that have not been sent yet
+   ProxyPreparedStatement coalescingStatement;
    private long lastAccess;
    private boolean isCommitStateDirty;
 
@@ -81,7 +89,7 @@ public abstract class ProxyConnection implements Connection {
       ERROR_CODES.add(2399);
    }
 
-   protected ProxyConnection(final PoolEntry poolEntry, final Connection connection, final FastList<Statement> openStatements, final ProxyLeakTask leakTask, final long now, final boolean isReadOnly, final boolean isAutoCommit) {
+   protected ProxyConnection(final PoolEntry poolEntry, final Connection connection, final FastList<ProxyStatement> openStatements, final ProxyLeakTask leakTask, final long now, final boolean isReadOnly, final boolean isAutoCommit) {
       this.poolEntry = poolEntry;
       this.delegate = connection;
       this.openStatements = openStatements;
@@ -137,13 +145,16 @@ public abstract class ProxyConnection implements Connection {
 
    final SQLException checkException(SQLException sqle) {
       SQLException nse = sqle;
-      for (int depth = 0; delegate != ClosedConnection.CLOSED_CONNECTION && nse != null && depth < 10; depth++) {
+      for (int depth = 0; delegate != ClosedConnection.CLOSED_CONNECTION && delegate != unboundConnection && nse != null && depth < 10; depth++) {
          final String sqlState = nse.getSQLState();
-         if (sqlState != null && sqlState.startsWith("08") || ERROR_STATES.contains(sqlState) || ERROR_CODES.contains(nse.getErrorCode())) {
+         final boolean isFatal = poolEntry.getPool().isFatalSqlState(sqlState);
+         if (sqlState != null && sqlState.startsWith("08") || ERROR_STATES.contains(sqlState) || ERROR_CODES.contains(nse.getErrorCode()) || isFatal) {
             // broken connection
             LOGGER.warn("{} - Connection {} marked as broken because of SQLSTATE({}), ErrorCode({})",
                poolEntry.getPoolName(), delegate, sqlState, nse.getErrorCode(), nse);
             leakTask.cancel();
+            // mark the endpoint down before the eviction refills the pool, so the refill goes to another endpoint
+            poolEntry.getPool().handleBrokenConnection(poolEntry, sqlState, isFatal);
             poolEntry.evict("(connection is broken)");
             delegate = ClosedConnection.CLOSED_CONNECTION;
          } else {
@@ -154,24 +165,297 @@ public abstract class ProxyConnection implements Connection {
       return sqle;
    }
 
-   final synchronized void untrackStatement(final Statement statement) {
-      openStatements.remove(statement);
+   final synchronized void untrackStatement(final ProxyStatement statement) {
+      // O(1) removal: move the last tracked statement into the slot of the one being removed
+      final int index = statement.trackingIndex;
+      if (index >= 0 && index < openStatements.size() && openStatements.get(index) == statement) {
+         final ProxyStatement last = openStatements.removeLast();
+         if (last != statement) {
+            openStatements.set(index, last);
+            last.trackingIndex = index;
+         }
+         statement.trackingIndex = -1;
+      }
+
+      if (transactionScopePool != null && !isCommitStateDirty && openStatements.size() == 0) {
+         unbind(); // no transaction in progress, in auto-commit mode there never is one
+
+      }
    }
 
    final void markCommitStateDirty() {
       if (isAutoCommit) {
-         lastAccess = ClockSource.currentTime();
+         lastAccess = ClockSource.coarseTime();
       } else {
          isCommitStateDirty = true;
       }
    }
 
+   final SqlMetrics getSqlMetrics() {
+      return getPool().sqlMetrics;
+   }
+
+   final FetchSizeTuner getFetchSizeTuner() {
+      return getPool().fetchSizeTuner;
+   }
+
+   final int getCoalescedUpdateCount() {
+      return getPool().coalescedUpdateCount;
+   }
+
+   /**
+    * Make the specified statement the one buffering coalesced updates, first sending the updates buffered by
+    * another statement so that the updates reach the database in the order they were executed.
+    *
+    * @param statement the statement about to buffer an update
+    */
+   final void coalesce(final ProxyPreparedStatement statement) throws SQLException {
+      if (coalescingStatement != statement) {
+         flushCoalescedUpdates();
+         coalescingStatement = statement;
+      }
+   }
+
+   /**
+    * Send the coalesced updates buffered by a statement of this connection, if any.
+    */
+   final void flushCoalescedUpdates() throws SQLException {
+      final ProxyPreparedStatement statement = coalescingStatement;
+      if (statement != null) {
+         coalescingStatement = null;
+         statement.flushCoalesced();
+      }
+   }
+
+   /**
+    * Discard the coalesced updates buffered by a statement of this connection, if any.
+    */
+   private void discardCoalescedUpdates() throws SQLException {
+      final ProxyPreparedStatement statement = coalescingStatement;
+      if (statement != null) {
+         coalescingStatement = null;
+         statement.discardCoalesced();
+      }
+   }
+
+   private HikariPool getPool() {
+      return transactionScopePool != null ? transactionScopePool : poolEntry.getPool();
+   }
+
    void cancelLeakTask() {
       leakTask.cancel();
    }
 
+   /**
+    * Make this a transaction-scoped connection.  No physical connection is held until one is needed to execute
+    * a statement; it is returned to the pool at commit or rollback, or in auto-commit mode when the last open
+    * statement is closed.  Statements stay open across transactions, so a physical connection with open
+    * statements is held until the last of them is closed outside a transaction.  Session state changed through this connection is recorded in the dirty bits and
+    * applied to each physical connection as it is bound.
+    *
+    * @param pool the pool from which physical connections are borrowed
+    */
+   final void bindOnDemand(final HikariPool pool) {
+      this.transactionScopePool = pool;
+      this.unboundConnection = createUnboundConnection();
+      this.delegate = unboundConnection;
+   }
+
+   /**
+    * Borrow a physical connection for this transaction-scoped connection and apply the session state.
+    */
+   private synchronized void bind() throws SQLException {
+      if (delegate != unboundConnection) {
+         return;
+      }
+
+      final PoolEntry entry = transactionScopePool.borrowPoolEntry(transactionScopePool.connectionTimeout, false, null, null);
+      poolEntry = entry;
+      openStatements = entry.getOpenStatements();
+      leakTask = transactionScopePool.scheduleLeakTask(entry);
+      lastAccess = entry.lastBorrowed;
+      delegate = entry.connection;
+
+      try {
+         if ((dirtyBits & DIRTY_BIT_AUTOCOMMIT) != 0) {
+            delegate.setAutoCommit(isAutoCommit);
+         }
+         if ((dirtyBits & DIRTY_BIT_READONLY) != 0) {
+            delegate.setReadOnly(isReadOnly);
+         }
+         if ((dirtyBits & DIRTY_BIT_ISOLATION) != 0) {
+            delegate.setTransactionIsolation(transactionIsolation);
+         }
+         if ((dirtyBits & DIRTY_BIT_CATALOG) != 0) {
+            delegate.setCatalog(dbcatalog);
+         }
+         if ((dirtyBits & DIRTY_BIT_SCHEMA) != 0) {
+            delegate.setSchema(dbschema);
+         }
+         if ((dirtyBits & DIRTY_BIT_NETTIMEOUT) != 0) {
+            delegate.setNetworkTimeout(transactionScopePool.getNetworkTimeoutExecutor(), networkTimeout);
+         }
+      } catch (SQLException e) {
+         final SQLException sqle = checkException(e);
+         unbind();
+         throw sqle;
+      }
+   }
+
+   /**
+    * Return the physical connection of this transaction-scoped connection to the pool, resetting its state
+    * but keeping the dirty bits so that the session state is applied again at the next bind.
+    */
+   private synchronized void unbind() {
+      if (delegate == unboundConnection || delegate == ClosedConnection.CLOSED_CONNECTION) {
+         return;
+      }
+
+      closeStatements();
+
+      final PoolEntry entry = poolEntry;
+      if (delegate != ClosedConnection.CLOSED_CONNECTION) {
+         leakTask.cancel();
+         try {
+            if (isCommitStateDirty && !isAutoCommit) {
+               delegate.rollback();
+               LOGGER.debug("{} - Executed rollback on connection {} due to dirty commit state on release.", entry.getPoolName(), delegate);
+            }
+
+            if (dirtyBits != 0) {
+               entry.resetConnectionState(this, dirtyBits);
+            }
+
+            delegate.clearWarnings();
+         } catch (SQLException e) {
+            checkException(e);
+         } finally {
+            isCommitStateDirty = false;
+            entry.recycle(ClockSource.coarseTime());
+         }
+      }
+
+      poolEntry = null;
+      leakTask = ProxyLeakTask.NO_LEAK;
+      openStatements = new FastList<>(ProxyStatement.class, 16);
+      delegate = unboundConnection;
+   }
+
+   /**
+    * Create the placeholder delegate of an unbound transaction-scoped connection.  Session state changes and
+    * transaction demarcation are absorbed, and the session state getters are answered from the recorded state
+    * or the pool defaults.  Any other method binds a physical connection and is then invoked on it; in
+    * auto-commit mode the connection is released again unless the call left a statement open or created an
+    * object that is used with the connection later.
+    *
+    * @return the placeholder Connection
+    */
+   private Connection createUnboundConnection() {
+      final InvocationHandler handler = (proxy, method, args) -> {
+         switch (method.getName()) {
+            case "setAutoCommit":
+            case "setReadOnly":
+            case "setTransactionIsolation":
+            case "setCatalog":
+            case "setSchema":
+            case "setNetworkTimeout":
+            case "commit":
+            case "rollback":
+            case "clearWarnings":
+            case "abort":
+               return null; // recorded by the ProxyConnection and applied when a connection is bound
+            case "getAutoCommit":
+               return isAutoCommit;
+            case "isReadOnly":
+               return isReadOnly;
+            case "getWarnings":
+               return null;
+            case "getTransactionIsolation":
+               if ((dirtyBits & DIRTY_BIT_ISOLATION) != 0) {
+                  return transactionIsolation;
+               }
+               final int defaultIsolation = transactionScopePool.resolveSessionState(null).transactionIsolation;
+               return defaultIsolation != -1 ? defaultIsolation : invokeBound(method, args);
+            case "getCatalog":
+               if ((dirtyBits & DIRTY_BIT_CATALOG) != 0) {
+                  return dbcatalog;
+               }
+               final String defaultCatalog = transactionScopePool.resolveSessionState(null).catalog;
+               return defaultCatalog != null ? defaultCatalog : invokeBound(method, args);
+            case "getSchema":
+               if ((dirtyBits & DIRTY_BIT_SCHEMA) != 0) {
+                  return dbschema;
+               }
+               final String defaultSchema = transactionScopePool.resolveSessionState(null).schema;
+               return defaultSchema != null ? defaultSchema : invokeBound(method, args);
+            case "getNetworkTimeout":
+               return (dirtyBits & DIRTY_BIT_NETTIMEOUT) != 0 ? networkTimeout : invokeBound(method, args);
+            case "toString":
+               return "(unbound)";
+            case "hashCode":
+               return System.identityHashCode(proxy);
+            case "equals":
+               return proxy == args[0];
+            default:
+               return invokeBound(method, args);
+         }
+      };
+
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class}, handler);
+   }
+
+   /**
+    * Invoke a method of an unbound transaction-scoped connection on a physical connection, binding one for the
+    * call.
+    */
+   private Object invokeBound(final Method method, final Object[] args) throws Throwable {
+      bind();
+      try {
+         return method.invoke(delegate, args);
+      } catch (InvocationTargetException e) {
+         throw e.getCause();
+      } finally {
+         // statements are tracked after this returns, LOBs, arrays and structs are used with a later statement,
+         // and an unwrapped physical connection must stay with the caller
+         final String name = method.getName();
+         if (isAutoCommit && openStatements.size() == 0 && !name.startsWith("create") && !name.startsWith("prepare") && !"unwrap".equals(name)) {
+            unbind();
+         }
+      }
+   }
+
+   /**
+    * Track a prepared or callable statement, remembering its SQL and caching the SQL metrics and fetch size entries
+    * of the SQL if SQL metrics or fetch size autotuning are enabled.
+    */
+   private <T extends Statement> T trackStatement(final T statement, final String sql) {
+      final ProxyStatement proxyStatement = (ProxyStatement) statement;
+      proxyStatement.sql = sql;
+      final SqlMetrics sqlMetrics = getSqlMetrics();
+      if (sqlMetrics != null) {
+         proxyStatement.sqlEntry = sqlMetrics.entry(sql);
+      }
+      final FetchSizeTuner fetchSizeTuner = getFetchSizeTuner();
+      if (fetchSizeTuner != null) {
+         proxyStatement.fetchEntry = fetchSizeTuner.entry(sql);
+      }
+
+      return trackStatement(statement);
+   }
+
+   /**
+    * Allow the executeUpdate() calls of a prepared statement to be coalesced into batches if batch coalescing
+    * is enabled.
+    */
+   private PreparedStatement coalescible(final PreparedStatement statement) {
+      ((ProxyPreparedStatement) statement).coalescingLimit = getPool().batchCoalescingSize;
+      return statement;
+   }
+
    private synchronized <T extends Statement> T trackStatement(final T statement) {
-      openStatements.add(statement);
+      final ProxyStatement proxyStatement = (ProxyStatement) statement;
+      proxyStatement.trackingIndex = openStatements.size();
+      openStatements.add(proxyStatement);
 
       return statement;
    }
@@ -181,7 +465,9 @@ public abstract class ProxyConnection implements Connection {
       final int size = openStatements.size();
       if (size > 0) {
          for (int i = 0; i < size && delegate != ClosedConnection.CLOSED_CONNECTION; i++) {
-            try (Statement ignored = openStatements.get(i)) {
+            final ProxyStatement statement = openStatements.get(i);
+            statement.trackingIndex = -1;
+            try (Statement ignored = statement.delegate) {
                // automatic resource cleanup
             } catch (SQLException e) {
                LOGGER.warn("{} - Connection {} marked as broken because of an exception closing open statements during Connection.close()",
@@ -205,22 +491,27 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public final void close() throws SQLException {
+      // coalesced updates belong to a transaction that is rolled back below, they are discarded with their statements
+      coalescingStatement = null;
+
       // Closing statements can cause connection eviction, so this must run before the conditional below
       closeStatements();
 
-      if (delegate != ClosedConnection.CLOSED_CONNECTION) {
+      if (delegate == unboundConnection) {
+         delegate = ClosedConnection.CLOSED_CONNECTION;
+      } else if (delegate != ClosedConnection.CLOSED_CONNECTION) {
          leakTask.cancel();
 
          try {
             if (isCommitStateDirty && !isAutoCommit) {
                delegate.rollback();
-               lastAccess = ClockSource.currentTime();
+               lastAccess = ClockSource.coarseTime();
                LOGGER.debug("{} - Executed rollback on connection {} due to dirty commit state on close().", poolEntry.getPoolName(), delegate);
             }
 
             if (dirtyBits != 0) {
                poolEntry.resetConnectionState(this, dirtyBits);
-               lastAccess = ClockSource.currentTime();
+               lastAccess = ClockSource.coarseTime();
             }
 
             delegate.clearWarnings();
@@ -230,6 +521,12 @@ public abstract class ProxyConnection implements Connection {
                throw checkException(e);
             }
          } finally {
+            final HoldProfile profile = holdProfile;
+            if (profile != null) {
+               holdProfile = null;
+               profile.report(poolEntry.getPoolName(), delegate.toString());
+            }
+
             delegate = ClosedConnection.CLOSED_CONNECTION;
             poolEntry.recycle(lastAccess);
          }
@@ -250,7 +547,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public Statement createStatement() throws SQLException {
-      return ProxyFactory.getProxyStatement(this, trackStatement(delegate.createStatement()));
+      return trackStatement(ProxyFactory.getProxyStatement(this, delegate.createStatement()));
    }
 
    /**
@@ -258,7 +555,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public Statement createStatement(int resultSetType, int concurrency) throws SQLException {
-      return ProxyFactory.getProxyStatement(this, trackStatement(delegate.createStatement(resultSetType, concurrency)));
+      return trackStatement(ProxyFactory.getProxyStatement(this, delegate.createStatement(resultSetType, concurrency)));
    }
 
    /**
@@ -266,7 +563,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public Statement createStatement(int resultSetType, int concurrency, int holdability) throws SQLException {
-      return ProxyFactory.getProxyStatement(this, trackStatement(delegate.createStatement(resultSetType, concurrency, holdability)));
+      return trackStatement(ProxyFactory.getProxyStatement(this, delegate.createStatement(resultSetType, concurrency, holdability)));
    }
 
    /**
@@ -274,7 +571,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public CallableStatement prepareCall(String sql) throws SQLException {
-      return ProxyFactory.getProxyCallableStatement(this, trackStatement(delegate.prepareCall(sql)));
+      return trackStatement(ProxyFactory.getProxyCallableStatement(this, delegate.prepareCall(sql)), sql);
    }
 
    /**
@@ -282,7 +579,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public CallableStatement prepareCall(String sql, int resultSetType, int concurrency) throws SQLException {
-      return ProxyFactory.getProxyCallableStatement(this, trackStatement(delegate.prepareCall(sql, resultSetType, concurrency)));
+      return trackStatement(ProxyFactory.getProxyCallableStatement(this, delegate.prepareCall(sql, resultSetType, concurrency)), sql);
    }
 
    /**
@@ -290,7 +587,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public CallableStatement prepareCall(String sql, int resultSetType, int concurrency, int holdability) throws SQLException {
-      return ProxyFactory.getProxyCallableStatement(this, trackStatement(delegate.prepareCall(sql, resultSetType, concurrency, holdability)));
+      return trackStatement(ProxyFactory.getProxyCallableStatement(this, delegate.prepareCall(sql, resultSetType, concurrency, holdability)), sql);
    }
 
    /**
@@ -298,7 +595,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public PreparedStatement prepareStatement(String sql) throws SQLException {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql)));
+      return trackStatement(coalescible(ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql))), sql);
    }
 
    /**
@@ -306,7 +603,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, autoGeneratedKeys)));
+      return trackStatement(ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, autoGeneratedKeys)), sql);
    }
 
    /**
@@ -314,7 +611,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public PreparedStatement prepareStatement(String sql, int resultSetType, int concurrency) throws SQLException {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, resultSetType, concurrency)));
+      return trackStatement(coalescible(ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, resultSetType, concurrency))), sql);
    }
 
    /**
@@ -322,7 +619,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public PreparedStatement prepareStatement(String sql, int resultSetType, int concurrency, int holdability) throws SQLException {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, resultSetType, concurrency, holdability)));
+      return trackStatement(coalescible(ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, resultSetType, concurrency, holdability))), sql);
    }
 
    /**
@@ -330,7 +627,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, columnIndexes)));
+      return trackStatement(ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, columnIndexes)), sql);
    }
 
    /**
@@ -338,7 +635,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
-      return ProxyFactory.getProxyPreparedStatement(this, trackStatement(delegate.prepareStatement(sql, columnNames)));
+      return trackStatement(ProxyFactory.getProxyPreparedStatement(this, delegate.prepareStatement(sql, columnNames)), sql);
    }
 
    /**
@@ -355,9 +652,15 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public void commit() throws SQLException {
+      flushCoalescedUpdates();
       delegate.commit();
       isCommitStateDirty = false;
-      lastAccess = ClockSource.currentTime();
+      lastAccess = ClockSource.coarseTime();
+
+      // open statements keep the physical connection, which is released when the last of them is closed
+      if (transactionScopePool != null && openStatements.size() == 0) {
+         unbind();
+      }
    }
 
    /**
@@ -365,9 +668,15 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public void rollback() throws SQLException {
+      discardCoalescedUpdates();
       delegate.rollback();
       isCommitStateDirty = false;
-      lastAccess = ClockSource.currentTime();
+      lastAccess = ClockSource.coarseTime();
+
+      // open statements keep the physical connection, which is released when the last of them is closed
+      if (transactionScopePool != null && openStatements.size() == 0) {
+         unbind();
+      }
    }
 
    /**
@@ -375,9 +684,28 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public void rollback(Savepoint savepoint) throws SQLException {
+      flushCoalescedUpdates();
       delegate.rollback(savepoint);
       isCommitStateDirty = false;
-      lastAccess = ClockSource.currentTime();
+      lastAccess = ClockSource.coarseTime();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Savepoint setSavepoint() throws SQLException {
+      flushCoalescedUpdates();
+      return delegate.setSavepoint();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Savepoint setSavepoint(String name) throws SQLException {
+      flushCoalescedUpdates();
+      return delegate.setSavepoint(name);
    }
 
    /**
@@ -385,6 +713,7 @@ public abstract class ProxyConnection implements Connection {
     */
    @Override
    public void setAutoCommit(boolean autoCommit) throws SQLException {
+      flushCoalescedUpdates();
       delegate.setAutoCommit(autoCommit);
       isAutoCommit = autoCommit;
       dirtyBits |= DIRTY_BIT_AUTOCOMMIT;
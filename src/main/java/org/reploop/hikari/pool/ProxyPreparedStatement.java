@@ -26,10 +26,46 @@ import java.sql.SQLException;
  * @author Brett Wooldridge
  */
 public abstract class ProxyPreparedStatement extends ProxyStatement implements PreparedStatement {
+   // the maximum number of coalesced updates buffered before they are sent, 0 if updates are not coalesced
+   int coalescingLimit;
+   private int coalesced;
+   private boolean isBatchedByApplication;
+
    ProxyPreparedStatement(ProxyConnection connection, PreparedStatement statement) {
       super(connection, statement);
    }
 
+   /**
+    * Send the coalesced updates buffered by this statement as a single batch.
+    */
+   final void flushCoalesced() throws SQLException {
+      coalesced = 0;
+      final SqlMetrics.Entry entry = sqlEntry;
+      final long start = startTime(entry);
+      int[] result = null;
+      try {
+         result = delegate.executeBatch();
+      } finally {
+         recordExecution(entry, sql, start, entry == null || result == null ? 0L : sumUpdateCounts(result));
+      }
+   }
+
+   /**
+    * Discard the coalesced updates buffered by this statement.
+    */
+   final void discardCoalesced() throws SQLException {
+      coalesced = 0;
+      delegate.clearBatch();
+   }
+
+   private static long sumUpdateCounts(final int[] updateCounts) {
+      long rows = 0;
+      for (int count : updateCounts) {
+         rows += Math.max(0, count);
+      }
+      return rows;
+   }
+
    // **********************************************************************
    //              Overridden java.sql.PreparedStatement Methods
    // **********************************************************************
@@ -40,7 +76,15 @@ public abstract class ProxyPreparedStatement extends ProxyStatement implements P
    @Override
    public boolean execute() throws SQLException {
       connection.markCommitStateDirty();
-      return ((PreparedStatement) delegate).execute();
+      connection.flushCoalescedUpdates();
+      applyFetchSize(fetchEntry);
+      final SqlMetrics.Entry entry = sqlEntry;
+      final long start = startTime(entry);
+      try {
+         return ((PreparedStatement) delegate).execute();
+      } finally {
+         recordExecution(entry, sql, start, 0L);
+      }
    }
 
    /**
@@ -49,8 +93,17 @@ public abstract class ProxyPreparedStatement extends ProxyStatement implements P
    @Override
    public ResultSet executeQuery() throws SQLException {
       connection.markCommitStateDirty();
-      ResultSet resultSet = ((PreparedStatement) delegate).executeQuery();
-      return ProxyFactory.getProxyResultSet(connection, this, resultSet);
+      connection.flushCoalescedUpdates();
+      applyFetchSize(fetchEntry);
+      final SqlMetrics.Entry entry = sqlEntry;
+      final long start = startTime(entry);
+      final ResultSet resultSet;
+      try {
+         resultSet = ((PreparedStatement) delegate).executeQuery();
+      } finally {
+         recordExecution(entry, sql, start, 0L);
+      }
+      return trackResultSet(ProxyFactory.getProxyResultSet(connection, this, resultSet));
    }
 
    /**
@@ -59,7 +112,26 @@ public abstract class ProxyPreparedStatement extends ProxyStatement implements P
    @Override
    public int executeUpdate() throws SQLException {
       connection.markCommitStateDirty();
-      return ((PreparedStatement) delegate).executeUpdate();
+      if (coalescingLimit > 0 && !isBatchedByApplication && !connection.getAutoCommitState()) {
+         connection.coalesce(this);
+         ((PreparedStatement) delegate).addBatch();
+         if (++coalesced >= coalescingLimit) {
+            connection.flushCoalescedUpdates();
+         }
+         return connection.getCoalescedUpdateCount();
+      }
+
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry;
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final int result = ((PreparedStatement) delegate).executeUpdate();
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
    }
 
    /**
@@ -68,6 +140,55 @@ public abstract class ProxyPreparedStatement extends ProxyStatement implements P
    @Override
    public long executeLargeUpdate() throws SQLException {
       connection.markCommitStateDirty();
-      return ((PreparedStatement) delegate).executeLargeUpdate();
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry;
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final long result = ((PreparedStatement) delegate).executeLargeUpdate();
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int[] executeBatch() throws SQLException {
+      connection.markCommitStateDirty();
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry;
+      final long start = startTime(entry);
+      isBatchedByApplication = false;
+      int[] result = null;
+      try {
+         result = delegate.executeBatch();
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, entry == null || result == null ? 0L : sumUpdateCounts(result));
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void addBatch() throws SQLException {
+      connection.flushCoalescedUpdates();
+      isBatchedByApplication = true;
+      ((PreparedStatement) delegate).addBatch();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void clearBatch() throws SQLException {
+      connection.flushCoalescedUpdates();
+      isBatchedByApplication = false;
+      delegate.clearBatch();
    }
 }
@@ -30,10 +30,43 @@ public abstract class ProxyResultSet implements ResultSet {
    protected final ProxyStatement statement;
    final ResultSet delegate;
 
+   // the fetch size entry of the SQL that produced this ResultSet; null unless fetch size autotuning is enabled
+   FetchSizeTuner.Entry fetchEntry;
+   private long rowsConsumed;
+
    protected ProxyResultSet(ProxyConnection connection, ProxyStatement statement, ResultSet resultSet) {
       this.connection = connection;
       this.statement = statement;
       this.delegate = resultSet;
+      this.fetchEntry = statement.fetchEntry;
+   }
+
+   /**
+    * Account for rows read directly from the delegate by a {@link ColumnarReader}, as {@link #next()} would have.
+    *
+    * @param rows        the number of rows read
+    * @param isExhausted true if the delegate has no more rows
+    */
+   final void addRowsConsumed(final int rows, final boolean isExhausted) {
+      final SqlMetrics.Entry entry = statement.sqlEntry;
+      if (rows > 0 && entry != null) {
+         entry.addRows(rows);
+      }
+      rowsConsumed += rows;
+      if (isExhausted) {
+         recordRowsConsumed();
+      }
+   }
+
+   /**
+    * Report the rows consumed to the fetch size entry, once.
+    */
+   final void recordRowsConsumed() {
+      final FetchSizeTuner.Entry entry = fetchEntry;
+      if (entry != null) {
+         fetchEntry = null;
+         entry.record(rowsConsumed, delegate);
+      }
    }
 
    @SuppressWarnings("unused")
@@ -61,6 +94,33 @@ public abstract class ProxyResultSet implements ResultSet {
       return statement;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean next() throws SQLException {
+      final boolean hasRow = delegate.next();
+      final SqlMetrics.Entry entry = statement.sqlEntry;
+      if (hasRow && entry != null) {
+         entry.addRows(1);
+      }
+      if (hasRow) {
+         rowsConsumed++;
+      } else {
+         recordRowsConsumed();
+      }
+      return hasRow;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void close() throws SQLException {
+      recordRowsConsumed();
+      delegate.close();
+   }
+
    /**
     * {@inheritDoc}
     */
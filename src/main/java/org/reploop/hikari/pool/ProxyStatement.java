@@ -16,6 +16,8 @@
 
 package org.reploop.hikari.pool;
 
+import org.reploop.hikari.util.ClockSource;
+
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -30,8 +32,23 @@ public abstract class ProxyStatement implements Statement {
    protected final ProxyConnection connection;
    final Statement delegate;
 
+   int trackingIndex;
+   // the prepared SQL of a prepared or callable statement
+   String sql;
+   // the SQL metrics entry of the prepared, or last executed, SQL; null unless SQL metrics are enabled
+   SqlMetrics.Entry sqlEntry;
+   // the fetch size entry of the prepared, or last executed, SQL; null unless fetch size autotuning is enabled
+   FetchSizeTuner.Entry fetchEntry;
+
+   private boolean isFetchSizeSet;
+   // the fetch size of the driver statement before tuning, -1 until read
+   private int driverFetchSize = -1;
+   private int tunedFetchSize;
+
    private boolean isClosed;
    private ResultSet proxyResultSet;
+   // the last ResultSet whose rows are counted for fetch size autotuning, until they are reported
+   private ProxyResultSet tunedResultSet;
 
    ProxyStatement(ProxyConnection connection, Statement statement) {
       this.connection = connection;
@@ -43,6 +60,78 @@ public abstract class ProxyStatement implements Statement {
       return connection.checkException(e);
    }
 
+   final SqlMetrics.Entry sqlEntry(final String sql) {
+      final SqlMetrics sqlMetrics = connection.getSqlMetrics();
+      return sqlMetrics == null ? null : (sqlEntry = sqlMetrics.entry(sql));
+   }
+
+   final FetchSizeTuner.Entry fetchEntry(final String sql) {
+      final FetchSizeTuner fetchSizeTuner = connection.getFetchSizeTuner();
+      return fetchSizeTuner == null ? null : (fetchEntry = fetchSizeTuner.entry(sql));
+   }
+
+   /**
+    * Set the tuned fetch size of the SQL about to be executed, unless the application has set a fetch size.  The
+    * fetch size is never set below the one the driver gave the statement, which may come from its URL properties.
+    */
+   final void applyFetchSize(final FetchSizeTuner.Entry entry) throws SQLException {
+      // the driver closes the previous ResultSet when the statement is executed again
+      recordTunedRows();
+
+      if (entry != null && !isFetchSizeSet) {
+         if (driverFetchSize < 0) {
+            driverFetchSize = delegate.getFetchSize();
+            tunedFetchSize = driverFetchSize;
+         }
+
+         final int fetchSize = Math.max(entry.getFetchSize(), driverFetchSize);
+         if (fetchSize != tunedFetchSize) {
+            delegate.setFetchSize(fetchSize);
+            tunedFetchSize = fetchSize;
+         }
+      }
+   }
+
+   /**
+    * Remember a ResultSet of this statement, so that the rows consumed from it are reported to the fetch size
+    * entry when the statement is executed again or closed, even if the application never closes it.
+    *
+    * @param resultSet the proxy ResultSet
+    * @return the proxy ResultSet
+    */
+   final ResultSet trackResultSet(final ResultSet resultSet) {
+      if (resultSet instanceof ProxyResultSet && ((ProxyResultSet) resultSet).fetchEntry != null) {
+         recordTunedRows();
+         tunedResultSet = (ProxyResultSet) resultSet;
+      }
+      return resultSet;
+   }
+
+   private void recordTunedRows() {
+      final ProxyResultSet resultSet = tunedResultSet;
+      if (resultSet != null) {
+         tunedResultSet = null;
+         resultSet.recordRowsConsumed();
+      }
+   }
+
+   final long startTime(final SqlMetrics.Entry entry) {
+      return entry == null && connection.holdProfile == null ? 0L : ClockSource.currentTime();
+   }
+
+   final void recordExecution(final SqlMetrics.Entry entry, final String sql, final long startTime, final long rows) {
+      final HoldProfile holdProfile = connection.holdProfile;
+      if (entry != null || holdProfile != null) {
+         final long elapsedNanos = ClockSource.elapsedNanos(startTime);
+         if (entry != null) {
+            entry.record(elapsedNanos, rows);
+         }
+         if (holdProfile != null) {
+            holdProfile.recordStatement(sql, elapsedNanos);
+         }
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -69,12 +158,26 @@ public abstract class ProxyStatement implements Statement {
          isClosed = true;
       }
 
-      connection.untrackStatement(delegate);
+      recordTunedRows();
+      try {
+         if (connection.coalescingStatement == this) {
+            connection.flushCoalescedUpdates();
+         }
+      } catch (SQLException e) {
+         throw connection.checkException(e);
+      } finally {
+         closeDelegate();
+      }
+   }
 
+   private void closeDelegate() throws SQLException {
       try {
          delegate.close();
       } catch (SQLException e) {
          throw connection.checkException(e);
+      } finally {
+         // untrack after closing, a transaction-scoped connection may release its physical connection here
+         connection.untrackStatement(this);
       }
    }
 
@@ -92,7 +195,15 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public boolean execute(String sql) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.execute(sql);
+      connection.flushCoalescedUpdates();
+      applyFetchSize(fetchEntry(sql));
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      try {
+         return delegate.execute(sql);
+      } finally {
+         recordExecution(entry, sql, start, 0L);
+      }
    }
 
    /**
@@ -101,7 +212,14 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.execute(sql, autoGeneratedKeys);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      try {
+         return delegate.execute(sql, autoGeneratedKeys);
+      } finally {
+         recordExecution(entry, sql, start, 0L);
+      }
    }
 
    /**
@@ -110,8 +228,17 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public ResultSet executeQuery(String sql) throws SQLException {
       connection.markCommitStateDirty();
-      ResultSet resultSet = delegate.executeQuery(sql);
-      return ProxyFactory.getProxyResultSet(connection, this, resultSet);
+      connection.flushCoalescedUpdates();
+      applyFetchSize(fetchEntry(sql));
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      final ResultSet resultSet;
+      try {
+         resultSet = delegate.executeQuery(sql);
+      } finally {
+         recordExecution(entry, sql, start, 0L);
+      }
+      return trackResultSet(ProxyFactory.getProxyResultSet(connection, this, resultSet));
    }
 
    /**
@@ -120,7 +247,17 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public int executeUpdate(String sql) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.executeUpdate(sql);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final int result = delegate.executeUpdate(sql);
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
    }
 
    /**
@@ -129,6 +266,7 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public int[] executeBatch() throws SQLException {
       connection.markCommitStateDirty();
+      connection.flushCoalescedUpdates();
       return delegate.executeBatch();
    }
 
@@ -138,7 +276,17 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.executeUpdate(sql, autoGeneratedKeys);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final int result = delegate.executeUpdate(sql, autoGeneratedKeys);
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
    }
 
    /**
@@ -147,7 +295,17 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.executeUpdate(sql, columnIndexes);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final int result = delegate.executeUpdate(sql, columnIndexes);
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
    }
 
    /**
@@ -156,7 +314,17 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.executeUpdate(sql, columnNames);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final int result = delegate.executeUpdate(sql, columnNames);
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
    }
 
    /**
@@ -165,7 +333,14 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.execute(sql, columnIndexes);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      try {
+         return delegate.execute(sql, columnIndexes);
+      } finally {
+         recordExecution(entry, sql, start, 0L);
+      }
    }
 
    /**
@@ -174,7 +349,14 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public boolean execute(String sql, String[] columnNames) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.execute(sql, columnNames);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      try {
+         return delegate.execute(sql, columnNames);
+      } finally {
+         recordExecution(entry, sql, start, 0L);
+      }
    }
 
    /**
@@ -183,6 +365,7 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public long[] executeLargeBatch() throws SQLException {
       connection.markCommitStateDirty();
+      connection.flushCoalescedUpdates();
       return delegate.executeLargeBatch();
    }
 
@@ -192,7 +375,17 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public long executeLargeUpdate(String sql) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.executeLargeUpdate(sql);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final long result = delegate.executeLargeUpdate(sql);
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
    }
 
    /**
@@ -201,7 +394,17 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.executeLargeUpdate(sql, autoGeneratedKeys);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final long result = delegate.executeLargeUpdate(sql, autoGeneratedKeys);
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
    }
 
    /**
@@ -210,7 +413,17 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.executeLargeUpdate(sql, columnIndexes);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final long result = delegate.executeLargeUpdate(sql, columnIndexes);
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
    }
 
    /**
@@ -219,7 +432,26 @@ public abstract class ProxyStatement implements Statement {
    @Override
    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
       connection.markCommitStateDirty();
-      return delegate.executeLargeUpdate(sql, columnNames);
+      connection.flushCoalescedUpdates();
+      final SqlMetrics.Entry entry = sqlEntry(sql);
+      final long start = startTime(entry);
+      long rows = 0L;
+      try {
+         final long result = delegate.executeLargeUpdate(sql, columnNames);
+         rows = result;
+         return result;
+      } finally {
+         recordExecution(entry, sql, start, rows);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void setFetchSize(int rows) throws SQLException {
+      delegate.setFetchSize(rows);
+      isFetchSizeSet = true;
    }
 
    /**
@@ -230,7 +462,7 @@ public abstract class ProxyStatement implements Statement {
       final ResultSet resultSet = delegate.getResultSet();
       if (resultSet != null) {
          if (proxyResultSet == null || ((ProxyResultSet) proxyResultSet).delegate != resultSet) {
-            proxyResultSet = ProxyFactory.getProxyResultSet(connection, this, resultSet);
+            proxyResultSet = trackResultSet(ProxyFactory.getProxyResultSet(connection, this, resultSet));
          }
       } else {
          proxyResultSet = null;
@@ -247,6 +479,8 @@ public abstract class ProxyStatement implements Statement {
       if (resultSet != null) {
          if (proxyResultSet == null || ((ProxyResultSet) proxyResultSet).delegate != resultSet) {
             proxyResultSet = ProxyFactory.getProxyResultSet(connection, this, resultSet);
+            // generated keys say nothing about the rows the SQL returns
+            ((ProxyResultSet) proxyResultSet).fetchEntry = null;
          }
       } else {
          proxyResultSet = null;
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import java.util.Objects;
+
+/**
+ * The session state a borrower wants a connection to be in.  With session state affinity enabled the pool
+ * prefers an idle connection that is already in the requested state, and only changes the attributes that
+ * differ, instead of resetting every connection to the pool defaults when it is returned.
+ *
+ * @author Brett Wooldridge
+ */
+public final class SessionState {
+   final boolean readOnly;
+   final boolean autoCommit;
+   final int transactionIsolation;
+   final String catalog;
+   final String schema;
+
+   /**
+    * Construct a SessionState.
+    *
+    * @param readOnly             the desired readOnly state
+    * @param autoCommit           the desired autoCommit state
+    * @param transactionIsolation the desired transaction isolation level, or -1 for the pool default
+    * @param catalog              the desired catalog, or null for the pool default
+    * @param schema               the desired schema, or null for the pool default
+    */
+   public SessionState(final boolean readOnly, final boolean autoCommit, final int transactionIsolation, final String catalog, final String schema) {
+      this.readOnly = readOnly;
+      this.autoCommit = autoCommit;
+      this.transactionIsolation = transactionIsolation;
+      this.catalog = catalog;
+      this.schema = schema;
+   }
+
+   public boolean isReadOnly() {
+      return readOnly;
+   }
+
+   public boolean isAutoCommit() {
+      return autoCommit;
+   }
+
+   public int getTransactionIsolation() {
+      return transactionIsolation;
+   }
+
+   public String getCatalog() {
+      return catalog;
+   }
+
+   public String getSchema() {
+      return schema;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean equals(final Object other) {
+      if (this == other) {
+         return true;
+      } else if (!(other instanceof SessionState)) {
+         return false;
+      }
+
+      final SessionState that = (SessionState) other;
+      return readOnly == that.readOnly && autoCommit == that.autoCommit && transactionIsolation == that.transactionIsolation
+         && Objects.equals(catalog, that.catalog) && Objects.equals(schema, that.schema);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int hashCode() {
+      return Objects.hash(readOnly, autoCommit, transactionIsolation, catalog, schema);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString() {
+      return "SessionState(readOnly=" + readOnly + ", autoCommit=" + autoCommit + ", isolation=" + transactionIsolation
+         + ", catalog=" + catalog + ", schema=" + schema + ")";
+   }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.reploop.hikari.metrics.SqlStats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Per-SQL execution statistics recorded by the Statement proxies.  SQL text is normalized to a fingerprint and
+ * the count, latency histogram and rows of each fingerprint are aggregated in a table that is bounded to the
+ * fingerprints with the largest total execution time: when the table holds twice its size, the entries with
+ * the smallest totals are dropped.
+ *
+ * @author Brett Wooldridge
+ */
+final class SqlMetrics {
+   private static final int MAX_FINGERPRINT_LENGTH = 2048;
+   private static final int BUCKETS = 40;
+   private static final Pattern LIST = Pattern.compile("\\(\\?(?:, ?\\?)+\\)");
+
+   private final int size;
+   private final PoolBase pool;
+   private final ConcurrentHashMap<String, Entry> entries;
+
+   SqlMetrics(final int size, final PoolBase pool) {
+      this.size = size;
+      this.pool = pool;
+      this.entries = new ConcurrentHashMap<>();
+   }
+
+   /**
+    * Get the entry of the fingerprint of the specified SQL, adding it if necessary.
+    *
+    * @param sql the SQL text
+    * @return the entry
+    */
+   Entry entry(final String sql) {
+      final String fingerprint = fingerprint(sql);
+      final Entry entry = entries.get(fingerprint);
+      if (entry != null) {
+         return entry;
+      }
+
+      final Entry added = entries.computeIfAbsent(fingerprint, f -> new Entry(f));
+      if (entries.size() > 2 * size) {
+         prune();
+      }
+      return added;
+   }
+
+   /**
+    * Get the statistics of the fingerprints with the largest total execution time.
+    *
+    * @return at most size statistics, ordered by decreasing total execution time
+    */
+   List<SqlStats> getStats() {
+      final List<Entry> sorted = new ArrayList<>(entries.values());
+      sorted.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+
+      final List<SqlStats> stats = new ArrayList<>(Math.min(size, sorted.size()));
+      for (int i = 0; i < size && i < sorted.size(); i++) {
+         stats.add(sorted.get(i).toStats());
+      }
+      return stats;
+   }
+
+   private synchronized void prune() {
+      if (entries.size() > 2 * size) {
+         final List<Entry> sorted = new ArrayList<>(entries.values());
+         sorted.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+         for (int i = size; i < sorted.size(); i++) {
+            entries.remove(sorted.get(i).fingerprint, sorted.get(i));
+         }
+      }
+   }
+
+   /**
+    * Normalize SQL text to a fingerprint: comments are removed, string and numeric literals are replaced by
+    * {@code ?}, lists of literals or parameters are collapsed to {@code (?+)}, whitespace is collapsed and
+    * everything outside quoted identifiers is lower-cased.
+    *
+    * @param sql the SQL text
+    * @return the fingerprint
+    */
+   static String fingerprint(final String sql) {
+      final int length = sql.length();
+      final StringBuilder sb = new StringBuilder(Math.min(length, MAX_FINGERPRINT_LENGTH));
+      boolean space = false;
+      int i = 0;
+      while (i < length && sb.length() < MAX_FINGERPRINT_LENGTH) {
+         final char c = sql.charAt(i);
+         if (Character.isWhitespace(c)) {
+            space = sb.length() > 0;
+            i++;
+            continue;
+         }
+
+         if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+            while (i < length && sql.charAt(i) != '\n') {
+               i++;
+            }
+            space = sb.length() > 0;
+            continue;
+         }
+
+         if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+            final int end = sql.indexOf("*/", i + 2);
+            i = end < 0 ? length : end + 2;
+            space = sb.length() > 0;
+            continue;
+         }
+
+         if (space) {
+            sb.append(' ');
+            space = false;
+         }
+
+         if (c == '\'') {
+            // string literal, with '' as an escaped quote
+            i++;
+            while (i < length) {
+               if (sql.charAt(i) == '\'') {
+                  if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                     i += 2;
+                     continue;
+                  }
+                  break;
+               }
+               i++;
+            }
+            sb.append('?');
+            i++;
+         } else if (c == '"' || c == '`') {
+            // quoted identifier, kept as is
+            final int end = sql.indexOf(c, i + 1);
+            final int stop = end < 0 ? length : end + 1;
+            sb.append(sql, i, stop);
+            i = stop;
+         } else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))) {
+            // numeric literal, including decimals, exponents and hexadecimal
+            i++;
+            while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.'
+               || ((sql.charAt(i) == '+' || sql.charAt(i) == '-') && (sql.charAt(i - 1) == 'e' || sql.charAt(i - 1) == 'E')))) {
+               i++;
+            }
+            sb.append('?');
+         } else {
+            sb.append(Character.toLowerCase(c));
+            i++;
+         }
+      }
+
+      return LIST.matcher(sb).replaceAll("(?+)");
+   }
+
+   private static boolean isIdentifierPart(final char c) {
+      return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+   }
+
+   /**
+    * The statistics of one fingerprint.
+    */
+   final class Entry {
+      final String fingerprint;
+      private final LongAdder executions;
+      private final LongAdder totalNanos;
+      private final LongAdder rows;
+      private final AtomicLong maxNanos;
+      private final AtomicLongArray histogram;
+
+      Entry(final String fingerprint) {
+         this.fingerprint = fingerprint;
+         this.executions = new LongAdder();
+         this.totalNanos = new LongAdder();
+         this.rows = new LongAdder();
+         this.maxNanos = new AtomicLong();
+         this.histogram = new AtomicLongArray(BUCKETS);
+      }
+
+      void addRows(final long count) {
+         rows.add(count);
+      }
+
+      long getTotalNanos() {
+         return totalNanos.sum();
+      }
+
+      /**
+       * Record an execution.
+       *
+       * @param elapsedNanos the execution time
+       * @param count        the number of rows updated, or 0 if unknown
+       */
+      void record(final long elapsedNanos, final long count) {
+         pool.metricsTracker.recordSqlExecution(fingerprint, elapsedNanos, count);
+         executions.increment();
+         totalNanos.add(elapsedNanos);
+         if (count > 0) {
+            rows.add(count);
+         }
+
+         long max;
+         while (elapsedNanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, elapsedNanos)) {
+            // retry
+         }
+
+         // bucket b holds latencies of less than 2^b microseconds
+         final long micros = NANOSECONDS.toMicros(elapsedNanos);
+         histogram.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+      }
+
+      private SqlStats toStats() {
+         final long[] counts = new long[BUCKETS];
+         long total = 0;
+         for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = histogram.get(b);
+            total += counts[b];
+         }
+
+         return new SqlStats(fingerprint, executions.sum(), rows.sum(), totalNanos.sum() / 1e6, maxNanos.get() / 1e6,
+            percentile(counts, total, 0.50), percentile(counts, total, 0.99));
+      }
+   }
+
+   private static double percentile(final long[] counts, final long total, final double quantile) {
+      final long rank = (long) Math.ceil(total * quantile);
+      long seen = 0;
+      for (int b = 0; b < BUCKETS; b++) {
+         seen += counts[b];
+         if (seen >= rank && seen > 0) {
+            return (1L << b) / 1000.0;
+         }
+      }
+      return 0.0;
+   }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Admission of borrowers to the pool by tenant.  A borrower must be granted a permit for its tenant before it
+ * borrows from the {@link org.reploop.hikari.util.ConcurrentBag}, and there are only as many permits as
+ * connections in the pool, so the grants decide which tenant the connections go to.
+ * <p>
+ * A tenant is granted permits freely up to its quota.  Beyond its quota it borrows the unused quota of the
+ * other tenants, but only while no tenant within its quota is waiting.  When permits are contended, the next
+ * permit goes to the first waiter of the tenant with the lowest ratio of permits held to quota, which is
+ * weighted fair queuing with the quotas as weights.
+ * <p>
+ * A tenant is only tracked while it holds permits or has waiters, so any number of distinct tenant ids can pass
+ * through the pool, and a dispatch only considers the tenants that have waiters.
+ *
+ * @author Brett Wooldridge
+ */
+final class TenantQuotas {
+   static final String DEFAULT_TENANT = "*";
+
+   private final int defaultQuota;
+   private final Map<String, Integer> quotas;
+   private final ReentrantLock lock;
+
+   // guarded by the lock
+   private final HashMap<String, Tenant> tenants;
+   private final LinkedHashSet<Tenant> waiting;
+   private int permits;
+   private int granted;
+
+   /**
+    * Construct TenantQuotas.
+    *
+    * @param tenantQuotas the comma separated tenant=quota pairs, as validated by HikariConfig
+    * @param permits      the number of permits, the maximum size of the pool
+    */
+   TenantQuotas(final String tenantQuotas, final int permits) {
+      this.permits = permits;
+      this.quotas = new HashMap<>();
+      for (String pair : tenantQuotas.split(",")) {
+         final String[] parts = pair.split("=");
+         quotas.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+      }
+      this.defaultQuota = quotas.getOrDefault(DEFAULT_TENANT, 1);
+      this.tenants = new HashMap<>();
+      this.waiting = new LinkedHashSet<>();
+      this.lock = new ReentrantLock();
+   }
+
+   /**
+    * Change the number of permits, following a change of the maximum size of the pool.  Permits added are
+    * granted to waiters immediately, permits removed are withdrawn as they are released.
+    *
+    * @param permits the number of permits
+    */
+   void setPermits(final int permits) {
+      lock.lock();
+      try {
+         this.permits = permits;
+         dispatch();
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Acquire a permit for a tenant, waiting for it up to the specified timeout.
+    *
+    * @param tenantId  the tenant, or null for the default tenant
+    * @param timeoutMs the maximum time to wait
+    * @return the tenant holding the permit, or null if the timeout elapsed
+    * @throws InterruptedException if interrupted while waiting
+    */
+   Tenant acquire(final String tenantId, final long timeoutMs) throws InterruptedException {
+      final Waiter waiter = new Waiter(lock.newCondition());
+
+      lock.lock();
+      final Tenant tenant = getTenant(tenantId);
+      try {
+         tenant.waiters.add(waiter);
+         waiting.add(tenant);
+         dispatch();
+
+         long remaining = MILLISECONDS.toNanos(timeoutMs);
+         while (!waiter.isGranted && remaining > 0L) {
+            remaining = waiter.condition.awaitNanos(remaining);
+         }
+
+         if (!waiter.isGranted) {
+            removeWaiter(tenant, waiter);
+            return null;
+         }
+         return tenant;
+      } catch (InterruptedException e) {
+         if (waiter.isGranted) {
+            releaseLocked(tenant);
+         } else {
+            removeWaiter(tenant, waiter);
+         }
+         throw e;
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Release a permit of a tenant, granting it to the next waiter if there is one.
+    *
+    * @param tenant the tenant returned by {@link #acquire(String, long)}
+    */
+   void release(final Tenant tenant) {
+      lock.lock();
+      try {
+         releaseLocked(tenant);
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Get the number of permits held by a tenant.
+    *
+    * @param tenantId the tenant, or null for the default tenant
+    * @return the number of connections the tenant has in use
+    */
+   int getInUse(final String tenantId) {
+      lock.lock();
+      try {
+         final Tenant tenant = tenants.get(tenantId != null ? tenantId : DEFAULT_TENANT);
+         return tenant != null ? tenant.inUse : 0;
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Get the number of tenants currently tracked, those holding permits or waiting for one.
+    *
+    * @return the number of tracked tenants
+    */
+   int getTrackedTenants() {
+      lock.lock();
+      try {
+         return tenants.size();
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   private Tenant getTenant(final String tenantId) {
+      final String id = tenantId != null ? tenantId : DEFAULT_TENANT;
+      Tenant tenant = tenants.get(id);
+      if (tenant == null) {
+         tenant = new Tenant(id, quotas.getOrDefault(id, defaultQuota));
+         tenants.put(id, tenant);
+      }
+      return tenant;
+   }
+
+   private void removeWaiter(final Tenant tenant, final Waiter waiter) {
+      tenant.waiters.remove(waiter);
+      if (tenant.waiters.isEmpty()) {
+         waiting.remove(tenant);
+      }
+      untrackIfIdle(tenant);
+   }
+
+   private void untrackIfIdle(final Tenant tenant) {
+      if (tenant.inUse == 0 && tenant.waiters.isEmpty()) {
+         tenants.remove(tenant.id, tenant);
+      }
+   }
+
+   private void releaseLocked(final Tenant tenant) {
+      tenant.inUse--;
+      granted--;
+      untrackIfIdle(tenant);
+      dispatch();
+   }
+
+   /**
+    * Grant free permits to waiters, each time to the tenant with the lowest ratio of permits held to quota.
+    * A tenant within its quota always has a lower ratio than one beyond it, so lending only happens when no
+    * tenant within its quota is waiting.
+    */
+   private void dispatch() {
+      while (granted < permits) {
+         Tenant next = null;
+         for (Tenant tenant : waiting) {
+            if (next == null || (long) tenant.inUse * next.quota < (long) next.inUse * tenant.quota) {
+               next = tenant;
+            }
+         }
+
+         if (next == null) {
+            return;
+         }
+
+         final Waiter waiter = next.waiters.poll();
+         if (next.waiters.isEmpty()) {
+            waiting.remove(next);
+         }
+         next.inUse++;
+         granted++;
+         waiter.isGranted = true;
+         waiter.condition.signal();
+      }
+   }
+
+   /**
+    * A tenant of the pool, with its waiters in arrival order.  Guarded by the lock of the TenantQuotas.  Tenants
+    * are compared by identity, a tenant id that returns after being untracked gets a new Tenant.
+    */
+   static final class Tenant {
+      final String id;
+      final int quota;
+      private final ArrayDeque<Waiter> waiters;
+      private int inUse;
+
+      private Tenant(final String id, final int quota) {
+         this.id = id;
+         this.quota = quota;
+         this.waiters = new ArrayDeque<>();
+      }
+   }
+
+   private static final class Waiter {
+      private final Condition condition;
+      private boolean isGranted;
+
+      private Waiter(final Condition condition) {
+         this.condition = condition;
+      }
+   }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records pool events (borrow, return, create, evict and validate) into a memory-mapped ring file, so that
+ * the workload of a production pool can later be replayed against a test pool.  Each record holds a sequence
+ * number, a {@link System#nanoTime()} timestamp, the id of the recording thread, an identifier of the physical
+ * connection and an event specific value.  When the ring is full the oldest records are overwritten.
+ * <p>
+ * Recording is enabled by setting the system property <code>org.reploop.hikari.traceDir</code>, each pool then
+ * writes to <code>&lt;traceDir&gt;/&lt;poolName&gt;.trace</code>.  The ring capacity in records is set with
+ * <code>org.reploop.hikari.traceCapacity</code> (default 262144, 10MB).
+ *
+ * @author Brett Wooldridge
+ */
+public final class TraceRecorder implements AutoCloseable {
+   private static final Logger LOGGER = LoggerFactory.getLogger(TraceRecorder.class);
+
+   /** A connection was borrowed, the value is the wait in nanoseconds. */
+   public static final int BORROW = 1;
+   /** A connection was returned, the value is the time it was held in nanoseconds. */
+   public static final int RETURN = 2;
+   /** A connection was created, the value is the time it took in nanoseconds. */
+   public static final int CREATE = 3;
+   /** A connection was removed from the pool, the value is zero. */
+   public static final int EVICT = 4;
+   /** A connection was validated, the value is 1 if it was alive, 0 if not. */
+   public static final int VALIDATE = 5;
+
+   private static final int MAGIC = 0x484b5452; // "HKTR"
+   private static final int VERSION = 1;
+   private static final int HEADER_SIZE = 32;
+   private static final int RECORD_SIZE = 40;
+
+   private final FileChannel channel;
+   private final MappedByteBuffer buffer;
+   private final int capacity;
+   private final AtomicLong sequence;
+
+   /**
+    * Create a TraceRecorder for the specified pool if tracing is enabled by system property.
+    *
+    * @param poolName the name of the pool
+    * @return a TraceRecorder, or null if tracing is disabled or the trace file could not be created
+    */
+   static TraceRecorder create(final String poolName) {
+      final String traceDir = System.getProperty("org.reploop.hikari.traceDir");
+      if (traceDir == null) {
+         return null;
+      }
+
+      final Path path = Paths.get(traceDir, poolName.replaceAll("[^A-Za-z0-9._-]", "_") + ".trace");
+      try {
+         Files.createDirectories(path.getParent());
+         final TraceRecorder recorder = new TraceRecorder(path, Integer.getInteger("org.reploop.hikari.traceCapacity", 1 << 18));
+         LOGGER.info("{} - Recording pool events to {}", poolName, path);
+         return recorder;
+      } catch (IOException | RuntimeException e) {
+         LOGGER.warn("{} - Failed to create trace file {}, pool events will not be recorded", poolName, path, e);
+         return null;
+      }
+   }
+
+   /**
+    * Construct a TraceRecorder writing to the specified file, which is truncated.
+    *
+    * @param path     the trace file
+    * @param capacity the number of records in the ring
+    * @throws IOException thrown if the file cannot be created or mapped
+    */
+   public TraceRecorder(final Path path, final int capacity) throws IOException {
+      if (capacity < 1) {
+         throw new IllegalArgumentException("capacity cannot be less than 1");
+      }
+
+      this.capacity = capacity;
+      this.sequence = new AtomicLong();
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+         StandardOpenOption.TRUNCATE_EXISTING);
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, VERSION);
+      buffer.putInt(8, RECORD_SIZE);
+      buffer.putInt(12, capacity);
+      buffer.putLong(16, System.currentTimeMillis());
+      buffer.putLong(24, System.nanoTime());
+   }
+
+   /**
+    * Record an event.  Concurrent callers claim distinct slots, so no locking is required.
+    *
+    * @param type       the event type
+    * @param connection the physical connection (or other object) the event relates to
+    * @param value      the event specific value
+    */
+   public void record(final int type, final Object connection, final long value) {
+      final long seq = sequence.incrementAndGet();
+      final int offset = HEADER_SIZE + (int) ((seq - 1) % capacity) * RECORD_SIZE;
+
+      // clear the sequence first so a reader never pairs a new sequence with a partially written record
+      buffer.putLong(offset, 0L);
+      buffer.putLong(offset + 8, System.nanoTime());
+      buffer.putLong(offset + 16, Thread.currentThread().getId());
+      buffer.putLong(offset + 24, value);
+      buffer.putInt(offset + 32, System.identityHashCode(connection));
+      buffer.putInt(offset + 36, type);
+      buffer.putLong(offset, seq);
+   }
+
+   /**
+    * Flush the recorded events to disk and close the trace file.
+    */
+   @Override
+   public void close() {
+      try {
+         buffer.force();
+         channel.close();
+      } catch (IOException e) {
+         LOGGER.warn("Failed to close trace file", e);
+      }
+   }
+
+   /**
+    * Read the events of a trace file, oldest first.
+    *
+    * @param path the trace file
+    * @return the events that are still in the ring, ordered by sequence
+    * @throws IOException thrown if the file cannot be read or is not a trace file
+    */
+   public static List<Event> read(final Path path) throws IOException {
+      final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+      if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+         throw new IOException(path + " is not a pool trace file");
+      }
+
+      final int recordSize = buffer.getInt(8);
+      final int capacity = buffer.getInt(12);
+      final List<Event> events = new ArrayList<>();
+      for (int i = 0; i < capacity && HEADER_SIZE + (i + 1) * recordSize <= buffer.limit(); i++) {
+         final int offset = HEADER_SIZE + i * recordSize;
+         final long seq = buffer.getLong(offset);
+         if (seq != 0L) {
+            events.add(new Event(seq, buffer.getLong(offset + 8), buffer.getLong(offset + 16), buffer.getLong(offset + 24),
+               buffer.getInt(offset + 32), buffer.getInt(offset + 36)));
+         }
+      }
+
+      events.sort(Comparator.comparingLong(e -> e.sequence));
+      return Collections.unmodifiableList(events);
+   }
+
+   /**
+    * A recorded pool event.
+    */
+   public static final class Event {
+      public final long sequence;
+      public final long nanoTime;
+      public final long threadId;
+      public final long value;
+      public final int connectionId;
+      public final int type;
+
+      Event(final long sequence, final long nanoTime, final long threadId, final long value, final int connectionId, final int type) {
+         this.sequence = sequence;
+         this.nanoTime = nanoTime;
+         this.threadId = threadId;
+         this.value = value;
+         this.connectionId = connectionId;
+         this.type = type;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public String toString() {
+         return "Event(seq=" + sequence + ", type=" + type + ", nanoTime=" + nanoTime + ", thread=" + threadId
+            + ", connection=" + Integer.toHexString(connectionId) + ", value=" + value + ")";
+      }
+   }
+}
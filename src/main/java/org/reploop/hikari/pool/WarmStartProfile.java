@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The peak connection demand (connections in use plus threads waiting for one) observed for each hour of
+ * the day, persisted across restarts so that a starting pool can pre-fill to the demand it is likely to see.
+ * Demand observed in an hour replaces the stored peak for that hour if it is higher, otherwise the stored
+ * peak decays by a quarter, so that a drop in traffic is reflected after a few restarts.  Hours this process
+ * did not run through keep their stored peak, however often the pool is restarted.
+ *
+ * @author Brett Wooldridge
+ */
+final class WarmStartProfile {
+   private static final Logger LOGGER = LoggerFactory.getLogger(WarmStartProfile.class);
+
+   private static final int HOURS = 24;
+   private static final int NOT_OBSERVED = -1;
+
+   private final Path path;
+   private final String poolName;
+   private final int[] storedPeaks;
+   private final AtomicIntegerArray observedPeaks;
+
+   WarmStartProfile(final String path, final String poolName) {
+      this.path = Paths.get(path);
+      this.poolName = poolName;
+      this.storedPeaks = new int[HOURS];
+      this.observedPeaks = new AtomicIntegerArray(HOURS);
+      for (int hour = 0; hour < HOURS; hour++) {
+         observedPeaks.set(hour, NOT_OBSERVED);
+      }
+      load();
+   }
+
+   /**
+    * Get the demand predicted for the specified time of day.
+    *
+    * @param time the time of day
+    * @return the stored peak demand of that hour, or 0 if none was recorded
+    */
+   int predict(final LocalTime time) {
+      return storedPeaks[time.getHour()];
+   }
+
+   /**
+    * Record an observation of the current demand.
+    *
+    * @param demand the number of connections in use plus the number of threads waiting for one
+    */
+   void recordDemand(final int demand) {
+      final int hour = LocalTime.now().getHour();
+      int peak;
+      while (demand > (peak = observedPeaks.get(hour)) && !observedPeaks.compareAndSet(hour, peak, demand)) {
+         // retry
+      }
+   }
+
+   /**
+    * Merge the observed peaks into the stored profile and write it, replacing the previous file.
+    */
+   void save() {
+      final Properties properties = new Properties();
+      for (int hour = 0; hour < HOURS; hour++) {
+         final int stored = storedPeaks[hour];
+         final int observed = observedPeaks.get(hour);
+         // decay by a quarter rounded up, so that a peak of 1 decays too
+         final int peak = observed == NOT_OBSERVED ? stored : Math.max(observed, stored - (stored + 3) / 4);
+         properties.setProperty(key(hour), String.valueOf(peak));
+      }
+
+      try {
+         final Path parent = path.toAbsolutePath().getParent();
+         if (parent != null) {
+            Files.createDirectories(parent);
+         }
+
+         final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+         try (Writer writer = Files.newBufferedWriter(temp)) {
+            properties.store(writer, "HikariCP warm start profile for pool " + poolName + ", peak demand per hour of day");
+         }
+         Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException e) {
+         LOGGER.warn("{} - Failed to save warm start profile {}", poolName, path, e);
+      }
+   }
+
+   private void load() {
+      if (!Files.exists(path)) {
+         return;
+      }
+
+      final Properties properties = new Properties();
+      try (Reader reader = Files.newBufferedReader(path)) {
+         properties.load(reader);
+         for (int hour = 0; hour < HOURS; hour++) {
+            storedPeaks[hour] = Math.max(0, Integer.parseInt(properties.getProperty(key(hour), "0").trim()));
+         }
+      } catch (IOException | NumberFormatException e) {
+         Arrays.fill(storedPeaks, 0);
+         LOGGER.warn("{} - Failed to load warm start profile {}, starting cold", poolName, path, e);
+      }
+   }
+
+   private static String key(final int hour) {
+      return String.format("hour.%02d", hour);
+   }
+}
@@ -17,6 +17,7 @@
 package org.reploop.hikari.util;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import static java.util.concurrent.TimeUnit.*;
 
@@ -29,6 +30,8 @@ import static java.util.concurrent.TimeUnit.*;
 public interface ClockSource {
    static ClockSource CLOCK = Factory.create();
 
+   static ClockSource COARSE_CLOCK = Factory.createCoarse(CLOCK);
+
    /**
     * Get the current time-stamp (resolution is opaque).
     *
@@ -40,6 +43,19 @@ public interface ClockSource {
 
    long currentTime0();
 
+   /**
+    * Get a coarse current time-stamp, in the same resolution-opaque units as
+    * currentTime() so that the two may be compared.  When the coarse clock is
+    * enabled with the <code>org.reploop.hikari.coarseClock.tickMs</code> system
+    * property the value is refreshed by a ticker thread and may lag behind
+    * currentTime() by up to one tick; otherwise it is currentTime().
+    *
+    * @return the current coarse time-stamp
+    */
+   static long coarseTime() {
+      return COARSE_CLOCK.currentTime0();
+   }
+
    /**
     * Convert an opaque time-stamp returned by currentTime() into
     * milliseconds.
@@ -186,6 +202,118 @@ public interface ClockSource {
 
          return new NanosecondClockSource();
       }
+
+      private static ClockSource createCoarse(final ClockSource clock) {
+         final long tickMs = Long.getLong("org.reploop.hikari.coarseClock.tickMs", 0L);
+         return tickMs > 0 ? new CoarseClockSource(clock, tickMs) : clock;
+      }
+   }
+
+   /**
+    * A ClockSource that publishes the time of another ClockSource from a ticker
+    * thread, so that reading it is a single volatile load.  Only suitable for
+    * millisecond-scale accounting such as idle and last-access tracking.  The
+    * ticker runs until {@link #close()}, after which the time no longer advances.
+    */
+   final class CoarseClockSource implements ClockSource, AutoCloseable {
+      private final ClockSource clock;
+      private final Thread ticker;
+      private volatile long time;
+
+      CoarseClockSource(final ClockSource clock, final long tickMs) {
+         this.clock = clock;
+         this.time = clock.currentTime0();
+
+         final long tickNanos = MILLISECONDS.toNanos(tickMs);
+         this.ticker = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+               LockSupport.parkNanos(tickNanos);
+               time = clock.currentTime0();
+            }
+         }, "HikariCP coarse clock");
+         ticker.setDaemon(true);
+         ticker.start();
+      }
+
+      /**
+       * Stop the ticker thread.
+       */
+      @Override
+      public void close() {
+         ticker.interrupt();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public long currentTime0() {
+         return time;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public long toMillis0(final long time) {
+         return clock.toMillis0(time);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public long toNanos0(final long time) {
+         return clock.toNanos0(time);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public long elapsedMillis0(final long startTime) {
+         return clock.elapsedMillis0(startTime, time);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public long elapsedMillis0(final long startTime, final long endTime) {
+         return clock.elapsedMillis0(startTime, endTime);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public long elapsedNanos0(final long startTime) {
+         return clock.elapsedNanos0(startTime, time);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public long elapsedNanos0(final long startTime, final long endTime) {
+         return clock.elapsedNanos0(startTime, endTime);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public long plusMillis0(final long time, final long millis) {
+         return clock.plusMillis0(time, millis);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public TimeUnit getSourceTimeUnit0() {
+         return clock.getSourceTimeUnit0();
+      }
    }
 
    final class MillisecondClockSource implements ClockSource {
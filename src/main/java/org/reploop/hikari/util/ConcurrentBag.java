@@ -23,10 +23,13 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static java.lang.Thread.yield;
@@ -61,13 +64,18 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
 
    private final CopyOnWriteArrayList<T> sharedList;
    private final boolean weakThreadLocals;
+   private final IdleOrdering idleOrdering;
+   private final ConcurrentLinkedDeque<T> idleDeque;
 
    private final ThreadLocal<List<Object>> threadList;
+   private final ConcurrentHashMap<T, WeakReference<T>> weakReferences;
    private final IBagStateListener listener;
    private final AtomicInteger waiters;
+   private final AtomicInteger priorityWaiters;
    private volatile boolean closed;
 
    private final SynchronousQueue<T> handoffQueue;
+   private final SynchronousQueue<T> priorityHandoffQueue;
 
    public interface IConcurrentBagEntry {
       int STATE_NOT_IN_USE = 0;
@@ -86,21 +94,61 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
       void addBagItem(int waiting);
    }
 
+   /**
+    * The order in which idle items are selected by borrowers.
+    */
+   public enum IdleOrdering {
+      /**
+       * Prefer the calling thread's recently returned items, then scan the
+       * shared list in insertion order.
+       */
+      FIFO,
+      /**
+       * Prefer the most recently returned item, keeping a hot working set
+       * and allowing seldom used items to reach their idle timeout.
+       */
+      LIFO,
+      /**
+       * Prefer the least recently returned item, spreading use evenly
+       * across all items.
+       */
+      ROUND_ROBIN
+   }
+
    /**
     * Construct a ConcurrentBag with the specified listener.
     *
     * @param listener the IBagStateListener to attach to this bag
     */
    public ConcurrentBag(final IBagStateListener listener) {
+      this(listener, IdleOrdering.FIFO);
+   }
+
+   /**
+    * Construct a ConcurrentBag with the specified listener and idle ordering.
+    * For the LIFO and ROUND_ROBIN orderings idle items are tracked in a
+    * concurrent deque instead of the ThreadLocal lists, since per-thread
+    * affinity would otherwise defeat the requested ordering.
+    *
+    * @param listener     the IBagStateListener to attach to this bag
+    * @param idleOrdering the order in which idle items are selected
+    */
+   public ConcurrentBag(final IBagStateListener listener, final IdleOrdering idleOrdering) {
       this.listener = listener;
       this.weakThreadLocals = useWeakThreadLocals();
+      this.idleOrdering = idleOrdering;
+      this.idleDeque = (idleOrdering == IdleOrdering.FIFO ? null : new ConcurrentLinkedDeque<>());
 
       this.handoffQueue = new SynchronousQueue<>(true);
+      this.priorityHandoffQueue = new SynchronousQueue<>(true);
       this.waiters = new AtomicInteger();
+      this.priorityWaiters = new AtomicInteger();
       this.sharedList = new CopyOnWriteArrayList<>();
       if (weakThreadLocals) {
          this.threadList = ThreadLocal.withInitial(() -> new ArrayList<>(16));
+         this.weakReferences = new ConcurrentHashMap<>();
       } else {
+         this.weakReferences = null;
          this.threadList = ThreadLocal.withInitial(() -> new FastList<>(IConcurrentBagEntry.class, 16));
       }
    }
@@ -115,18 +163,48 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
     * @throws InterruptedException if interrupted while waiting
     */
    public T borrow(long timeout, final TimeUnit timeUnit) throws InterruptedException {
-      // Try the thread-local list first
-      final List<Object> list = threadList.get();
-      for (int i = list.size() - 1; i >= 0; i--) {
-         final Object entry = list.remove(i);
-         @SuppressWarnings("unchecked") final T bagEntry = weakThreadLocals ? ((WeakReference<T>) entry).get() : (T) entry;
-         if (bagEntry != null && bagEntry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
-            return bagEntry;
+      return borrow(timeout, timeUnit, false);
+   }
+
+   /**
+    * The method will borrow a BagEntry from the bag, blocking for the
+    * specified timeout if none are available.  Priority borrowers wait on
+    * a separate handoff queue which is always offered returned items before
+    * the queue of ordinary borrowers.
+    *
+    * @param timeout    how long to wait before giving up, in units of unit
+    * @param timeUnit   a <code>TimeUnit</code> determining how to interpret the timeout parameter
+    * @param isPriority true if this borrower should be served ahead of ordinary waiters
+    * @return a borrowed instance from the bag or null if a timeout occurs
+    * @throws InterruptedException if interrupted while waiting
+    */
+   public T borrow(long timeout, final TimeUnit timeUnit, final boolean isPriority) throws InterruptedException {
+      if (idleDeque == null) {
+         // Try the thread-local list first
+         final List<Object> list = threadList.get();
+         for (int i = list.size() - 1; i >= 0; i--) {
+            final Object entry = list.remove(i);
+            @SuppressWarnings("unchecked") final T bagEntry = weakThreadLocals ? ((WeakReference<T>) entry).get() : (T) entry;
+            if (bagEntry != null && bagEntry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+               return bagEntry;
+            }
+         }
+      } else {
+         // Try the idle deque first, discarding stale entries that were borrowed, reserved or removed elsewhere
+         for (T bagEntry = idleDeque.pollFirst(); bagEntry != null; bagEntry = idleDeque.pollFirst()) {
+            if (bagEntry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+               return bagEntry;
+            }
          }
       }
 
       // Otherwise, scan the shared list ... then poll the handoff queue
       final int waiting = waiters.incrementAndGet();
+      if (isPriority) {
+         priorityWaiters.incrementAndGet();
+      }
+
+      final SynchronousQueue<T> queue = isPriority ? priorityHandoffQueue : handoffQueue;
       try {
          for (T bagEntry : sharedList) {
             if (bagEntry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
@@ -143,7 +221,7 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
          timeout = timeUnit.toNanos(timeout);
          do {
             final long start = currentTime();
-            final T bagEntry = handoffQueue.poll(timeout, NANOSECONDS);
+            final T bagEntry = queue.poll(timeout, NANOSECONDS);
             if (bagEntry == null || bagEntry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
                return bagEntry;
             }
@@ -154,7 +232,28 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
          return null;
       } finally {
          waiters.decrementAndGet();
+         if (isPriority) {
+            priorityWaiters.decrementAndGet();
+         }
+      }
+   }
+
+   /**
+    * Borrow an idle BagEntry matching the specified predicate without
+    * blocking.  This is a scan of all items in the bag and is intended to be
+    * tried before falling back to {@link #borrow(long, TimeUnit, boolean)}.
+    *
+    * @param predicate the predicate an idle item should match
+    * @return a borrowed instance from the bag or null if no idle item matched
+    */
+   public T borrowMatching(final Predicate<T> predicate) {
+      for (T bagEntry : sharedList) {
+         if (bagEntry.getState() == STATE_NOT_IN_USE && predicate.test(bagEntry) && bagEntry.compareAndSet(STATE_NOT_IN_USE, STATE_IN_USE)) {
+            return bagEntry;
+         }
       }
+
+      return null;
    }
 
    /**
@@ -170,7 +269,7 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
       bagEntry.setState(STATE_NOT_IN_USE);
 
       for (int i = 0; waiters.get() > 0; i++) {
-         if (bagEntry.getState() != STATE_NOT_IN_USE || handoffQueue.offer(bagEntry)) {
+         if (bagEntry.getState() != STATE_NOT_IN_USE || handoff(bagEntry)) {
             return;
          } else if ((i & 0xff) == 0xff) {
             parkNanos(MICROSECONDS.toNanos(10));
@@ -179,9 +278,14 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
          }
       }
 
+      if (idleDeque != null) {
+         offerIdle(bagEntry);
+         return;
+      }
+
       final List<Object> threadLocalList = threadList.get();
       if (threadLocalList.size() < 50) {
-         threadLocalList.add(weakThreadLocals ? new WeakReference<>(bagEntry) : bagEntry);
+         threadLocalList.add(weakThreadLocals ? weakReference(bagEntry) : bagEntry);
       }
    }
 
@@ -199,9 +303,11 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
       sharedList.add(bagEntry);
 
       // spin until a thread takes it or none are waiting
-      while (waiters.get() > 0 && !handoffQueue.offer(bagEntry)) {
+      while (waiters.get() > 0 && !handoff(bagEntry)) {
          yield();
       }
+
+      offerIdle(bagEntry);
    }
 
    /**
@@ -220,6 +326,13 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
       }
 
       final boolean removed = sharedList.remove(bagEntry);
+      if (idleDeque != null) {
+         idleDeque.removeIf(e -> e == bagEntry);
+      }
+      if (weakReferences != null) {
+         weakReferences.remove(bagEntry);
+      }
+
       if (!removed && !closed) {
          LOGGER.warn("Attempt to remove an object from the bag that does not exist: {}", bagEntry);
       }
@@ -288,9 +401,11 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
    public void unreserve(final T bagEntry) {
       if (bagEntry.compareAndSet(STATE_RESERVED, STATE_NOT_IN_USE)) {
          // spin until a thread takes it or none are waiting
-         while (waiters.get() > 0 && !handoffQueue.offer(bagEntry)) {
+         while (waiters.get() > 0 && !handoff(bagEntry)) {
             yield();
          }
+
+         offerIdle(bagEntry);
       } else {
          LOGGER.warn("Attempt to relinquish an object to the bag that was not reserved: {}", bagEntry);
       }
@@ -306,6 +421,16 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
       return waiters.get();
    }
 
+   /**
+    * Get the number of priority threads pending (waiting) for an item from
+    * the bag to become available.
+    *
+    * @return the number of priority threads waiting for items from the bag
+    */
+   public int getPriorityWaitingThreadCount() {
+      return priorityWaiters.get();
+   }
+
    /**
     * Get a count of the number of items in the specified state at the time of this call.
     *
@@ -333,6 +458,15 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
       return states;
    }
 
+   /**
+    * Get the idle ordering used by this bag.
+    *
+    * @return the idle ordering
+    */
+   public IdleOrdering getIdleOrdering() {
+      return idleOrdering;
+   }
+
    /**
     * Get the total number of items in the bag.
     *
@@ -346,6 +480,48 @@ public class ConcurrentBag<T extends IConcurrentBagEntry> implements AutoCloseab
       sharedList.forEach(entry -> LOGGER.info(entry.toString()));
    }
 
+   /**
+    * Offer an item to a waiting thread, preferring priority waiters over
+    * ordinary ones.
+    *
+    * @param bagEntry the item to hand off
+    * @return true if a waiting thread took the item, false otherwise
+    */
+   private boolean handoff(final T bagEntry) {
+      return (priorityWaiters.get() > 0 && priorityHandoffQueue.offer(bagEntry)) || handoffQueue.offer(bagEntry);
+   }
+
+   /**
+    * Make an item that was not handed off to a waiting thread available in the
+    * idle deque, at the head for LIFO ordering or at the tail for ROUND_ROBIN.
+    * Entries in the deque are only hints, the state CAS in borrow decides
+    * ownership, so an entry may be present more than once or after it has been
+    * taken by another path.
+    *
+    * @param bagEntry the idle item
+    */
+   private void offerIdle(final T bagEntry) {
+      if (idleDeque != null && bagEntry.getState() == STATE_NOT_IN_USE) {
+         if (idleOrdering == IdleOrdering.LIFO) {
+            idleDeque.offerFirst(bagEntry);
+         } else {
+            idleDeque.offerLast(bagEntry);
+         }
+      }
+   }
+
+   /**
+    * Get the WeakReference through which the ThreadLocal lists refer to the specified item.  One reference
+    * is created per item and shared by all threads, rather than one per requite().
+    *
+    * @param bagEntry the item
+    * @return the WeakReference to the item
+    */
+   private WeakReference<T> weakReference(final T bagEntry) {
+      final WeakReference<T> reference = weakReferences.get(bagEntry);
+      return reference != null ? reference : weakReferences.computeIfAbsent(bagEntry, WeakReference::new);
+   }
+
    /**
     * Determine whether to use WeakReferences based on whether there is a
     * custom ClassLoader implementation sitting between this class and the
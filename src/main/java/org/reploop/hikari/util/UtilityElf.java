@@ -20,6 +20,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.util.Locale;
+import java.util.StringJoiner;
 import java.util.concurrent.*;
 
 import static java.lang.Thread.currentThread;
@@ -41,6 +42,20 @@ public final class UtilityElf {
       return text == null ? null : text.trim().isEmpty() ? null : text.trim();
    }
 
+   /**
+    * Mask the password parameters of one or more whitespace separated JDBC URLs, for logging.
+    *
+    * @param jdbcUrls the JDBC URLs
+    * @return the JDBC URLs with every password replaced by {@code <masked>}, separated by single spaces
+    */
+   public static String maskJdbcUrls(final String jdbcUrls) {
+      final StringJoiner masked = new StringJoiner(" ");
+      for (String url : jdbcUrls.trim().split("\\s+")) {
+         masked.add(url.replaceAll("([?&;]password=)[^&#;]*", "$1<masked>"));
+      }
+      return masked.toString();
+   }
+
    /**
     * Sleep and suppress InterruptedException (but re-signal it).
     *
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.mocks;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Injects latency and faults into the stub driver.  When a FaultInjector is installed, {@link StubDriver},
+ * {@link StubDataSource}, {@link StubConnection} and {@link StubStatement} consult it on connect, validate,
+ * execute and close.  Each operation can be given a latency distribution, a probability of failing with
+ * an {@link SQLException} carrying a configurable SQLState (08xxx states make the pool evict the connection),
+ * and a probability of hanging.
+ * <p>
+ * Random draws are a pure function of the seed, the operation and the sequence number of the call, so a
+ * run with the same seed sees the same sequence of latencies and faults for each operation.
+ *
+ * @author Brett Wooldridge
+ */
+public final class FaultInjector {
+   public enum Operation {
+      CONNECT,
+      VALIDATE,
+      EXECUTE,
+      CLOSE
+   }
+
+   private static volatile FaultInjector installed;
+
+   private final long seed;
+   private final Map<Operation, Fault> faults;
+   private volatile long hangMillis;
+
+   public FaultInjector(final long seed) {
+      this.seed = seed;
+      this.faults = new EnumMap<>(Operation.class);
+      for (Operation operation : Operation.values()) {
+         faults.put(operation, new Fault());
+      }
+      this.hangMillis = 30_000L;
+   }
+
+   /**
+    * Install a FaultInjector for all stub connections, replacing any previously installed one.
+    *
+    * @param injector the FaultInjector to install, or null to remove the current one
+    */
+   public static void install(final FaultInjector injector) {
+      installed = injector;
+   }
+
+   public static void uninstall() {
+      installed = null;
+   }
+
+   /**
+    * Called by the stubs before performing an operation.
+    *
+    * @param operation the operation being performed
+    * @throws SQLException if a failure is injected
+    */
+   static void inject(final Operation operation) throws SQLException {
+      final FaultInjector injector = installed;
+      if (injector != null) {
+         injector.apply(operation);
+      }
+   }
+
+   public void setLatency(final Operation operation, final LatencyDistribution latency) {
+      faults.get(operation).latency = latency;
+   }
+
+   /**
+    * Fail the specified fraction of operations with an SQLException carrying the specified SQLState.
+    *
+    * @param operation   the operation to fail
+    * @param probability the fraction of calls that fail
+    * @param sqlState    the SQLState of the thrown exception, e.g. "08S01" for a communication link failure
+    */
+   public void setFailure(final Operation operation, final double probability, final String sqlState) {
+      final Fault fault = faults.get(operation);
+      fault.failureProbability = probability;
+      fault.sqlState = sqlState;
+   }
+
+   /**
+    * Hang the specified fraction of operations for the hang time, or until the calling thread is interrupted.
+    *
+    * @param operation   the operation to hang
+    * @param probability the fraction of calls that hang
+    */
+   public void setHang(final Operation operation, final double probability) {
+      faults.get(operation).hangProbability = probability;
+   }
+
+   public void setHangMillis(final long hangMillis) {
+      this.hangMillis = hangMillis;
+   }
+
+   public long getCalls(final Operation operation) {
+      return faults.get(operation).sequence.get();
+   }
+
+   public long getInjectedFailures(final Operation operation) {
+      return faults.get(operation).failures.get();
+   }
+
+   public long getInjectedHangs(final Operation operation) {
+      return faults.get(operation).hangs.get();
+   }
+
+   private void apply(final Operation operation) throws SQLException {
+      final Fault fault = faults.get(operation);
+      final long sequence = fault.sequence.getAndIncrement();
+
+      final long latency = fault.latency.sample(uniform(operation, sequence, 0));
+      if (latency > 0) {
+         sleep(latency);
+      }
+
+      if (fault.hangProbability > 0 && uniform(operation, sequence, 1) < fault.hangProbability) {
+         fault.hangs.incrementAndGet();
+         if (!sleep(hangMillis)) {
+            throw new SQLTransientConnectionException("Injected hang interrupted during " + operation);
+         }
+      }
+
+      if (fault.failureProbability > 0 && uniform(operation, sequence, 2) < fault.failureProbability) {
+         fault.failures.incrementAndGet();
+         throw new SQLException("Injected failure during " + operation, fault.sqlState);
+      }
+   }
+
+   /**
+    * A uniform value in [0, 1) derived from the seed, operation, call sequence and draw (SplitMix64 finalizer).
+    */
+   private double uniform(final Operation operation, final long sequence, final int draw) {
+      long z = seed + 0x9E3779B97F4A7C15L * (1 + sequence * 3 + draw) + ((long) operation.ordinal() << 56);
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      z = z ^ (z >>> 31);
+      return (z >>> 11) * 0x1.0p-53;
+   }
+
+   private static boolean sleep(final long millis) {
+      try {
+         Thread.sleep(millis);
+         return true;
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         return false;
+      }
+   }
+
+   private static final class Fault {
+      private final AtomicLong sequence = new AtomicLong();
+      private final AtomicLong failures = new AtomicLong();
+      private final AtomicLong hangs = new AtomicLong();
+      private volatile LatencyDistribution latency = LatencyDistribution.NONE;
+      private volatile double failureProbability;
+      private volatile double hangProbability;
+      private volatile String sqlState = "08S01";
+   }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.mocks;
+
+/**
+ * A latency distribution sampled by the {@link FaultInjector}.  A sample maps a uniformly distributed
+ * value in [0, 1) to a latency in milliseconds, so that a seeded sequence of uniforms always produces the
+ * same sequence of latencies.
+ *
+ * @author Brett Wooldridge
+ */
+public interface LatencyDistribution {
+   LatencyDistribution NONE = u -> 0L;
+
+   /**
+    * Map a uniformly distributed value to a latency.
+    *
+    * @param u a value in [0, 1)
+    * @return the latency in milliseconds
+    */
+   long sample(double u);
+
+   static LatencyDistribution fixed(final long millis) {
+      return u -> millis;
+   }
+
+   static LatencyDistribution uniform(final long minMillis, final long maxMillis) {
+      return u -> minMillis + (long) (u * (maxMillis - minMillis + 1));
+   }
+
+   static LatencyDistribution exponential(final double meanMillis) {
+      return u -> (long) (-meanMillis * Math.log(1.0 - u));
+   }
+
+   /**
+    * A bimodal distribution, mostly fast with an occasional slow outlier.
+    *
+    * @param fast         the latency of the common case
+    * @param slow         the latency of an outlier
+    * @param slowFraction the fraction of samples that are outliers
+    * @return the distribution
+    */
+   static LatencyDistribution bimodal(final long fast, final long slow, final double slowFraction) {
+      return u -> u < slowFraction ? slow : fast;
+   }
+}
@@ -135,7 +135,7 @@ public class StubConnection extends StubBaseConnection implements Connection {
     */
    @Override
    public void close() throws SQLException {
-
+      FaultInjector.inject(FaultInjector.Operation.CLOSE);
    }
 
    /**
@@ -433,6 +433,7 @@ public class StubConnection extends StubBaseConnection implements Connection {
       if (throwException) {
          throw new SQLException();
       }
+      FaultInjector.inject(FaultInjector.Operation.VALIDATE);
       return true;
    }
 
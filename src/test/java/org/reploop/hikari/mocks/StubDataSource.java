@@ -128,6 +128,7 @@ public class StubDataSource implements DataSource {
          UtilityElf.quietlySleep(connectionAcquistionTime);
       }
 
+      FaultInjector.inject(FaultInjector.Operation.CONNECT);
       return new StubConnection();
    }
 
@@ -18,6 +18,8 @@ package org.reploop.hikari.mocks;
 
 import java.sql.*;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -25,6 +27,7 @@ import java.util.logging.Logger;
  */
 public class StubDriver implements Driver {
    private static final Driver driver;
+   private static final Set<String> downUrls = ConcurrentHashMap.newKeySet();
 
    static {
       driver = new StubDriver();
@@ -40,6 +43,10 @@ public class StubDriver implements Driver {
     */
    @Override
    public Connection connect(String url, Properties info) throws SQLException {
+      if (downUrls.contains(url)) {
+         throw new SQLException("Connection refused: " + url, "08001");
+      }
+      FaultInjector.inject(FaultInjector.Operation.CONNECT);
       return new StubConnection();
    }
 
@@ -48,7 +55,21 @@ public class StubDriver implements Driver {
     */
    @Override
    public boolean acceptsURL(String url) throws SQLException {
-      return "jdbc:stub".equals(url);
+      return url.startsWith("jdbc:stub");
+   }
+
+   /**
+    * Make connection attempts to the specified URL fail as if its host were unreachable.
+    *
+    * @param url  the JDBC URL
+    * @param down true to refuse connections, false to accept them again
+    */
+   public static void setDown(final String url, final boolean down) {
+      if (down) {
+         downUrls.add(url);
+      } else {
+         downUrls.remove(url);
+      }
    }
 
    /**
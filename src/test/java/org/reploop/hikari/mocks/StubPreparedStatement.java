@@ -21,6 +21,7 @@ import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.*;
+import java.util.Arrays;
 import java.util.Calendar;
 
 /**
@@ -28,6 +29,8 @@ import java.util.Calendar;
  */
 @SuppressWarnings("RedundantThrows")
 public class StubPreparedStatement extends StubStatement implements PreparedStatement {
+   private int batchSize;
+
    StubPreparedStatement(Connection connection) {
       super(connection);
    }
@@ -184,6 +187,7 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     */
    @Override
    public void setFetchSize(int rows) throws SQLException {
+      super.setFetchSize(rows);
    }
 
    /**
@@ -191,7 +195,7 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     */
    @Override
    public int getFetchSize() throws SQLException {
-      return 0;
+      return super.getFetchSize();
    }
 
    /**
@@ -222,6 +226,7 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     */
    @Override
    public void clearBatch() throws SQLException {
+      batchSize = 0;
    }
 
    /**
@@ -229,7 +234,11 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     */
    @Override
    public int[] executeBatch() throws SQLException {
-      return null;
+      FaultInjector.inject(FaultInjector.Operation.EXECUTE);
+      final int[] updateCounts = new int[batchSize];
+      Arrays.fill(updateCounts, 1);
+      batchSize = 0;
+      return updateCounts;
    }
 
    /**
@@ -360,6 +369,7 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     */
    @Override
    public ResultSet executeQuery() throws SQLException {
+      FaultInjector.inject(FaultInjector.Operation.EXECUTE);
       return new StubResultSet();
    }
 
@@ -368,6 +378,7 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     */
    @Override
    public int executeUpdate() throws SQLException {
+      FaultInjector.inject(FaultInjector.Operation.EXECUTE);
       return 0;
    }
 
@@ -517,6 +528,7 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     */
    @Override
    public boolean execute() throws SQLException {
+      FaultInjector.inject(FaultInjector.Operation.EXECUTE);
       return false;
    }
 
@@ -525,6 +537,7 @@ public class StubPreparedStatement extends StubStatement implements PreparedStat
     */
    @Override
    public void addBatch() throws SQLException {
+      batchSize++;
    }
 
    /**
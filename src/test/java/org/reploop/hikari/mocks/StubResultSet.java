@@ -29,8 +29,14 @@ import java.util.Map;
  */
 @SuppressWarnings("RedundantThrows")
 public class StubResultSet implements ResultSet {
+   // the number of rows returned by next() of the ResultSets created from now on
+   public static volatile int rows;
+
+   private final int rowCount = rows;
+   private int row;
    private int counter;
    private boolean closed;
+   private boolean wasNull;
 
    /**
     * {@inheritDoc}
@@ -54,7 +60,7 @@ public class StubResultSet implements ResultSet {
     */
    @Override
    public boolean next() throws SQLException {
-      return (counter > 100000);
+      return (counter > 100000) || row++ < rowCount;
    }
 
    /**
@@ -70,7 +76,7 @@ public class StubResultSet implements ResultSet {
     */
    @Override
    public boolean wasNull() throws SQLException {
-      return false;
+      return wasNull;
    }
 
    /**
@@ -118,7 +124,8 @@ public class StubResultSet implements ResultSet {
     */
    @Override
    public long getLong(int columnIndex) throws SQLException {
-      return 0;
+      wasNull = false;
+      return row;
    }
 
    /**
@@ -134,7 +141,8 @@ public class StubResultSet implements ResultSet {
     */
    @Override
    public double getDouble(int columnIndex) throws SQLException {
-      return 0;
+      wasNull = false;
+      return row / 2.0;
    }
 
    /**
@@ -175,7 +183,9 @@ public class StubResultSet implements ResultSet {
     */
    @Override
    public Timestamp getTimestamp(int columnIndex) throws SQLException {
-      return null;
+      // every other row is NULL
+      wasNull = row % 2 == 0;
+      return wasNull ? null : new Timestamp(row * 1000L);
    }
 
    /**
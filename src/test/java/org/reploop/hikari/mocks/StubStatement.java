@@ -25,9 +25,12 @@ import java.sql.*;
  */
 public class StubStatement implements Statement {
    public static volatile boolean oldDriver;
+   // the fetch size of the statements created from now on, as a driver URL property would set it
+   public static volatile int defaultFetchSize;
 
    private static volatile long simulatedQueryTime;
    private boolean closed;
+   private int fetchSize = defaultFetchSize;
    private Connection connection;
 
    public StubStatement(Connection connection) {
@@ -63,6 +66,7 @@ public class StubStatement implements Statement {
    @Override
    public ResultSet executeQuery(String sql) throws SQLException {
       checkClosed();
+      FaultInjector.inject(FaultInjector.Operation.EXECUTE);
       StubResultSet resultSet = new StubResultSet();
       return resultSet;
    }
@@ -73,6 +77,7 @@ public class StubStatement implements Statement {
    @Override
    public int executeUpdate(String sql) throws SQLException {
       checkClosed();
+      FaultInjector.inject(FaultInjector.Operation.EXECUTE);
       return 0;
    }
 
@@ -189,6 +194,7 @@ public class StubStatement implements Statement {
       if (simulatedQueryTime > 0) {
          UtilityElf.quietlySleep(simulatedQueryTime);
       }
+      FaultInjector.inject(FaultInjector.Operation.EXECUTE);
       return false;
    }
 
@@ -242,6 +248,7 @@ public class StubStatement implements Statement {
    @Override
    public void setFetchSize(int rows) throws SQLException {
       checkClosed();
+      fetchSize = rows;
    }
 
    /**
@@ -250,7 +257,7 @@ public class StubStatement implements Statement {
    @Override
    public int getFetchSize() throws SQLException {
       checkClosed();
-      return 0;
+      return fetchSize;
    }
 
    /**
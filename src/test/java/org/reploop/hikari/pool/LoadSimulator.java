@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.HikariPoolMXBean;
+import org.reploop.hikari.mocks.FaultInjector;
+import org.reploop.hikari.mocks.LatencyDistribution;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.CONNECT;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.EXECUTE;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.VALIDATE;
+
+/**
+ * Drives a pool backed by the stub driver with a number of borrowing threads for a fixed duration, and
+ * records throughput, connection acquisition times and the pool size over time.  Combined with a
+ * {@link FaultInjector} this allows pool policy changes to be compared offline, for example by running
+ * {@link #sweep(int...)} before and after a change and comparing the CSV reports.
+ *
+ * @author Brett Wooldridge
+ */
+public final class LoadSimulator {
+   private final Supplier<HikariConfig> configSupplier;
+   private long durationMs = 1000;
+   private long sampleIntervalMs = 10;
+   private int statementsPerBorrow = 1;
+   private LatencyDistribution thinkTime = LatencyDistribution.NONE;
+
+   /**
+    * Construct a LoadSimulator.
+    *
+    * @param configSupplier supplies a fresh, unsealed configuration for each run
+    */
+   public LoadSimulator(final Supplier<HikariConfig> configSupplier) {
+      this.configSupplier = configSupplier;
+   }
+
+   public void setDurationMs(final long durationMs) {
+      this.durationMs = durationMs;
+   }
+
+   public void setSampleIntervalMs(final long sampleIntervalMs) {
+      this.sampleIntervalMs = sampleIntervalMs;
+   }
+
+   public void setStatementsPerBorrow(final int statementsPerBorrow) {
+      this.statementsPerBorrow = statementsPerBorrow;
+   }
+
+   public void setThinkTime(final LatencyDistribution thinkTime) {
+      this.thinkTime = thinkTime;
+   }
+
+   /**
+    * Run the load once for each of the specified thread counts, each against a new pool.
+    *
+    * @param threadCounts the numbers of borrowing threads
+    * @return the result of each run
+    */
+   public List<Result> sweep(final int... threadCounts) throws InterruptedException {
+      final List<Result> results = new ArrayList<>();
+      for (int threads : threadCounts) {
+         results.add(run(threads));
+      }
+      return results;
+   }
+
+   /**
+    * Run the load with the specified number of borrowing threads against a new pool.
+    *
+    * @param threads the number of borrowing threads
+    * @return the result of the run
+    */
+   public Result run(final int threads) throws InterruptedException {
+      final HikariConfig config = configSupplier.get();
+      config.setPoolName((config.getPoolName() != null ? config.getPoolName() : "simulation") + "-" + threads);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         final HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+         final Worker[] workers = new Worker[threads];
+         final CountDownLatch start = new CountDownLatch(1);
+         final AtomicBoolean stop = new AtomicBoolean();
+         final List<Sample> trajectory = new ArrayList<>();
+
+         for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(ds, start, stop, i);
+            workers[i].start();
+         }
+
+         final long startNanos = System.nanoTime();
+         final long endNanos = startNanos + MILLISECONDS.toNanos(durationMs);
+         start.countDown();
+         for (long now = startNanos; now < endNanos; now = System.nanoTime()) {
+            trajectory.add(Sample.of(pool, now - startNanos));
+            MILLISECONDS.sleep(Math.min(sampleIntervalMs, Math.max(1, NANOSECONDS.toMillis(endNanos - now))));
+         }
+
+         stop.set(true);
+         for (Worker worker : workers) {
+            worker.join();
+         }
+         final long elapsedNanos = System.nanoTime() - startNanos;
+
+         return Result.of(threads, elapsedNanos, workers, trajectory);
+      }
+   }
+
+   /**
+    * Write one row per run with throughput, failure counts and acquisition time percentiles.
+    *
+    * @param results the results to write
+    * @param out     the writer to write the CSV to
+    */
+   public static void writeSummary(final List<Result> results, final Writer out) throws IOException {
+      try (CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withHeader("threads", "operations", "timeouts", "failures",
+         "opsPerSecond", "acquireP50Micros", "acquireP90Micros", "acquireP99Micros", "acquireMaxMicros"))) {
+         for (Result result : results) {
+            printer.printRecord(result.threads, result.operations, result.timeouts, result.failures, String.format("%.1f", result.getThroughput()),
+               result.getAcquirePercentileMicros(50), result.getAcquirePercentileMicros(90), result.getAcquirePercentileMicros(99),
+               result.getAcquirePercentileMicros(100));
+         }
+      }
+   }
+
+   /**
+    * Write the sampled pool size over time of each run.
+    *
+    * @param results the results to write
+    * @param out     the writer to write the CSV to
+    */
+   public static void writeTrajectories(final List<Result> results, final Writer out) throws IOException {
+      try (CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT.withHeader("threads", "elapsedMs", "total", "active", "idle", "waiting"))) {
+         for (Result result : results) {
+            for (Sample sample : result.trajectory) {
+               printer.printRecord(result.threads, sample.elapsedMs, sample.total, sample.active, sample.idle, sample.waiting);
+            }
+         }
+      }
+   }
+
+   /**
+    * Run a thread count sweep against a pool with jittery connect, validate and execute latencies and
+    * occasional communication failures, and write summary.csv and trajectory.csv to the directory given as
+    * the first argument (default target/load-simulation).
+    */
+   public static void main(String[] args) throws Exception {
+      final Path dir = Paths.get(args.length > 0 ? args[0] : "target/load-simulation");
+      Files.createDirectories(dir);
+
+      final FaultInjector injector = new FaultInjector(42L);
+      injector.setLatency(CONNECT, LatencyDistribution.uniform(20, 80));
+      injector.setLatency(VALIDATE, LatencyDistribution.bimodal(0, 25, 0.01));
+      injector.setLatency(EXECUTE, LatencyDistribution.exponential(5));
+      injector.setFailure(EXECUTE, 0.001, "08S01");
+      FaultInjector.install(injector);
+
+      try {
+         final LoadSimulator simulator = new LoadSimulator(() -> {
+            final HikariConfig config = new HikariConfig();
+            config.setPoolName("simulation");
+            config.setMinimumIdle(2);
+            config.setMaximumPoolSize(10);
+            config.setConnectionTimeout(2000);
+            config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+            return config;
+         });
+         simulator.setDurationMs(5000);
+         simulator.setThinkTime(LatencyDistribution.uniform(0, 2));
+
+         final List<Result> results = simulator.sweep(1, 2, 4, 8, 16, 32, 64);
+         try (Writer out = Files.newBufferedWriter(dir.resolve("summary.csv"))) {
+            writeSummary(results, out);
+         }
+         try (Writer out = Files.newBufferedWriter(dir.resolve("trajectory.csv"))) {
+            writeTrajectories(results, out);
+         }
+      } finally {
+         FaultInjector.uninstall();
+      }
+   }
+
+   /**
+    * The outcome of a single run.
+    */
+   public static final class Result {
+      final int threads;
+      final long elapsedNanos;
+      final long operations;
+      final long timeouts;
+      final long failures;
+      final long[] acquireNanos;
+      final List<Sample> trajectory;
+
+      Result(final int threads, final long elapsedNanos, final long operations, final long timeouts, final long failures,
+             final long[] acquireNanos, final List<Sample> trajectory) {
+         this.threads = threads;
+         this.elapsedNanos = elapsedNanos;
+         this.operations = operations;
+         this.timeouts = timeouts;
+         this.failures = failures;
+         this.acquireNanos = acquireNanos;
+         this.trajectory = Collections.unmodifiableList(trajectory);
+         Arrays.sort(acquireNanos);
+      }
+
+      private static Result of(final int threads, final long elapsedNanos, final Worker[] workers, final List<Sample> trajectory) {
+         long operations = 0, timeouts = 0, failures = 0;
+         int acquisitions = 0;
+         for (Worker worker : workers) {
+            operations += worker.operations;
+            timeouts += worker.timeouts;
+            failures += worker.failures;
+            acquisitions += worker.acquisitions;
+         }
+
+         final long[] acquireNanos = new long[acquisitions];
+         int offset = 0;
+         for (Worker worker : workers) {
+            System.arraycopy(worker.acquireNanos, 0, acquireNanos, offset, worker.acquisitions);
+            offset += worker.acquisitions;
+         }
+
+         return new Result(threads, elapsedNanos, operations, timeouts, failures, acquireNanos, trajectory);
+      }
+
+      public int getThreads() {
+         return threads;
+      }
+
+      public long getOperations() {
+         return operations;
+      }
+
+      public long getTimeouts() {
+         return timeouts;
+      }
+
+      public long getFailures() {
+         return failures;
+      }
+
+      public List<Sample> getTrajectory() {
+         return trajectory;
+      }
+
+      /**
+       * Get the completed borrow cycles per second.
+       *
+       * @return the throughput
+       */
+      public double getThroughput() {
+         return operations * 1e9 / elapsedNanos;
+      }
+
+      /**
+       * Get an acquisition time percentile (nearest rank) of the successful acquisitions.
+       *
+       * @param percentile the percentile, between 0 and 100
+       * @return the acquisition time in microseconds, or 0 if there were no successful acquisitions
+       */
+      public long getAcquirePercentileMicros(final double percentile) {
+         if (acquireNanos.length == 0) {
+            return 0;
+         }
+
+         final int rank = (int) Math.ceil(percentile / 100.0 * acquireNanos.length);
+         return NANOSECONDS.toMicros(acquireNanos[Math.max(0, Math.min(acquireNanos.length - 1, rank - 1))]);
+      }
+   }
+
+   /**
+    * The pool size at a point in time.
+    */
+   public static final class Sample {
+      final long elapsedMs;
+      final int total;
+      final int active;
+      final int idle;
+      final int waiting;
+
+      private Sample(final long elapsedMs, final int total, final int active, final int idle, final int waiting) {
+         this.elapsedMs = elapsedMs;
+         this.total = total;
+         this.active = active;
+         this.idle = idle;
+         this.waiting = waiting;
+      }
+
+      static Sample of(final HikariPoolMXBean pool, final long elapsedNanos) {
+         return new Sample(NANOSECONDS.toMillis(elapsedNanos), pool.getTotalConnections(), pool.getActiveConnections(),
+            pool.getIdleConnections(), pool.getThreadsAwaitingConnection());
+      }
+
+      public int getTotal() {
+         return total;
+      }
+
+      public int getActive() {
+         return active;
+      }
+
+      public int getIdle() {
+         return idle;
+      }
+
+      public int getWaiting() {
+         return waiting;
+      }
+   }
+
+   private final class Worker extends Thread {
+      private final HikariDataSource ds;
+      private final CountDownLatch start;
+      private final AtomicBoolean stop;
+      private long[] acquireNanos = new long[1024];
+      private int acquisitions;
+      private long operations;
+      private long timeouts;
+      private long failures;
+      private long thinkSequence;
+      private final double thinkOffset;
+
+      private Worker(final HikariDataSource ds, final CountDownLatch start, final AtomicBoolean stop, final int index) {
+         super("simulation worker " + index);
+         this.ds = ds;
+         this.start = start;
+         this.stop = stop;
+         this.thinkOffset = index * 0.6180339887498949;
+         setDaemon(true);
+      }
+
+      @Override
+      public void run() {
+         try {
+            start.await();
+         } catch (InterruptedException e) {
+            return;
+         }
+
+         while (!stop.get()) {
+            final long startNanos = System.nanoTime();
+            try (Connection connection = ds.getConnection()) {
+               record(System.nanoTime() - startNanos);
+               for (int i = 0; i < statementsPerBorrow; i++) {
+                  try (Statement statement = connection.createStatement()) {
+                     statement.execute("SELECT 1");
+                  }
+               }
+               operations++;
+            } catch (SQLTransientConnectionException e) {
+               timeouts++;
+            } catch (SQLException e) {
+               failures++;
+            }
+
+            // a low-discrepancy sequence keeps think times reproducible without a shared random source
+            final long think = thinkTime.sample((thinkOffset + ++thinkSequence * 0.6180339887498949) % 1.0);
+            if (think > 0) {
+               try {
+                  MILLISECONDS.sleep(think);
+               } catch (InterruptedException e) {
+                  return;
+               }
+            }
+         }
+      }
+
+      private void record(final long nanos) {
+         if (acquisitions == acquireNanos.length) {
+            acquireNanos = Arrays.copyOf(acquireNanos, acquisitions * 2);
+         }
+         acquireNanos[acquisitions++] = nanos;
+      }
+   }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.mocks.FaultInjector;
+import org.reploop.hikari.mocks.LatencyDistribution;
+import org.reploop.hikari.mocks.StubConnection;
+
+import java.io.StringWriter;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.CONNECT;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.EXECUTE;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class LoadSimulatorTest {
+   @After
+   public void teardown() {
+      FaultInjector.uninstall();
+   }
+
+   @Test
+   public void testSweepReport() throws Exception {
+      FaultInjector injector = new FaultInjector(7L);
+      injector.setLatency(CONNECT, LatencyDistribution.fixed(5));
+      injector.setLatency(EXECUTE, LatencyDistribution.uniform(1, 3));
+      FaultInjector.install(injector);
+
+      LoadSimulator simulator = new LoadSimulator(() -> config(2));
+      simulator.setDurationMs(300);
+
+      List<LoadSimulator.Result> results = simulator.sweep(1, 4);
+      assertEquals(2, results.size());
+      for (LoadSimulator.Result result : results) {
+         assertTrue(result.getOperations() > 0);
+         assertTrue(result.getAcquirePercentileMicros(50) <= result.getAcquirePercentileMicros(99));
+         assertTrue(result.getAcquirePercentileMicros(99) <= result.getAcquirePercentileMicros(100));
+         assertTrue(result.getTrajectory().size() > 1);
+         for (LoadSimulator.Sample sample : result.getTrajectory()) {
+            assertTrue(sample.getTotal() <= 2);
+         }
+      }
+
+      // with 4 threads contending for 2 connections some borrowers must have waited
+      assertTrue(results.get(1).getTrajectory().stream().anyMatch(sample -> sample.getWaiting() > 0));
+
+      StringWriter summary = new StringWriter();
+      LoadSimulator.writeSummary(results, summary);
+      String[] lines = summary.toString().trim().split("\r?\n");
+      assertEquals(3, lines.length);
+      assertTrue(lines[0].startsWith("threads,operations,timeouts,failures,opsPerSecond"));
+      assertTrue(lines[2].startsWith("4,"));
+
+      StringWriter trajectory = new StringWriter();
+      LoadSimulator.writeTrajectories(results, trajectory);
+      assertTrue(trajectory.toString().startsWith("threads,elapsedMs,total,active,idle,waiting"));
+   }
+
+   @Test
+   public void testInjectedCommunicationFailures() throws Exception {
+      FaultInjector injector = new FaultInjector(11L);
+      injector.setFailure(EXECUTE, 0.2, "08S01");
+      FaultInjector.install(injector);
+
+      LoadSimulator simulator = new LoadSimulator(() -> config(4));
+      simulator.setDurationMs(300);
+
+      LoadSimulator.Result result = simulator.run(4);
+      assertTrue(injector.getInjectedFailures(EXECUTE) > 0);
+      assertEquals(injector.getInjectedFailures(EXECUTE), result.getFailures());
+      assertTrue("Pool should keep serving after evicting broken connections", result.getOperations() > 0);
+      // every 08xxx failure evicts its connection, so the pool must have opened replacements
+      assertTrue(injector.getCalls(CONNECT) > 4);
+   }
+
+   @Test
+   public void testDeterministicFaults() {
+      assertEquals(faultPattern(3L), faultPattern(3L));
+      assertNotEquals(faultPattern(3L), faultPattern(4L));
+   }
+
+   private static List<Boolean> faultPattern(final long seed) {
+      FaultInjector injector = new FaultInjector(seed);
+      injector.setFailure(EXECUTE, 0.5, "08S01");
+      FaultInjector.install(injector);
+
+      List<Boolean> pattern = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+         try (Statement statement = new StubConnection().createStatement()) {
+            statement.execute("SELECT 1");
+            pattern.add(false);
+         } catch (SQLException e) {
+            assertEquals("08S01", e.getSQLState());
+            pattern.add(true);
+         }
+      }
+      return pattern;
+   }
+
+   private static HikariConfig config(final int maxPoolSize) {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(maxPoolSize);
+      config.setConnectionTimeout(1000);
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
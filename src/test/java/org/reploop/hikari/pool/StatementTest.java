@@ -26,6 +26,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.reploop.hikari.pool.TestElf.getPool;
@@ -126,4 +127,29 @@ public class StatementTest {
          statement2.close();
       }
    }
+
+   @Test
+   public void testInterleavedStatementClose() throws SQLException {
+      Statement[] statements = new Statement[8];
+      try (Connection connection = ds.getConnection()) {
+         for (int i = 0; i < statements.length; i++) {
+            statements[i] = connection.createStatement();
+         }
+
+         // close from the middle and the front, so tracked statements are moved between slots
+         for (int i : new int[]{3, 0, 7, 5}) {
+            statements[i].close();
+         }
+
+         for (int i : new int[]{1, 2, 4, 6}) {
+            assertFalse(statements[i].isClosed());
+         }
+
+         statements[4].close();
+      }
+
+      for (Statement statement : statements) {
+         assertTrue(statement.isClosed());
+      }
+   }
 }
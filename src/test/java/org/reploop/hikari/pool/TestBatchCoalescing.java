@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.FaultInjector;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.EXECUTE;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestBatchCoalescing {
+   private FaultInjector injector;
+
+   @Before
+   public void setup() {
+      injector = new FaultInjector(1L);
+      FaultInjector.install(injector);
+   }
+
+   @After
+   public void teardown() {
+      FaultInjector.uninstall();
+   }
+
+   @Test
+   public void testUpdatesCoalesced() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config());
+           Connection connection = ds.getConnection()) {
+         try (PreparedStatement statement = connection.prepareStatement("INSERT INTO t VALUES (?)")) {
+            for (int i = 0; i < 25; i++) {
+               statement.setInt(1, i);
+               assertEquals(Statement.SUCCESS_NO_INFO, statement.executeUpdate());
+            }
+            assertEquals("Full batches should be sent as they fill", 2, injector.getCalls(EXECUTE));
+
+            connection.commit();
+            assertEquals("The remaining updates should be sent at commit", 3, injector.getCalls(EXECUTE));
+         }
+      }
+   }
+
+   @Test
+   public void testFlushedInOrder() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config());
+           Connection connection = ds.getConnection()) {
+         try (PreparedStatement insert = connection.prepareStatement("INSERT INTO t VALUES (?)");
+              PreparedStatement update = connection.prepareStatement("UPDATE t SET a = ?")) {
+            insert.executeUpdate();
+            insert.executeUpdate();
+            assertEquals(0, injector.getCalls(EXECUTE));
+
+            update.executeUpdate();
+            assertEquals("Updates of another statement should be sent first", 1, injector.getCalls(EXECUTE));
+
+            try (Statement statement = connection.createStatement()) {
+               statement.executeQuery("SELECT * FROM t").close();
+            }
+            assertEquals(3, injector.getCalls(EXECUTE));
+         }
+      }
+   }
+
+   @Test
+   public void testRollbackDiscardsAndCloseFlushes() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config());
+           Connection connection = ds.getConnection()) {
+         try (PreparedStatement statement = connection.prepareStatement("INSERT INTO t VALUES (?)")) {
+            statement.executeUpdate();
+            statement.executeUpdate();
+            connection.rollback();
+            assertEquals("Rolled back updates should not be sent", 0, injector.getCalls(EXECUTE));
+
+            statement.executeUpdate();
+         }
+         assertEquals("Updates should be sent when their statement is closed", 1, injector.getCalls(EXECUTE));
+      }
+   }
+
+   @Test
+   public void testNotCoalesced() throws Exception {
+      HikariConfig config = config();
+      config.setAutoCommit(true);
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection()) {
+         try (PreparedStatement statement = connection.prepareStatement("INSERT INTO t VALUES (?)")) {
+            statement.executeUpdate();
+            assertEquals("Updates in auto-commit mode should not be coalesced", 1, injector.getCalls(EXECUTE));
+         }
+
+         connection.setAutoCommit(false);
+         try (PreparedStatement statement = connection.prepareStatement("INSERT INTO t VALUES (?)", Statement.RETURN_GENERATED_KEYS)) {
+            statement.executeUpdate();
+            assertEquals("Updates returning generated keys should not be coalesced", 2, injector.getCalls(EXECUTE));
+         }
+      }
+   }
+
+   @Test
+   public void testCoalescedUpdateCount() throws Exception {
+      HikariConfig config = config();
+      config.setCoalescedUpdateCount(1);
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("INSERT INTO t VALUES (?)")) {
+         assertEquals(1, statement.executeUpdate());
+      }
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(2);
+      config.setAutoCommit(false);
+      config.setBatchCoalescingSize(10);
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
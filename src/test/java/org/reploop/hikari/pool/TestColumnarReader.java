@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.StubResultSet;
+import org.reploop.hikari.pool.ColumnarReader.ColumnType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.BitSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestColumnarReader {
+   @Before
+   public void setup() {
+      StubResultSet.rows = 0;
+   }
+
+   @After
+   public void teardown() {
+      StubResultSet.rows = 0;
+   }
+
+   @Test
+   public void testBatches() throws Exception {
+      StubResultSet.rows = 10;
+
+      try (HikariDataSource ds = new HikariDataSource(config());
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT id, amount, ts FROM t");
+           ResultSet resultSet = statement.executeQuery()) {
+         ColumnarReader reader = new ColumnarReader(resultSet, 4)
+            .column(1, ColumnType.LONG)
+            .column(2, ColumnType.DOUBLE)
+            .column(3, ColumnType.EPOCH_MILLIS);
+
+         long[] ids = reader.getLongs(0);
+         assertEquals(4, reader.next());
+         assertArrayEquals(new long[]{1, 2, 3, 4}, ids);
+         assertArrayEquals(new double[]{0.5, 1.0, 1.5, 2.0}, reader.getDoubles(1), 0.0);
+         assertArrayEquals(new long[]{1000, 0, 3000, 0}, reader.getLongs(2));
+         BitSet nulls = new BitSet();
+         nulls.set(1);
+         nulls.set(3);
+         assertEquals(nulls, reader.getNulls(2));
+         assertEquals(new BitSet(), reader.getNulls(0));
+
+         assertEquals(4, reader.next());
+         assertSame("Arrays should be reused", ids, reader.getLongs(0));
+         assertArrayEquals(new long[]{5, 6, 7, 8}, ids);
+
+         assertEquals(2, reader.next());
+         assertEquals(9, ids[0]);
+         assertEquals(10, ids[1]);
+         assertEquals(0, reader.next());
+         assertEquals(0, reader.next());
+      }
+   }
+
+   @Test
+   public void testRowsAccounted() throws Exception {
+      HikariConfig config = config();
+      config.setSqlMetricsSize(10);
+      config.setFetchMemoryLimit(1024 * 1024);
+      StubResultSet.rows = 10;
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT id FROM t")) {
+         try (ResultSet resultSet = statement.executeQuery()) {
+            ColumnarReader reader = new ColumnarReader(resultSet, 3).column(1, ColumnType.INT);
+            int rows = 0;
+            for (int n = reader.next(); n > 0; n = reader.next()) {
+               rows += n;
+            }
+            assertEquals(10, rows);
+         }
+
+         assertEquals(10, getPool(ds).getSqlStats().get(0).getRows());
+         statement.executeQuery().close();
+         assertEquals(11, statement.getFetchSize());
+      }
+   }
+
+   @Test
+   public void testColumnTypeChecked() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config());
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT id FROM t");
+           ResultSet resultSet = statement.executeQuery()) {
+         ColumnarReader reader = new ColumnarReader(resultSet, 16).column(1, ColumnType.DOUBLE);
+         try {
+            reader.getLongs(0);
+            fail("Expected IllegalArgumentException, the column is DOUBLE");
+         } catch (IllegalArgumentException e) {
+            // expected
+         }
+         assertEquals(0, reader.next());
+      }
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
@@ -22,6 +22,7 @@ import org.junit.Test;
 import org.reploop.hikari.HikariConfig;
 import org.reploop.hikari.HikariDataSource;
 import org.reploop.hikari.util.ConcurrentBag;
+import org.reploop.hikari.util.ConcurrentBag.IdleOrdering;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
@@ -102,4 +103,47 @@ public class TestConcurrentBag {
          assertNotNull(notinuse.toString());
       }
    }
+
+   @Test
+   public void testLifoIdleOrdering() throws Exception {
+      try (ConcurrentBag<PoolEntry> bag = new ConcurrentBag<>((x) -> CompletableFuture.completedFuture(Boolean.TRUE), IdleOrdering.LIFO)) {
+         PoolEntry first = pool.newPoolEntry();
+         PoolEntry second = pool.newPoolEntry();
+         bag.add(first);
+         bag.add(second);
+
+         assertSame(second, bag.borrow(2, MILLISECONDS));
+         assertSame(first, bag.borrow(2, MILLISECONDS));
+
+         bag.requite(first);
+         bag.requite(second);
+         assertSame(second, bag.borrow(2, MILLISECONDS));
+         bag.requite(second);
+         assertSame(second, bag.borrow(2, MILLISECONDS));
+      }
+   }
+
+   @Test
+   public void testRoundRobinIdleOrdering() throws Exception {
+      try (ConcurrentBag<PoolEntry> bag = new ConcurrentBag<>((x) -> CompletableFuture.completedFuture(Boolean.TRUE), IdleOrdering.ROUND_ROBIN)) {
+         PoolEntry first = pool.newPoolEntry();
+         PoolEntry second = pool.newPoolEntry();
+         bag.add(first);
+         bag.add(second);
+
+         for (int i = 0; i < 4; i++) {
+            PoolEntry expected = (i % 2 == 0) ? first : second;
+            PoolEntry borrowed = bag.borrow(2, MILLISECONDS);
+            assertSame(expected, borrowed);
+            bag.requite(borrowed);
+         }
+
+         // a reserved entry is skipped, and is available again once unreserved
+         assertTrue(bag.reserve(first));
+         assertSame(second, bag.borrow(2, MILLISECONDS));
+         assertNull(bag.borrow(2, MILLISECONDS));
+         bag.unreserve(first);
+         assertSame(first, bag.borrow(2, MILLISECONDS));
+      }
+   }
 }
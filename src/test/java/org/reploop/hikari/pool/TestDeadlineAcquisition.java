@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.Thread.sleep;
+import static org.junit.Assert.*;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestDeadlineAcquisition {
+   @Test
+   public void testExpiredDeadlineRejected() throws SQLException {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         try (Connection connection = ds.getConnection(System.currentTimeMillis() - 1, HikariPool.PRIORITY_NORMAL)) {
+            fail("Should not have been able to get a connection with an expired deadline.");
+         } catch (SQLTransientConnectionException e) {
+            assertTrue(e.getMessage().contains("deadline"));
+         }
+
+         try (Connection connection = ds.getConnection(System.currentTimeMillis() + 1000, HikariPool.PRIORITY_NORMAL)) {
+            assertNotNull(connection);
+         }
+      }
+   }
+
+   @Test
+   public void testPriorityServedFirst() throws Exception {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTimeout(5000);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = getPool(ds);
+         AtomicReference<String> first = new AtomicReference<>();
+         CountDownLatch done = new CountDownLatch(2);
+
+         Connection held = ds.getConnection();
+
+         Thread normal = borrower(ds, HikariPool.PRIORITY_NORMAL, "normal", first, done);
+         normal.start();
+         while (pool.getThreadsAwaitingConnection() < 1) {
+            sleep(10);
+         }
+
+         Thread priority = borrower(ds, HikariPool.PRIORITY_HIGH, "priority", first, done);
+         priority.start();
+         while (pool.getThreadsAwaitingConnection() < 2) {
+            sleep(10);
+         }
+
+         held.close();
+         assertTrue(done.await(10, TimeUnit.SECONDS));
+         assertEquals("priority", first.get());
+      }
+   }
+
+   private static Thread borrower(final HikariDataSource ds, final int priority, final String name,
+                                  final AtomicReference<String> first, final CountDownLatch done) {
+      return new Thread(() -> {
+         try (Connection connection = ds.getConnection(System.currentTimeMillis() + 5000, priority)) {
+            first.compareAndSet(null, name);
+            sleep(50);
+         } catch (Exception e) {
+            e.printStackTrace();
+         } finally {
+            done.countDown();
+         }
+      });
+   }
+}
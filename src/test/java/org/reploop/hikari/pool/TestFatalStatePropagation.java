@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.FaultInjector;
+import org.reploop.hikari.mocks.LatencyDistribution;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static java.lang.Thread.sleep;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.EXECUTE;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.VALIDATE;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestFatalStatePropagation {
+   @After
+   public void teardown() {
+      FaultInjector.uninstall();
+   }
+
+   @Test
+   public void testDeadIdleConnectionsEvicted() throws Exception {
+      HikariConfig config = config();
+      config.setFatalSqlStates("57P01, 57P02");
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = getPool(ds);
+         awaitFilled(pool);
+
+         try (Connection inUse = ds.getConnection()) {
+            FaultInjector injector = new FaultInjector(1L);
+            injector.setFailure(EXECUTE, 1.0, "57P01");
+            injector.setFailure(VALIDATE, 1.0, "08006");
+            FaultInjector.install(injector);
+
+            failExecute(ds);
+
+            // the three idle connections are validated in the background, and all fail
+            long deadline = System.nanoTime() + SECONDS.toNanos(5);
+            while (injector.getCalls(VALIDATE) < 3 && System.nanoTime() < deadline) {
+               sleep(10);
+            }
+            assertTrue(injector.getCalls(VALIDATE) >= 3);
+            FaultInjector.uninstall();
+
+            PoolEntry inUseEntry = ((ProxyConnection) inUse).getPoolEntry();
+            while (!inUseEntry.isMarkedEvicted() && System.nanoTime() < deadline) {
+               sleep(10);
+            }
+            assertTrue("Connection in use should be evicted on return", inUseEntry.isMarkedEvicted());
+         }
+
+         // every original connection is gone, the pool refills with new ones
+         awaitFilled(pool);
+         assertEquals(5, pool.getIdleConnections());
+      }
+   }
+
+   @Test
+   public void testLiveIdleConnectionsKept() throws Exception {
+      HikariConfig config = config();
+      config.setFatalSqlStates("57P01");
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = getPool(ds);
+         awaitFilled(pool);
+
+         FaultInjector injector = new FaultInjector(1L);
+         injector.setFailure(EXECUTE, 1.0, "57P01");
+         FaultInjector.install(injector);
+
+         failExecute(ds);
+
+         long deadline = System.nanoTime() + SECONDS.toNanos(5);
+         while (injector.getCalls(VALIDATE) < 4 && System.nanoTime() < deadline) {
+            sleep(10);
+         }
+         // the replacement of the failed connection may be validated too, if it is added while propagating
+         assertTrue(injector.getCalls(VALIDATE) >= 4);
+
+         // validated connections are handed back to the pool
+         deadline = System.nanoTime() + SECONDS.toNanos(5);
+         while (pool.getIdleConnections() < 5 && System.nanoTime() < deadline) {
+            sleep(10);
+         }
+         assertEquals(5, pool.getIdleConnections());
+      }
+   }
+
+   @Test
+   public void testValidatedInParallel() throws Exception {
+      HikariConfig config = config();
+      config.setFatalSqlStates("57P01");
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = getPool(ds);
+         awaitFilled(pool);
+
+         FaultInjector injector = new FaultInjector(1L);
+         injector.setFailure(EXECUTE, 1.0, "57P01");
+         injector.setLatency(VALIDATE, LatencyDistribution.fixed(500));
+         FaultInjector.install(injector);
+
+         long start = System.nanoTime();
+         failExecute(ds);
+         assertTrue("The failing thread should not validate", NANOSECONDS.toMillis(System.nanoTime() - start) < 400);
+
+         // four validations of 500ms each, serially they would take two seconds
+         long deadline = System.nanoTime() + SECONDS.toNanos(5);
+         while (pool.getIdleConnections() < 5 && System.nanoTime() < deadline) {
+            sleep(10);
+         }
+         assertTrue("Idle connections should be validated in parallel", NANOSECONDS.toMillis(System.nanoTime() - start) < 1500);
+         assertEquals(5, pool.getIdleConnections());
+      }
+   }
+
+   @Test
+   public void testPropagatedOffTheFailingThread() throws Exception {
+      ScheduledThreadPoolExecutor houseKeeper = new ScheduledThreadPoolExecutor(1);
+      HikariConfig config = config();
+      config.setFatalSqlStates("57P01");
+      config.setScheduledExecutor(houseKeeper);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         awaitFilled(getPool(ds));
+
+         try (Connection inUse = ds.getConnection()) {
+            // keep the house keeper busy, propagation must wait for it rather than run on the failing thread
+            CountDownLatch release = new CountDownLatch(1);
+            houseKeeper.execute(() -> {
+               try {
+                  release.await();
+               } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+               }
+            });
+
+            FaultInjector injector = new FaultInjector(1L);
+            injector.setFailure(EXECUTE, 1.0, "57P01");
+            FaultInjector.install(injector);
+
+            failExecute(ds);
+            PoolEntry inUseEntry = ((ProxyConnection) inUse).getPoolEntry();
+            assertFalse("The failing thread should not propagate the state", inUseEntry.isMarkedEvicted());
+            assertEquals(0, injector.getCalls(VALIDATE));
+
+            release.countDown();
+            long deadline = System.nanoTime() + SECONDS.toNanos(5);
+            while (!inUseEntry.isMarkedEvicted() && System.nanoTime() < deadline) {
+               sleep(10);
+            }
+            assertTrue("Connection in use should be evicted by the house keeper", inUseEntry.isMarkedEvicted());
+         }
+      } finally {
+         houseKeeper.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testDisabledByDefault() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config())) {
+         awaitFilled(getPool(ds));
+
+         try (Connection inUse = ds.getConnection()) {
+            FaultInjector injector = new FaultInjector(1L);
+            injector.setFailure(EXECUTE, 1.0, "57P01");
+            FaultInjector.install(injector);
+
+            failExecute(ds);
+            sleep(100);
+
+            // only the connection that saw the state is evicted
+            assertEquals(0, injector.getCalls(VALIDATE));
+            assertFalse(((ProxyConnection) inUse).getPoolEntry().isMarkedEvicted());
+         }
+      }
+   }
+
+   private static void awaitFilled(final HikariPool pool) throws InterruptedException {
+      long deadline = System.nanoTime() + SECONDS.toNanos(5);
+      while (pool.getIdleConnections() < 5 && System.nanoTime() < deadline) {
+         sleep(10);
+      }
+      assertEquals(5, pool.getIdleConnections());
+   }
+
+   private static void failExecute(final HikariDataSource ds) {
+      try (Connection connection = ds.getConnection();
+           Statement statement = connection.createStatement()) {
+         statement.execute("SELECT 1");
+         fail("Expected exception");
+      } catch (SQLException e) {
+         assertEquals("57P01", e.getSQLState());
+      }
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(5);
+      config.setMaximumPoolSize(5);
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
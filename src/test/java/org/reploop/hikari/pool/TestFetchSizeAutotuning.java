@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.StubResultSet;
+import org.reploop.hikari.mocks.StubStatement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestFetchSizeAutotuning {
+   @Before
+   public void setup() {
+      // the stubs are shared by every test in the JVM, the tuner state belongs to the pool each test creates
+      StubResultSet.rows = 0;
+      StubStatement.defaultFetchSize = 0;
+   }
+
+   @After
+   public void teardown() {
+      StubResultSet.rows = 0;
+      StubStatement.defaultFetchSize = 0;
+   }
+
+   @Test
+   public void testFetchSizeLearned() throws Exception {
+      HikariConfig config = config();
+      config.setFetchMemoryLimit(1024 * 1024);
+      StubResultSet.rows = 40;
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT * FROM t WHERE id = ?")) {
+         drain(statement.executeQuery());
+         assertEquals("Driver default until the first ResultSet is consumed", 0, statement.getFetchSize());
+
+         drain(statement.executeQuery());
+         assertEquals(41, statement.getFetchSize());
+
+         // another statement of the same fingerprint starts tuned
+         try (Statement plain = connection.createStatement()) {
+            drain(plain.executeQuery("SELECT * FROM t WHERE id = 7"));
+            assertEquals(41, plain.getFetchSize());
+         }
+      }
+   }
+
+   @Test
+   public void testRowsCountedAtClose() throws Exception {
+      HikariConfig config = config();
+      config.setFetchMemoryLimit(1024 * 1024);
+      StubResultSet.rows = 40;
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT * FROM t")) {
+         try (ResultSet resultSet = statement.executeQuery()) {
+            for (int i = 0; i < 5; i++) {
+               resultSet.next();
+            }
+         }
+
+         statement.executeQuery().close();
+         assertEquals("Only the rows consumed should be fetched", 6, statement.getFetchSize());
+      }
+   }
+
+   @Test
+   public void testRowsCountedWithoutClose() throws Exception {
+      HikariConfig config = config();
+      config.setFetchMemoryLimit(1024 * 1024);
+      StubResultSet.rows = 40;
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT * FROM t")) {
+         // left open, the driver closes it when the statement is executed again
+         ResultSet resultSet = statement.executeQuery();
+         for (int i = 0; i < 7; i++) {
+            resultSet.next();
+         }
+
+         statement.executeQuery().close();
+         assertEquals(8, statement.getFetchSize());
+      }
+   }
+
+   @Test
+   public void testMemoryLimit() throws Exception {
+      HikariConfig config = config();
+      config.setFetchMemoryLimit(FetchSizeTuner.DEFAULT_ROW_BYTES * 100);
+      StubResultSet.rows = 500;
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT * FROM big")) {
+         drain(statement.executeQuery());
+         drain(statement.executeQuery());
+         assertEquals(100, statement.getFetchSize());
+      }
+   }
+
+   @Test
+   public void testSmallResultsDoNotShrink() throws Exception {
+      HikariConfig config = config();
+      config.setFetchMemoryLimit(1024 * 1024);
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT * FROM t WHERE a > ?")) {
+         StubResultSet.rows = 500;
+         drain(statement.executeQuery());
+
+         // probes for existence and selective parameters
+         StubResultSet.rows = 3;
+         for (int i = 0; i < 10; i++) {
+            try (ResultSet resultSet = statement.executeQuery()) {
+               resultSet.next();
+            }
+            drain(statement.executeQuery());
+         }
+
+         statement.executeQuery().close();
+         assertEquals(501, statement.getFetchSize());
+      }
+   }
+
+   @Test
+   public void testDriverFetchSizeIsFloor() throws Exception {
+      HikariConfig config = config();
+      config.setFetchMemoryLimit(1024 * 1024);
+      StubStatement.defaultFetchSize = 50;
+      StubResultSet.rows = 3;
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT * FROM t")) {
+         drain(statement.executeQuery());
+         drain(statement.executeQuery());
+         assertEquals("The driver's fetch size should be kept", 50, statement.getFetchSize());
+
+         StubResultSet.rows = 80;
+         drain(statement.executeQuery());
+         drain(statement.executeQuery());
+         assertEquals(81, statement.getFetchSize());
+      }
+   }
+
+   @Test
+   public void testApplicationFetchSizeRespected() throws Exception {
+      HikariConfig config = config();
+      config.setFetchMemoryLimit(1024 * 1024);
+      StubResultSet.rows = 40;
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT * FROM t")) {
+         statement.setFetchSize(7);
+         drain(statement.executeQuery());
+         drain(statement.executeQuery());
+         assertEquals(7, statement.getFetchSize());
+      }
+   }
+
+   @Test
+   public void testDisabledByDefault() throws Exception {
+      StubResultSet.rows = 40;
+
+      try (HikariDataSource ds = new HikariDataSource(config());
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT * FROM t")) {
+         drain(statement.executeQuery());
+         drain(statement.executeQuery());
+         assertEquals(0, statement.getFetchSize());
+         assertNull(getPool(ds).fetchSizeTuner);
+      }
+   }
+
+   private static void drain(final ResultSet resultSet) throws Exception {
+      try (ResultSet rs = resultSet) {
+         while (rs.next()) {
+            // drain
+         }
+      }
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
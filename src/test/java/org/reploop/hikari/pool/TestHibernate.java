@@ -17,7 +17,10 @@
 package org.reploop.hikari.pool;
 
 import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.cfg.AvailableSettings;
 import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.hibernate.HikariConfigurationUtil;
 import org.reploop.hikari.hibernate.HikariConnectionProvider;
 
 import java.sql.Connection;
@@ -48,4 +51,52 @@ public class TestHibernate {
 
       provider.stop();
    }
+
+   @Test
+   public void testConfigurationMapping() throws Exception {
+      Properties props = new Properties();
+      props.load(getClass().getResourceAsStream("/hibernate.properties"));
+      props.put("hibernate.hikari.batchCoalescingSize", 20);
+      props.put("hibernate.hikari.sessionStateAffinity", Boolean.TRUE);
+      props.put(HikariConfigurationUtil.CONFIG_AGGRESSIVE_RELEASE, "true");
+
+      HikariConfig config = HikariConfigurationUtil.loadConfiguration(props);
+      assertEquals(20, config.getBatchCoalescingSize());
+      assertTrue(config.isSessionStateAffinity());
+      assertFalse(config.isAutoCommit());
+
+      assertTrue(HikariConfigurationUtil.isAggressiveRelease(props));
+      props.remove(HikariConfigurationUtil.CONFIG_AGGRESSIVE_RELEASE);
+      assertFalse(HikariConfigurationUtil.isAggressiveRelease(props));
+      props.put(AvailableSettings.RELEASE_CONNECTIONS, "after_statement");
+      assertTrue(HikariConfigurationUtil.isAggressiveRelease(props));
+   }
+
+   @Test
+   public void testAggressiveReleaseAndReadOnlyHint() throws Exception {
+      HikariConnectionProvider provider = new HikariConnectionProvider();
+
+      Properties props = new Properties();
+      props.load(getClass().getResourceAsStream("/hibernate.properties"));
+      props.setProperty("hibernate.hikari.sessionStateAffinity", "true");
+      props.setProperty(HikariConfigurationUtil.CONFIG_AGGRESSIVE_RELEASE, "true");
+
+      provider.configure(props);
+      try {
+         assertTrue(provider.supportsAggressiveRelease());
+
+         HikariConnectionProvider.setReadOnlyHint(true);
+         Connection connection = provider.getConnection();
+         assertTrue(((ProxyConnection) connection).getReadOnlyState());
+         provider.closeConnection(connection);
+
+         HikariConnectionProvider.setReadOnlyHint(false);
+         connection = provider.getConnection();
+         assertFalse(((ProxyConnection) connection).getReadOnlyState());
+         provider.closeConnection(connection);
+      } finally {
+         HikariConnectionProvider.setReadOnlyHint(null);
+         provider.stop();
+      }
+   }
 }
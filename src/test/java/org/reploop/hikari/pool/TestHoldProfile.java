@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.FaultInjector;
+import org.reploop.hikari.mocks.LatencyDistribution;
+import org.reploop.hikari.util.ClockSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import static java.lang.Thread.sleep;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.EXECUTE;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestHoldProfile {
+   @After
+   public void teardown() {
+      FaultInjector.uninstall();
+   }
+
+   @Test
+   public void testReportAfterThreshold() throws Exception {
+      HoldProfile profile = new HoldProfile(50, ClockSource.currentTime());
+      for (int i = 0; i < 25; i++) {
+         profile.recordStatement("SELECT " + i, MILLISECONDS.toNanos(i));
+      }
+
+      assertEquals(25, profile.getExecutions());
+      assertFalse("A short hold should not be reported", profile.report("testReportAfterThreshold", "conn"));
+
+      sleep(60);
+      assertTrue("A long hold should be reported", profile.report("testReportAfterThreshold", "conn"));
+   }
+
+   @Test
+   public void testStatementsProfiled() throws Exception {
+      HikariConfig config = config();
+      config.setHoldProfileThreshold(100);
+
+      FaultInjector injector = new FaultInjector(1L);
+      injector.setLatency(EXECUTE, LatencyDistribution.fixed(20));
+      FaultInjector.install(injector);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         try (Connection connection = ds.getConnection()) {
+            HoldProfile profile = ((ProxyConnection) connection).holdProfile;
+            assertNotNull(profile);
+
+            try (Statement statement = connection.createStatement()) {
+               statement.execute("UPDATE t SET a = 1");
+               statement.executeQuery("SELECT * FROM t").close();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM t WHERE id = ?")) {
+               statement.executeQuery().close();
+               statement.executeUpdate();
+            }
+
+            assertEquals(4, profile.getExecutions());
+         }
+
+         // the threshold can be changed at runtime, disabling the profiler for later borrows
+         ds.getHikariConfigMXBean().setHoldProfileThreshold(0);
+         try (Connection connection = ds.getConnection()) {
+            assertNull(((ProxyConnection) connection).holdProfile);
+         }
+      }
+   }
+
+   @Test
+   public void testDisabledByDefault() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config());
+           Connection connection = ds.getConnection()) {
+         assertNull(((ProxyConnection) connection).holdProfile);
+      }
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(2);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
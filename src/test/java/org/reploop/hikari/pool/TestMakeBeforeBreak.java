@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.FaultInjector;
+import org.reploop.hikari.mocks.LatencyDistribution;
+
+import java.sql.Connection;
+
+import static java.lang.Thread.sleep;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.CLOSE;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.CONNECT;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestMakeBeforeBreak {
+   @After
+   public void teardown() {
+      FaultInjector.uninstall();
+   }
+
+   @Test
+   public void testCapacityKeptDuringEviction() throws Exception {
+      HikariConfig config = config();
+      config.setMakeBeforeBreak(true);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = getPool(ds);
+         awaitTotal(pool, 3);
+
+         FaultInjector injector = new FaultInjector(1L);
+         injector.setLatency(CONNECT, LatencyDistribution.fixed(300));
+         FaultInjector.install(injector);
+
+         pool.softEvictConnections();
+         assertEquals("Evicted connections should stay usable until replaced", 3, pool.getIdleConnections());
+
+         long start = System.nanoTime();
+         try (Connection connection = ds.getConnection()) {
+            assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) < 200);
+         }
+
+         long deadline = System.nanoTime() + SECONDS.toNanos(5);
+         while (injector.getCalls(CLOSE) < 3 && System.nanoTime() < deadline) {
+            assertTrue(pool.getTotalConnections() >= 3);
+            sleep(5);
+         }
+
+         assertEquals(3, injector.getCalls(CONNECT));
+         assertEquals(3, injector.getCalls(CLOSE));
+         assertEquals(3, pool.getTotalConnections());
+      }
+   }
+
+   @Test
+   public void testMaximumPoolSizeNotExceeded() throws Exception {
+      HikariConfig config = config();
+      config.setMinimumIdle(1);
+      config.setMakeBeforeBreak(true);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = getPool(ds);
+         try (Connection c1 = ds.getConnection(); Connection c2 = ds.getConnection(); Connection c3 = ds.getConnection()) {
+            assertEquals(3, pool.getTotalConnections());
+         }
+
+         FaultInjector injector = new FaultInjector(3L);
+         injector.setLatency(CONNECT, LatencyDistribution.fixed(100));
+         FaultInjector.install(injector);
+
+         // the pool is full with more than minimumIdle idle, so the evicted connections need no successors
+         pool.softEvictConnections();
+
+         long deadline = System.nanoTime() + SECONDS.toNanos(5);
+         while (injector.getCalls(CLOSE) < 3 && System.nanoTime() < deadline) {
+            assertTrue("Replacement should not exceed maximumPoolSize", pool.getTotalConnections() <= 3);
+            sleep(5);
+         }
+         assertEquals(3, injector.getCalls(CLOSE));
+         assertTrue("Only the capacity needed should be replaced", injector.getCalls(CONNECT) < 3);
+      }
+   }
+
+   @Test
+   public void testEvictionWithoutReplacement() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config())) {
+         HikariPool pool = getPool(ds);
+         awaitTotal(pool, 3);
+
+         FaultInjector injector = new FaultInjector(2L);
+         injector.setLatency(CONNECT, LatencyDistribution.fixed(300));
+         FaultInjector.install(injector);
+
+         pool.softEvictConnections();
+         assertEquals("Evicted idle connections are closed before they are replaced", 0, pool.getIdleConnections());
+
+         awaitTotal(pool, 3);
+      }
+   }
+
+   private static void awaitTotal(final HikariPool pool, final int total) throws InterruptedException {
+      long deadline = System.nanoTime() + SECONDS.toNanos(5);
+      while (pool.getTotalConnections() < total && System.nanoTime() < deadline) {
+         sleep(10);
+      }
+      assertEquals(total, pool.getTotalConnections());
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(3);
+      config.setMaximumPoolSize(3);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
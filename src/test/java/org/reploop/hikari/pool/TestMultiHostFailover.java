@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.FaultInjector;
+import org.reploop.hikari.mocks.StubDriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.stream.Collectors;
+
+import static java.lang.Thread.sleep;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.EXECUTE;
+import static org.reploop.hikari.pool.TestElf.getConcurrentBag;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestMultiHostFailover {
+   private static final String PRIMARY = "jdbc:stub:primary";
+   private static final String STANDBY = "jdbc:stub:standby";
+
+   @Before
+   public void setup() {
+      System.setProperty("org.reploop.hikari.endpointProbe.periodMs", "50");
+   }
+
+   @After
+   public void teardown() {
+      System.clearProperty("org.reploop.hikari.endpointProbe.periodMs");
+      StubDriver.setDown(PRIMARY, false);
+      FaultInjector.uninstall();
+   }
+
+   @Test
+   public void testFailoverOnBrokenConnection() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config())) {
+         HikariPool pool = getPool(ds);
+         Endpoints.Endpoint[] endpoints = pool.endpoints.getEndpoints();
+         awaitEndpoint(ds, endpoints[0], 3);
+
+         StubDriver.setDown(PRIMARY, true);
+         FaultInjector injector = new FaultInjector(1L);
+         injector.setFailure(EXECUTE, 1.0, "08S01");
+         FaultInjector.install(injector);
+
+         try (Connection connection = ds.getConnection();
+              Statement statement = connection.createStatement()) {
+            statement.execute("SELECT 1");
+            fail("Expected exception");
+         } catch (SQLException e) {
+            assertEquals("08S01", e.getSQLState());
+         } finally {
+            FaultInjector.uninstall();
+         }
+
+         assertTrue(endpoints[0].isDown());
+         awaitEndpoint(ds, endpoints[1], 3);
+
+         StubDriver.setDown(PRIMARY, false);
+         long deadline = System.nanoTime() + SECONDS.toNanos(5);
+         while (endpoints[0].isDown() && System.nanoTime() < deadline) {
+            sleep(10);
+         }
+         assertFalse("Probe should have restored the primary", endpoints[0].isDown());
+         assertSame(endpoints[0], pool.endpoints.select());
+      }
+   }
+
+   @Test
+   public void testEndpointEvictionOffTheFailingThread() throws Exception {
+      ScheduledThreadPoolExecutor houseKeeper = new ScheduledThreadPoolExecutor(1);
+      HikariConfig config = config();
+      config.setScheduledExecutor(houseKeeper);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         Endpoints.Endpoint[] endpoints = getPool(ds).endpoints.getEndpoints();
+         awaitEndpoint(ds, endpoints[0], 3);
+
+         try (Connection inUse = ds.getConnection()) {
+            // keep the house keeper busy, the eviction must wait for it rather than run on the failing thread
+            CountDownLatch release = new CountDownLatch(1);
+            houseKeeper.execute(() -> {
+               try {
+                  release.await();
+               } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+               }
+            });
+
+            StubDriver.setDown(PRIMARY, true);
+            FaultInjector injector = new FaultInjector(1L);
+            injector.setFailure(EXECUTE, 1.0, "08S01");
+            FaultInjector.install(injector);
+            try (Connection connection = ds.getConnection();
+                 Statement statement = connection.createStatement()) {
+               statement.execute("SELECT 1");
+               fail("Expected exception");
+            } catch (SQLException e) {
+               assertEquals("08S01", e.getSQLState());
+            } finally {
+               FaultInjector.uninstall();
+            }
+
+            PoolEntry inUseEntry = ((ProxyConnection) inUse).getPoolEntry();
+            assertTrue(endpoints[0].isDown());
+            assertFalse("The failing thread should not evict connections", inUseEntry.isMarkedEvicted());
+
+            release.countDown();
+            long deadline = System.nanoTime() + SECONDS.toNanos(5);
+            while (!inUseEntry.isMarkedEvicted() && System.nanoTime() < deadline) {
+               sleep(10);
+            }
+            assertTrue("Connection in use should be evicted by the house keeper", inUseEntry.isMarkedEvicted());
+         }
+      } finally {
+         houseKeeper.shutdownNow();
+      }
+   }
+
+   @Test
+   public void testFailoverOnConnectFailure() throws Exception {
+      StubDriver.setDown(PRIMARY, true);
+      try (HikariDataSource ds = new HikariDataSource(config())) {
+         HikariPool pool = getPool(ds);
+         Endpoints.Endpoint[] endpoints = pool.endpoints.getEndpoints();
+         assertTrue(endpoints[0].isDown());
+         awaitEndpoint(ds, endpoints[1], 3);
+
+         try (Connection connection = ds.getConnection()) {
+            assertSame(endpoints[1], ((ProxyConnection) connection).getPoolEntry().endpoint);
+         }
+      }
+   }
+
+   /**
+    * Wait until the pool has at least the specified number of connections, all of them to the endpoint.
+    */
+   private static void awaitEndpoint(final HikariDataSource ds, final Endpoints.Endpoint endpoint, final int connections) throws InterruptedException {
+      long deadline = System.nanoTime() + SECONDS.toNanos(5);
+      while (System.nanoTime() < deadline) {
+         List<PoolEntry> entries = getConcurrentBag(ds).values().stream().map(PoolEntry.class::cast)
+            .filter(e -> !e.isMarkedEvicted()).collect(Collectors.toList());
+         long onEndpoint = entries.stream().filter(e -> e.endpoint == endpoint).count();
+         long total = entries.size();
+         if (total >= connections && onEndpoint == total) {
+            return;
+         }
+         sleep(10);
+      }
+      fail("Pool did not move to endpoint " + endpoint);
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(3);
+      config.setMaximumPoolSize(5);
+      config.setDriverClassName("org.reploop.hikari.mocks.StubDriver");
+      config.setJdbcUrls(PRIMARY + " " + STANDBY);
+      return config;
+   }
+}
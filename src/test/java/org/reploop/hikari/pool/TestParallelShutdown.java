@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.FaultInjector;
+import org.reploop.hikari.mocks.LatencyDistribution;
+
+import static java.lang.Thread.sleep;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.CLOSE;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestParallelShutdown {
+   @After
+   public void teardown() {
+      FaultInjector.uninstall();
+   }
+
+   @Test
+   public void testIdleConnectionsClosedConcurrently() throws Exception {
+      HikariConfig config = config();
+      config.setShutdownTimeout(5000);
+
+      HikariDataSource ds = new HikariDataSource(config);
+      HikariPool pool = getPool(ds);
+      awaitFill(pool);
+
+      FaultInjector injector = new FaultInjector(1L);
+      injector.setLatency(CLOSE, LatencyDistribution.fixed(200));
+      FaultInjector.install(injector);
+
+      ds.getConnection();
+      long start = System.nanoTime();
+      ds.close();
+      long elapsedMs = NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      // closed one after another the 20 connections would take at least 4 seconds
+      assertTrue("Shutdown took " + elapsedMs + "ms", elapsedMs < 2000);
+      // 19 idle connections closed plus the in-use one, whose stub abort fails and falls back to close
+      assertEquals(20, injector.getCalls(CLOSE));
+      assertEquals(0, pool.getTotalConnections());
+   }
+
+   @Test
+   public void testDeadlineBoundsShutdown() throws Exception {
+      HikariConfig config = config();
+      config.setShutdownTimeout(500);
+
+      HikariDataSource ds = new HikariDataSource(config);
+      HikariPool pool = getPool(ds);
+      awaitFill(pool);
+
+      FaultInjector injector = new FaultInjector(2L);
+      injector.setHang(CLOSE, 1.0);
+      injector.setHangMillis(10_000);
+      FaultInjector.install(injector);
+
+      long start = System.nanoTime();
+      ds.close();
+      long elapsedMs = NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      assertTrue("Shutdown took " + elapsedMs + "ms", elapsedMs < 2000);
+      assertEquals(0, pool.getTotalConnections());
+   }
+
+   private static void awaitFill(final HikariPool pool) throws InterruptedException {
+      long deadline = System.nanoTime() + SECONDS.toNanos(5);
+      while (pool.getTotalConnections() < 20 && System.nanoTime() < deadline) {
+         sleep(10);
+      }
+      assertEquals(20, pool.getTotalConnections());
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(20);
+      config.setMaximumPoolSize(20);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.StubDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+import static org.reploop.hikari.util.UtilityElf.quietlySleep;
+
+public class TestPoolRuntime {
+   @Test
+   public void testPoolsShareRuntime() throws Exception {
+      try (PoolRuntime runtime = new PoolRuntime(2, null)) {
+         List<HikariDataSource> dataSources = new ArrayList<>();
+         try {
+            for (int i = 0; i < 10; i++) {
+               HikariConfig config = newHikariConfig();
+               config.setMinimumIdle(2);
+               config.setMaximumPoolSize(4);
+               config.setConnectionTestQuery("VALUES 1");
+               config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+               config.setPoolRuntime(runtime);
+               dataSources.add(new HikariDataSource(config));
+            }
+
+            for (HikariDataSource ds : dataSources) {
+               HikariPool pool = getPool(ds);
+               for (int i = 0; i < 50 && pool.getIdleConnections() < 2; i++) {
+                  quietlySleep(100);
+               }
+               assertEquals(2, pool.getIdleConnections());
+
+               try (Connection connection = ds.getConnection()) {
+                  assertNotNull(connection);
+               }
+            }
+
+            // one scheduler thread, at most two workers, and no network timeout threads were needed by the stubs
+            assertTrue("Too many threads: " + runtime.getThreadCount(), runtime.getThreadCount() <= 3);
+         } finally {
+            dataSources.forEach(HikariDataSource::close);
+         }
+
+         assertFalse(runtime.getScheduler().isShutdown());
+      }
+   }
+
+   @Test
+   public void testLaneFairness() throws Exception {
+      try (PoolRuntime runtime = new PoolRuntime(1, null)) {
+         PoolRuntime.Lane busy = runtime.newLane(100, false);
+         PoolRuntime.Lane quiet = runtime.newLane(100, false);
+
+         ConcurrentLinkedQueue<String> order = new ConcurrentLinkedQueue<>();
+         CountDownLatch started = new CountDownLatch(1);
+         CountDownLatch release = new CountDownLatch(1);
+
+         busy.execute(() -> {
+            started.countDown();
+            try {
+               release.await();
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            order.add("busy");
+         });
+         assertTrue(started.await(5, SECONDS));
+
+         for (int i = 0; i < 5; i++) {
+            busy.execute(() -> order.add("busy"));
+         }
+         quiet.execute(() -> order.add("quiet"));
+         release.countDown();
+
+         busy.shutdown();
+         quiet.shutdown();
+         assertTrue(busy.awaitTermination(5, SECONDS));
+         assertTrue(quiet.awaitTermination(5, SECONDS));
+
+         List<String> ran = new ArrayList<>(order);
+         assertEquals(7, ran.size());
+         assertTrue("Quiet lane was starved: " + ran, ran.indexOf("quiet") <= 2);
+      }
+   }
+
+   @Test
+   public void testDownDatabaseDoesNotHoldWorker() throws Exception {
+      try (PoolRuntime runtime = new PoolRuntime(1, null)) {
+         List<HikariDataSource> dataSources = new ArrayList<>();
+         try {
+            for (int i = 0; i < 2; i++) {
+               StubDataSource down = new StubDataSource();
+               down.setThrowException(new SQLException("Connection refused", "08001"));
+
+               HikariConfig config = newHikariConfig();
+               config.setMinimumIdle(2);
+               config.setMaximumPoolSize(4);
+               config.setInitializationFailTimeout(-1);
+               config.setConnectionTestQuery("VALUES 1");
+               config.setDataSource(down);
+               config.setPoolRuntime(runtime);
+               dataSources.add(new HikariDataSource(config));
+            }
+
+            HikariConfig config = newHikariConfig();
+            config.setMinimumIdle(2);
+            config.setMaximumPoolSize(4);
+            config.setConnectionTestQuery("VALUES 1");
+            config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+            config.setPoolRuntime(runtime);
+            HikariDataSource ds = new HikariDataSource(config);
+            dataSources.add(ds);
+
+            // the down pools back off on the scheduler, so the single worker is free to fill the healthy pool
+            HikariPool pool = getPool(ds);
+            for (int i = 0; i < 30 && pool.getIdleConnections() < 2; i++) {
+               quietlySleep(100);
+            }
+            assertEquals(2, pool.getIdleConnections());
+         } finally {
+            dataSources.forEach(HikariDataSource::close);
+         }
+      }
+   }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+
+import java.sql.Connection;
+
+import static java.lang.Thread.sleep;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertTrue;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestPreScaling {
+   @Before
+   public void setup() {
+      System.setProperty("org.reploop.hikari.preScale.periodMs", "20");
+   }
+
+   @After
+   public void teardown() {
+      System.clearProperty("org.reploop.hikari.preScale.periodMs");
+   }
+
+   @Test
+   public void testPreScaleWithoutWaiters() throws Exception {
+      HikariConfig config = config();
+      config.setPreScaleAggressiveness(300);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = getPool(ds);
+
+         // a single borrower never waits, so the pool only grows if it scales ahead of demand
+         long deadline = System.nanoTime() + SECONDS.toNanos(5);
+         while (pool.getTotalConnections() < 3 && System.nanoTime() < deadline) {
+            try (Connection connection = ds.getConnection()) {
+               sleep(5);
+            }
+         }
+
+         assertTrue("Pool should have pre-scaled, total " + pool.getTotalConnections(), pool.getTotalConnections() >= 3);
+      }
+   }
+
+   @Test
+   public void testDisabledByDefault() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config())) {
+         HikariPool pool = getPool(ds);
+
+         for (int i = 0; i < 100; i++) {
+            try (Connection connection = ds.getConnection()) {
+               sleep(5);
+            }
+         }
+
+         // at most one connection in use plus the minimum idle one the house keeper maintains
+         assertTrue(pool.getTotalConnections() <= 2);
+      }
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(10);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
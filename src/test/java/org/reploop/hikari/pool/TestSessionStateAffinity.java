@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.StubConnection;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+import static org.reploop.hikari.util.UtilityElf.quietlySleep;
+
+public class TestSessionStateAffinity {
+   private static final SessionState SERIALIZABLE = new SessionState(false, true, Connection.TRANSACTION_SERIALIZABLE, null, null);
+
+   private static HikariConfig newConfig(int poolSize) {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(poolSize);
+      config.setMaximumPoolSize(poolSize);
+      config.setSessionStateAffinity(true);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+
+   @Test
+   public void testResetIsDeferred() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(newConfig(1))) {
+         StubConnection physical;
+         int defaultIsolation;
+         try (Connection connection = ds.getConnection()) {
+            defaultIsolation = connection.getTransactionIsolation();
+            physical = connection.unwrap(StubConnection.class);
+         }
+         assertNotEquals(Connection.TRANSACTION_SERIALIZABLE, defaultIsolation);
+
+         try (Connection connection = ds.getConnection(SERIALIZABLE)) {
+            assertSame(physical, connection.unwrap(StubConnection.class));
+            assertEquals(Connection.TRANSACTION_SERIALIZABLE, connection.getTransactionIsolation());
+         }
+         assertEquals("Reset should have been deferred", Connection.TRANSACTION_SERIALIZABLE, physical.getTransactionIsolation());
+
+         try (Connection connection = ds.getConnection()) {
+            assertEquals("State should have been applied lazily", defaultIsolation, connection.getTransactionIsolation());
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+         }
+         assertEquals(Connection.TRANSACTION_SERIALIZABLE, physical.getTransactionIsolation());
+
+         try (Connection connection = ds.getConnection(SERIALIZABLE)) {
+            assertEquals(Connection.TRANSACTION_SERIALIZABLE, connection.getTransactionIsolation());
+         }
+
+         try (Connection connection = ds.getConnection()) {
+            assertEquals(defaultIsolation, connection.getTransactionIsolation());
+         }
+      }
+   }
+
+   @Test
+   public void testMatchingConnectionPreferred() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(newConfig(2))) {
+         HikariPool pool = getPool(ds);
+         while (pool.getIdleConnections() < 2) {
+            quietlySleep(50);
+         }
+
+         StubConnection serializable;
+         try (Connection connection = ds.getConnection(SERIALIZABLE)) {
+            serializable = connection.unwrap(StubConnection.class);
+         }
+
+         for (int i = 0; i < 5; i++) {
+            try (Connection connection = ds.getConnection()) {
+               assertNotSame(serializable, connection.unwrap(StubConnection.class));
+            }
+            try (Connection connection = ds.getConnection(SERIALIZABLE)) {
+               assertSame(serializable, connection.unwrap(StubConnection.class));
+            }
+         }
+      }
+   }
+
+   @Test
+   public void testMatchingConnectionPreferredAfterQuotaWait() throws Exception {
+      HikariConfig config = newConfig(2);
+      config.setTenantQuotas("*=2");
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = getPool(ds);
+         while (pool.getIdleConnections() < 2) {
+            quietlySleep(50);
+         }
+
+         StubConnection serializable;
+         try (Connection connection = ds.getConnection(SERIALIZABLE)) {
+            serializable = connection.unwrap(StubConnection.class);
+         }
+         try (Connection connection = ds.getConnection()) {
+            assertNotSame(serializable, connection.unwrap(StubConnection.class));
+         }
+
+         // hold the tenant quota lock, so that the borrow spends part of its timeout acquiring a permit
+         Field field = TenantQuotas.class.getDeclaredField("lock");
+         field.setAccessible(true);
+         ReentrantLock lock = (ReentrantLock) field.get(pool.tenantQuotas);
+         CountDownLatch locked = new CountDownLatch(1);
+         Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+               locked.countDown();
+               quietlySleep(100);
+            } finally {
+               lock.unlock();
+            }
+         });
+         holder.start();
+         assertTrue(locked.await(5, SECONDS));
+
+         try (Connection connection = ds.getConnection(SERIALIZABLE)) {
+            assertSame(serializable, connection.unwrap(StubConnection.class));
+         }
+         holder.join();
+      }
+   }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.Test;
+import org.reploop.hikari.ConsistentHashShardRouter;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariPoolMXBean;
+import org.reploop.hikari.ShardedDataSource;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestShardedDataSource {
+   @Test
+   public void testRouting() throws Exception {
+      ConsistentHashShardRouter router = new ConsistentHashShardRouter();
+      assertNull(router.route("key"));
+      for (int i = 0; i < 4; i++) {
+         router.addShard("shard" + i);
+      }
+
+      Map<String, Integer> counts = new HashMap<>();
+      for (int i = 0; i < 10_000; i++) {
+         String shardId = router.route("customer-" + i);
+         assertEquals(shardId, router.route("customer-" + i));
+         counts.merge(shardId, 1, Integer::sum);
+      }
+
+      assertEquals(4, counts.size());
+      for (int count : counts.values()) {
+         assertTrue("Uneven distribution " + counts, count > 1_500 && count < 3_500);
+      }
+   }
+
+   @Test
+   public void testAddingShardMovesKeysToIt() {
+      ConsistentHashShardRouter router = new ConsistentHashShardRouter();
+      for (int i = 0; i < 4; i++) {
+         router.addShard("shard" + i);
+      }
+
+      String[] before = new String[10_000];
+      for (int i = 0; i < before.length; i++) {
+         before[i] = router.route(i);
+      }
+
+      router.addShard("shard4");
+      int moved = 0;
+      for (int i = 0; i < before.length; i++) {
+         String after = router.route(i);
+         if (!after.equals(before[i])) {
+            assertEquals("Keys should only move to the new shard", "shard4", after);
+            moved++;
+         }
+      }
+
+      assertTrue("About a fifth of the keys should move, moved " + moved, moved > 1_000 && moved < 3_000);
+   }
+
+   @Test
+   public void testShardedDataSource() throws Exception {
+      HikariConfig template = newHikariConfig();
+      template.setMinimumIdle(1);
+      template.setMaximumPoolSize(4);
+      template.setConnectionTestQuery("VALUES 1");
+      template.setDriverClassName("org.reploop.hikari.mocks.StubDriver");
+      template.setRegisterMbeans(true);
+
+      try (ShardedDataSource ds = new ShardedDataSource(template)) {
+         try {
+            ds.getConnection("key");
+            fail("Expected exception, no shards");
+         } catch (SQLException e) {
+            assertTrue(e.getMessage().contains("no shard"));
+         }
+
+         for (int i = 0; i < 4; i++) {
+            ds.addShard("shard" + i, "jdbc:stub:shard" + i);
+         }
+         assertEquals(4, ds.getShardIds().size());
+
+         PoolRuntime runtime = ds.getShard("shard0").getPoolRuntime();
+         assertNotNull(runtime);
+         for (String shardId : ds.getShardIds()) {
+            assertSame("Shards should share one runtime", runtime, ds.getShard(shardId).getPoolRuntime());
+            assertEquals("testShardedDataSource-" + shardId, ds.getShard(shardId).getPoolName());
+         }
+
+         try (Connection c1 = ds.getConnection("customer-1");
+              Connection c2 = ds.getConnection("customer-2");
+              Connection c3 = ds.getConnection("customer-3")) {
+            assertEquals(3, ds.getHikariPoolMXBean().getActiveConnections());
+
+            int active = 0;
+            for (String shardId : ds.getShardIds()) {
+               active += ds.getHikariPoolMXBean(shardId).getActiveConnections();
+            }
+            assertEquals(3, active);
+
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName aggregate = new ObjectName("org.reploop.hikari:type=Pool (testShardedDataSource)");
+            assertEquals(3, mBeanServer.getAttribute(aggregate, "ActiveConnections"));
+            ObjectName shard = new ObjectName("org.reploop.hikari:type=Pool (testShardedDataSource-shard0)");
+            assertTrue(mBeanServer.isRegistered(shard));
+         }
+
+         // resharding while in use
+         ds.addShard("shard4", "jdbc:stub:shard4");
+         int onNewShard = 0;
+         for (int i = 0; i < 100; i++) {
+            try (Connection connection = ds.getConnection("customer-" + i)) {
+               if (ds.getShardFor("customer-" + i) == ds.getShard("shard4")) {
+                  onNewShard++;
+               }
+            }
+         }
+         assertTrue(onNewShard > 0);
+         assertEquals(0, ds.getHikariPoolMXBean().getActiveConnections());
+      }
+   }
+
+   @Test
+   public void testAggregateOperations() throws Exception {
+      HikariConfig template = newHikariConfig();
+      template.setMinimumIdle(2);
+      template.setMaximumPoolSize(2);
+      template.setConnectionTestQuery("VALUES 1");
+      template.setDriverClassName("org.reploop.hikari.mocks.StubDriver");
+
+      try (PoolRuntime runtime = new PoolRuntime(2, null)) {
+         template.setPoolRuntime(runtime);
+         try (ShardedDataSource ds = new ShardedDataSource(template)) {
+            ds.addShard("a", "jdbc:stub:a");
+            ds.addShard("b", "jdbc:stub:b");
+            assertSame(runtime, ds.getShard("a").getPoolRuntime());
+
+            HikariPoolMXBean mxBean = ds.getHikariPoolMXBean();
+            for (int i = 0; i < 50 && mxBean.getIdleConnections() < 4; i++) {
+               Thread.sleep(100);
+            }
+            assertEquals(4, mxBean.getTotalConnections());
+            assertEquals(4, mxBean.getIdleConnections());
+            assertEquals(0, mxBean.getThreadsAwaitingConnection());
+         }
+
+         // a runtime supplied by the template is not closed with the ShardedDataSource
+         assertFalse(runtime.getScheduler().isShutdown());
+      }
+   }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.HikariPoolMXBean;
+import org.reploop.hikari.metrics.SqlStats;
+import org.reploop.hikari.mocks.FaultInjector;
+import org.reploop.hikari.mocks.LatencyDistribution;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.EXECUTE;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestSqlMetrics {
+   @After
+   public void teardown() {
+      FaultInjector.uninstall();
+   }
+
+   @Test
+   public void testFingerprint() {
+      assertEquals("select * from t where id = ? and name = ?",
+         SqlMetrics.fingerprint("SELECT *\n  FROM t\tWHERE id = 42 AND name = 'O''Brien'"));
+      assertEquals("select a from t where id in (?+)", SqlMetrics.fingerprint("select a from t where id in (1, 2, 3)"));
+      assertEquals("select a from t where id in (?+)", SqlMetrics.fingerprint("select a from t where id in (?,?)"));
+      assertEquals("select col1, \"Mixed1\" from t2 where x > ?", SqlMetrics.fingerprint("select col1, \"Mixed1\" from t2 -- comment\n where x > 1.5e-3"));
+      assertEquals("update t set a = ? where b = ?", SqlMetrics.fingerprint("/* hint */ update t set a = 0x1F where b = ?"));
+   }
+
+   @Test
+   public void testStatementsRecorded() throws Exception {
+      HikariConfig config = config();
+      config.setSqlMetricsSize(10);
+
+      FaultInjector injector = new FaultInjector(1L);
+      injector.setLatency(EXECUTE, LatencyDistribution.fixed(5));
+      FaultInjector.install(injector);
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection()) {
+         try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM t WHERE id = ?")) {
+            for (int i = 0; i < 3; i++) {
+               try (ResultSet resultSet = statement.executeQuery()) {
+                  while (resultSet.next()) {
+                     // drain
+                  }
+               }
+            }
+         }
+
+         try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE t SET a = 1 WHERE id = 7");
+            statement.executeUpdate("UPDATE t SET a = 2 WHERE id = 8");
+         }
+
+         List<SqlStats> stats = getPool(ds).getSqlStats();
+         assertEquals(2, stats.size());
+         assertEquals("select * from t where id = ?", stats.get(0).getFingerprint());
+         assertEquals(3, stats.get(0).getExecutions());
+         assertEquals("update t set a = ? where id = ?", stats.get(1).getFingerprint());
+         assertEquals(2, stats.get(1).getExecutions());
+
+         SqlStats select = stats.get(0);
+         assertTrue(select.getTotalMillis() >= 15.0);
+         assertTrue(select.getMaxMillis() >= 5.0);
+         assertTrue(select.getP50Millis() >= 4.0 && select.getP50Millis() <= 16.4);
+      }
+   }
+
+   @Test
+   public void testFailedStatementsRecorded() throws Exception {
+      HikariConfig config = config();
+      config.setSqlMetricsSize(10);
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           PreparedStatement statement = connection.prepareStatement("SELECT * FROM missing WHERE id = ?")) {
+         FaultInjector injector = new FaultInjector(1L);
+         injector.setLatency(EXECUTE, LatencyDistribution.fixed(5));
+         injector.setFailure(EXECUTE, 1.0, "42P01");
+         FaultInjector.install(injector);
+
+         try {
+            statement.executeQuery();
+            fail("Expected exception");
+         } catch (SQLException e) {
+            assertEquals("42P01", e.getSQLState());
+         }
+
+         List<SqlStats> stats = getPool(ds).getSqlStats();
+         assertEquals(1, stats.size());
+         assertEquals(1, stats.get(0).getExecutions());
+         assertTrue(stats.get(0).getTotalMillis() >= 5.0);
+      }
+   }
+
+   @Test
+   public void testTableBounded() throws Exception {
+      HikariConfig config = config();
+      config.setSqlMetricsSize(2);
+
+      try (HikariDataSource ds = new HikariDataSource(config);
+           Connection connection = ds.getConnection();
+           Statement statement = connection.createStatement()) {
+         for (int i = 0; i < 20; i++) {
+            statement.execute("SELECT c" + i + " FROM t");
+         }
+
+         HikariPool pool = getPool(ds);
+         assertEquals(2, pool.getSqlStats().size());
+         assertTrue(pool.sqlMetrics.entry("SELECT x FROM t") != null);
+      }
+   }
+
+   @Test
+   public void testDisabledByDefault() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config());
+           Connection connection = ds.getConnection();
+           Statement statement = connection.createStatement()) {
+         statement.execute("SELECT 1");
+         assertTrue(getPool(ds).getSqlStats().isEmpty());
+      }
+   }
+
+   @Test
+   public void testJmx() throws Exception {
+      HikariConfig config = config();
+      config.setSqlMetricsSize(10);
+      config.setRegisterMbeans(true);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         try (Connection connection = ds.getConnection();
+              PreparedStatement statement = connection.prepareStatement("DELETE FROM t WHERE id = ?")) {
+            statement.executeUpdate();
+         }
+
+         ObjectName poolName = new ObjectName("org.reploop.hikari:type=Pool (" + config.getPoolName() + ")");
+         HikariPoolMXBean mxBean = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), poolName, HikariPoolMXBean.class);
+         List<SqlStats> stats = mxBean.getSqlStats();
+         assertEquals(1, stats.size());
+         assertEquals("delete from t where id = ?", stats.get(0).getFingerprint());
+         assertEquals(1, stats.get(0).getExecutions());
+      }
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.FaultInjector;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.Thread.sleep;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reploop.hikari.mocks.FaultInjector.Operation.CLOSE;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.getUnsealedConfig;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+import static org.reploop.hikari.pool.TestElf.setConfigUnitTest;
+
+public class TestStaggeredRetirement {
+   @After
+   public void teardown() {
+      FaultInjector.uninstall();
+      setConfigUnitTest(false);
+   }
+
+   @Test
+   public void testLifetimesAreSpread() {
+      LifetimeScheduler scheduler = new LifetimeScheduler(1);
+
+      List<Long> lifetimes = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+         lifetimes.add(scheduler.nextLifetime(10_000, 10));
+      }
+      Collections.sort(lifetimes);
+
+      assertTrue(lifetimes.get(0) >= 4_900);
+      assertTrue(lifetimes.get(9) <= 9_750);
+      for (int i = 1; i < lifetimes.size(); i++) {
+         assertTrue("Retirements too close " + lifetimes, lifetimes.get(i) - lifetimes.get(i - 1) >= 490);
+      }
+   }
+
+   @Test
+   public void testConcurrentRetirementsAreCapped() {
+      LifetimeScheduler scheduler = new LifetimeScheduler(2);
+      assertTrue(scheduler.tryBeginRetirement());
+      assertTrue(scheduler.tryBeginRetirement());
+      assertTrue(!scheduler.tryBeginRetirement());
+      scheduler.endRetirement();
+      assertTrue(scheduler.tryBeginRetirement());
+   }
+
+   @Test
+   public void testMakeBeforeBreak() throws Exception {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(0);
+      config.setMaximumPoolSize(5);
+      config.setMaxConcurrentRetirements(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+
+      FaultInjector injector = new FaultInjector(1L);
+      FaultInjector.install(injector);
+
+      setConfigUnitTest(true);
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         getUnsealedConfig(ds).setMaxLifetime(2000);
+         HikariPool pool = getPool(ds);
+
+         // create a cohort of five connections at the same time
+         List<Connection> connections = new ArrayList<>();
+         for (int i = 0; i < 5; i++) {
+            connections.add(ds.getConnection());
+         }
+         for (Connection connection : connections) {
+            connection.close();
+         }
+         assertEquals(5, pool.getTotalConnections());
+
+         List<Long> retirements = new ArrayList<>();
+         long start = System.nanoTime();
+         long closes = 0;
+         while (closes < 5 && System.nanoTime() - start < SECONDS.toNanos(5)) {
+            int total = pool.getTotalConnections();
+            assertTrue("Total connections " + total, total >= 5 && total <= 6);
+            if (injector.getCalls(CLOSE) > closes) {
+               closes = injector.getCalls(CLOSE);
+               retirements.add(NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            sleep(2);
+         }
+
+         assertEquals(5, closes);
+         assertEquals("Retirements should be one at a time " + retirements, 5, retirements.size());
+         for (int i = 1; i < retirements.size(); i++) {
+            assertTrue("Retirements too close " + retirements, retirements.get(i) - retirements.get(i - 1) >= 100);
+         }
+      }
+   }
+}
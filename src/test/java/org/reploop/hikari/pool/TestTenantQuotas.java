@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.metrics.IMetricsTracker;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.Thread.sleep;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestTenantQuotas {
+   @Test
+   public void testUnusedQuotaLent() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config("noisy=2,quiet=2"))) {
+         HikariPool pool = getPool(ds);
+
+         List<Connection> connections = new ArrayList<>();
+         try {
+            for (int i = 0; i < 4; i++) {
+               connections.add(ds.getConnection("noisy"));
+            }
+            assertEquals("Quiet tenant's unused quota should be lent", 4, pool.getTenantConnections("noisy"));
+
+            try {
+               ds.getConnection("noisy");
+               fail("Expected timeout, the pool is exhausted");
+            } catch (SQLTransientConnectionException e) {
+               // expected
+            }
+         } finally {
+            for (Connection connection : connections) {
+               connection.close();
+            }
+         }
+
+         assertEquals(0, pool.getTenantConnections("noisy"));
+      }
+   }
+
+   @Test
+   public void testTenantWithinQuotaServedFirst() throws Exception {
+      HikariConfig config = config("noisy=2,quiet=2");
+      config.setConnectionTimeout(5_000);
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         HikariPool pool = getPool(ds);
+
+         List<Connection> connections = new ArrayList<>();
+         for (int i = 0; i < 4; i++) {
+            connections.add(ds.getConnection("noisy"));
+         }
+
+         CompletableFuture<Connection> noisyWaiter = CompletableFuture.supplyAsync(() -> borrow(ds, "noisy"));
+         sleep(100);
+         CompletableFuture<Connection> quietWaiter = CompletableFuture.supplyAsync(() -> borrow(ds, "quiet"));
+         sleep(100);
+
+         // the noisy waiter arrived first, but the quiet tenant is within its quota
+         connections.remove(0).close();
+         Connection quiet = quietWaiter.get(2, TimeUnit.SECONDS);
+         assertEquals(1, pool.getTenantConnections("quiet"));
+         try {
+            noisyWaiter.get(200, TimeUnit.MILLISECONDS);
+            fail("Noisy tenant beyond its quota should still be waiting");
+         } catch (TimeoutException e) {
+            // expected
+         }
+
+         connections.remove(0).close();
+         Connection noisy = noisyWaiter.get(2, TimeUnit.SECONDS);
+         assertEquals(3, pool.getTenantConnections("noisy"));
+
+         quiet.close();
+         noisy.close();
+         for (Connection connection : connections) {
+            connection.close();
+         }
+      }
+   }
+
+   @Test
+   public void testTenantMetrics() throws Exception {
+      ConcurrentHashMap<String, AtomicInteger> acquired = new ConcurrentHashMap<>();
+      ConcurrentHashMap<String, AtomicInteger> usage = new ConcurrentHashMap<>();
+
+      HikariConfig config = config("a=1");
+      config.setMetricsTrackerFactory((poolName, poolStats) -> new IMetricsTracker() {
+         @Override
+         public void recordTenantAcquiredNanos(String tenant, long elapsedAcquiredNanos) {
+            acquired.computeIfAbsent(tenant, k -> new AtomicInteger()).incrementAndGet();
+         }
+
+         @Override
+         public void recordTenantUsageMillis(String tenant, long elapsedBorrowedMillis) {
+            usage.computeIfAbsent(tenant, k -> new AtomicInteger()).incrementAndGet();
+         }
+      });
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         try (Connection connection = ds.getConnection("a")) {
+            assertFalse(connection.isClosed());
+         }
+         try (Connection connection = ds.getConnection()) {
+            assertFalse(connection.isClosed());
+         }
+
+         assertEquals(1, acquired.get("a").get());
+         assertEquals(1, usage.get("a").get());
+         assertEquals(1, acquired.get("*").get());
+         assertEquals(1, usage.get("*").get());
+      }
+   }
+
+   @Test
+   public void testIdleTenantsUntracked() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config("a=2"))) {
+         HikariPool pool = getPool(ds);
+         for (int i = 0; i < 1_000; i++) {
+            try (Connection connection = ds.getConnection("customer-" + i)) {
+               assertFalse(connection.isClosed());
+            }
+         }
+
+         assertEquals(0, pool.tenantQuotas.getTrackedTenants());
+      }
+   }
+
+   @Test
+   public void testTenantUsageRecorded() throws Exception {
+      ConcurrentHashMap<String, Long> usage = new ConcurrentHashMap<>();
+
+      HikariConfig config = config("a=1");
+      config.setMetricsTrackerFactory((poolName, poolStats) -> new IMetricsTracker() {
+         @Override
+         public void recordTenantUsageMillis(String tenant, long elapsedBorrowedMillis) {
+            usage.put(tenant, elapsedBorrowedMillis);
+         }
+      });
+
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         try (Connection connection = ds.getConnection("a")) {
+            sleep(100);
+         }
+
+         assertTrue("Usage was " + usage.get("a"), usage.get("a") >= 90);
+      }
+   }
+
+   @Test
+   public void testPermitsFollowMaximumPoolSize() throws Exception {
+      TenantQuotas quotas = new TenantQuotas("a=1", 1);
+      TenantQuotas.Tenant first = quotas.acquire("a", 100);
+      assertNotNull(first);
+      assertNull("Expected timeout, one permit", quotas.acquire("b", 100));
+
+      CompletableFuture<TenantQuotas.Tenant> waiter = CompletableFuture.supplyAsync(() -> {
+         try {
+            return quotas.acquire("b", 2_000);
+         } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+         }
+      });
+      sleep(100);
+      quotas.setPermits(2);
+      assertNotNull(waiter.get(1, TimeUnit.SECONDS));
+      assertEquals(1, quotas.getInUse("b"));
+
+      // shrinking withdraws permits as they are released
+      quotas.setPermits(1);
+      quotas.release(first);
+      assertNull(quotas.acquire("a", 100));
+   }
+
+   @Test
+   public void testInvalidQuotas() {
+      for (String quotas : new String[]{"a", "a=0", "a=1,", "a=x"}) {
+         try {
+            config(quotas).validate();
+            fail("Expected IllegalArgumentException for " + quotas);
+         } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("tenantQuotas"));
+         }
+      }
+   }
+
+   private static Connection borrow(final HikariDataSource ds, final String tenantId) {
+      try {
+         return ds.getConnection(tenantId);
+      } catch (SQLException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   private static HikariConfig config(final String tenantQuotas) {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(4);
+      config.setMaximumPoolSize(4);
+      config.setConnectionTimeout(250);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      config.setTenantQuotas(tenantQuotas);
+      return config;
+   }
+}
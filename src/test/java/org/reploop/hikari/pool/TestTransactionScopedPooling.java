@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.mocks.StubConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestTransactionScopedPooling {
+   private static HikariConfig newConfig() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(2);
+      config.setConnectionTimeout(1000);
+      config.setTransactionScopedPooling(true);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+
+   @Test
+   public void testManyLogicalConnections() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(newConfig())) {
+         HikariPool pool = getPool(ds);
+
+         List<Connection> connections = new ArrayList<>();
+         for (int i = 0; i < 50; i++) {
+            connections.add(ds.getConnection());
+         }
+         assertEquals(0, pool.getActiveConnections());
+
+         for (Connection connection : connections) {
+            try (Statement statement = connection.createStatement()) {
+               statement.execute("INSERT 1");
+               assertEquals(1, pool.getActiveConnections());
+            }
+            assertEquals(0, pool.getActiveConnections());
+         }
+
+         for (Connection connection : connections) {
+            connection.close();
+            assertTrue(connection.isClosed());
+         }
+         assertTrue(pool.getTotalConnections() <= 2);
+      }
+   }
+
+   @Test
+   public void testTransactionHoldsConnection() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(newConfig())) {
+         HikariPool pool = getPool(ds);
+
+         try (Connection connection = ds.getConnection()) {
+            connection.setAutoCommit(false);
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            assertEquals(0, pool.getActiveConnections());
+
+            Statement statement = connection.createStatement();
+            statement.execute("INSERT 1");
+            statement.close();
+            assertEquals(1, pool.getActiveConnections());
+
+            StubConnection physical = connection.unwrap(StubConnection.class);
+            assertFalse(physical.getAutoCommit());
+            assertEquals(Connection.TRANSACTION_SERIALIZABLE, physical.getTransactionIsolation());
+
+            connection.commit();
+            assertEquals(0, pool.getActiveConnections());
+            assertTrue(physical.getAutoCommit());
+            assertFalse(connection.getAutoCommit());
+
+            try (Statement again = connection.createStatement()) {
+               again.execute("INSERT 2");
+               assertEquals(1, pool.getActiveConnections());
+            }
+            connection.rollback();
+            assertEquals(0, pool.getActiveConnections());
+         }
+
+         assertEquals(0, pool.getActiveConnections());
+      }
+   }
+
+   @Test
+   public void testPreparedStatementAcrossTransactions() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(newConfig())) {
+         HikariPool pool = getPool(ds);
+
+         try (Connection connection = ds.getConnection()) {
+            connection.setAutoCommit(false);
+
+            PreparedStatement statement = connection.prepareStatement("INSERT ?");
+            statement.setInt(1, 1);
+            statement.executeUpdate();
+            StubConnection physical = connection.unwrap(StubConnection.class);
+            connection.commit();
+
+            // the open statement keeps its physical connection through the commit
+            assertEquals(1, pool.getActiveConnections());
+            assertFalse(statement.isClosed());
+
+            statement.setInt(1, 2);
+            statement.executeUpdate();
+            assertSame(physical, connection.unwrap(StubConnection.class));
+            connection.rollback();
+            assertEquals(1, pool.getActiveConnections());
+
+            statement.close();
+            assertEquals(0, pool.getActiveConnections());
+
+            try (Statement again = connection.createStatement()) {
+               again.execute("INSERT 3");
+               assertEquals(1, pool.getActiveConnections());
+
+               // closing the last statement inside a transaction does not end it
+               again.close();
+               assertEquals(1, pool.getActiveConnections());
+            }
+            connection.commit();
+            assertEquals(0, pool.getActiveConnections());
+         }
+      }
+   }
+
+   @Test
+   public void testAutoCommitCallsReleaseConnection() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(newConfig())) {
+         HikariPool pool = getPool(ds);
+
+         try (Connection connection = ds.getConnection()) {
+            assertTrue(connection.isValid(1));
+            connection.getMetaData();
+            connection.nativeSQL("SELECT 1");
+            assertEquals(0, pool.getActiveConnections());
+
+            connection.setCatalog("other");
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            connection.setNetworkTimeout(null, 5_000);
+            assertEquals("other", connection.getCatalog());
+            assertEquals(Connection.TRANSACTION_SERIALIZABLE, connection.getTransactionIsolation());
+            assertEquals(5_000, connection.getNetworkTimeout());
+            assertEquals(0, pool.getActiveConnections());
+            assertEquals(1, pool.getIdleConnections());
+         }
+      }
+   }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.time.LocalTime;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestWarmStart {
+   @Test
+   public void testPrefillToPredictedDemand() throws Exception {
+      Path profile = Files.createTempFile("hikari", ".profile");
+      try {
+         Properties properties = new Properties();
+         for (int hour = 0; hour < 24; hour++) {
+            properties.setProperty(String.format("hour.%02d", hour), hour % 2 == 0 ? "6" : "7");
+         }
+         try (Writer writer = Files.newBufferedWriter(profile)) {
+            properties.store(writer, null);
+         }
+
+         HikariConfig config = config(profile);
+         config.setMaximumPoolSize(6);
+
+         try (HikariDataSource ds = new HikariDataSource(config)) {
+            HikariPool pool = getPool(ds);
+            assertEquals("Pool should be pre-filled to the predicted demand, capped at maximumPoolSize", 6, pool.getTotalConnections());
+         }
+      } finally {
+         Files.deleteIfExists(profile);
+      }
+   }
+
+   @Test
+   public void testProfileRecordedOnShutdown() throws Exception {
+      Path dir = Files.createTempDirectory("hikari-profile");
+      Path profile = dir.resolve("pool.profile");
+      try {
+         try (HikariDataSource ds = new HikariDataSource(config(profile))) {
+            HikariPool pool = getPool(ds);
+            assertEquals("Pool should start cold without a profile", 1, pool.getTotalConnections());
+
+            try (Connection c1 = ds.getConnection();
+                 Connection c2 = ds.getConnection();
+                 Connection c3 = ds.getConnection()) {
+               assertEquals(3, pool.getActiveConnections());
+            }
+         }
+
+         assertTrue(Files.exists(profile));
+         Properties properties = new Properties();
+         try (Reader reader = Files.newBufferedReader(profile)) {
+            properties.load(reader);
+         }
+
+         int peak = 0;
+         for (int hour = 0; hour < 24; hour++) {
+            peak = Math.max(peak, Integer.parseInt(properties.getProperty(String.format("hour.%02d", hour))));
+         }
+         assertTrue("Observed peak demand should be recorded, was " + peak, peak >= 2);
+
+         int predicted = Integer.parseInt(properties.getProperty(String.format("hour.%02d", LocalTime.now().getHour())));
+         try (HikariDataSource ds = new HikariDataSource(config(profile))) {
+            assertTrue(getPool(ds).getTotalConnections() >= predicted);
+         }
+      } finally {
+         Files.deleteIfExists(profile);
+         Files.deleteIfExists(dir);
+      }
+   }
+
+   @Test
+   public void testUnobservedHoursKept() throws Exception {
+      Path profile = Files.createTempFile("hikari", ".profile");
+      try {
+         Properties properties = new Properties();
+         for (int hour = 0; hour < 24; hour++) {
+            properties.setProperty(String.format("hour.%02d", hour), "8");
+         }
+         try (Writer writer = Files.newBufferedWriter(profile)) {
+            properties.store(writer, null);
+         }
+
+         // two restarts without observing any hour
+         new WarmStartProfile(profile.toString(), "test").save();
+         new WarmStartProfile(profile.toString(), "test").save();
+         for (int hour = 0; hour < 24; hour++) {
+            assertEquals(8, new WarmStartProfile(profile.toString(), "test").predict(LocalTime.of(hour, 0)));
+         }
+
+         WarmStartProfile observed = new WarmStartProfile(profile.toString(), "test");
+         int hour = LocalTime.now().getHour();
+         observed.recordDemand(0);
+         observed.save();
+
+         WarmStartProfile reloaded = new WarmStartProfile(profile.toString(), "test");
+         for (int h = 0; h < 24; h++) {
+            if (h != hour && h != (hour + 1) % 24) {
+               assertEquals("Unobserved hour " + h + " should be kept", 8, reloaded.predict(LocalTime.of(h, 0)));
+            }
+         }
+         // recorded in this hour, or the next one if the clock just rolled over
+         assertEquals(8 + 6, reloaded.predict(LocalTime.of(hour, 0)) + reloaded.predict(LocalTime.of((hour + 1) % 24, 0)));
+      } finally {
+         Files.deleteIfExists(profile);
+      }
+   }
+
+   @Test
+   public void testPeakOfOneDecays() throws Exception {
+      Path profile = Files.createTempFile("hikari", ".profile");
+      try {
+         Properties properties = new Properties();
+         for (int hour = 0; hour < 24; hour++) {
+            properties.setProperty(String.format("hour.%02d", hour), "1");
+         }
+         try (Writer writer = Files.newBufferedWriter(profile)) {
+            properties.store(writer, null);
+         }
+
+         WarmStartProfile observed = new WarmStartProfile(profile.toString(), "test");
+         int hour = LocalTime.now().getHour();
+         observed.recordDemand(0);
+         observed.save();
+
+         WarmStartProfile reloaded = new WarmStartProfile(profile.toString(), "test");
+         assertEquals(1, reloaded.predict(LocalTime.of(hour, 0)) + reloaded.predict(LocalTime.of((hour + 1) % 24, 0)));
+      } finally {
+         Files.deleteIfExists(profile);
+      }
+   }
+
+   private static HikariConfig config(final Path profile) {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(10);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      config.setWarmStartProfile(profile.toString());
+      return config;
+   }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.util.ConcurrentBag;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.reploop.hikari.pool.TestElf.getPool;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TestZeroAllocation {
+   private static final int CYCLES = 20_000;
+
+   private com.sun.management.ThreadMXBean threadMXBean;
+
+   @Before
+   public void setup() {
+      Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+      threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+   }
+
+   @Test
+   public void testWeakThreadLocalRequiteAllocatesNothing() throws Exception {
+      System.setProperty("org.reploop.hikari.useWeakReferences", "true");
+      try (HikariDataSource ds = new HikariDataSource(config());
+           ConcurrentBag<PoolEntry> bag = new ConcurrentBag<>((x) -> CompletableFuture.completedFuture(Boolean.TRUE))) {
+         PoolEntry entry = getPool(ds).newPoolEntry();
+         bag.add(entry);
+         borrowAndRequite(bag, entry, CYCLES); // warm up
+
+         final long threadId = Thread.currentThread().getId();
+         threadMXBean.getThreadAllocatedBytes(threadId);
+         final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+         borrowAndRequite(bag, entry, CYCLES);
+         final long bytes = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+         // a WeakReference per requite would be at least 32 bytes per cycle
+         assertTrue("Allocated " + bytes + " bytes in " + CYCLES + " borrow/requite cycles", bytes <= 1024);
+      }
+      finally {
+         System.clearProperty("org.reploop.hikari.useWeakReferences");
+      }
+   }
+
+   @Test
+   public void testEachBorrowGetsItsOwnProxy() throws Exception {
+      try (HikariDataSource ds = new HikariDataSource(config())) {
+         HikariPool pool = getPool(ds);
+         Connection first = ds.getConnection();
+         first.close();
+
+         try (Connection second = ds.getConnection()) {
+            assertNotSame(first, second);
+
+            // try-with-resources after an explicit close must not return the next borrower's connection
+            first.close();
+            assertTrue(first.isClosed());
+            assertFalse(second.isClosed());
+            assertEquals(1, pool.getActiveConnections());
+         }
+
+         assertEquals(0, pool.getActiveConnections());
+         assertEquals(1, pool.getIdleConnections());
+      }
+   }
+
+   private static void borrowAndRequite(final ConcurrentBag<PoolEntry> bag, final PoolEntry entry, final int cycles) throws InterruptedException {
+      for (int i = 0; i < cycles; i++) {
+         assertSame(entry, bag.borrow(100, MILLISECONDS));
+         bag.requite(entry);
+      }
+   }
+
+   private static HikariConfig config() {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(1);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
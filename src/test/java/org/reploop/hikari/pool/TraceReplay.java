@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+import org.reploop.hikari.HikariPoolMXBean;
+import org.reploop.hikari.util.UtilityElf.DefaultThreadFactory;
+
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Replays a workload recorded by {@link TraceRecorder} against a pool backed by the stub driver.  Each
+ * borrow/return pair in the trace becomes a request that arrives at the same offset from the start of the
+ * trace as the original request (the borrow time minus its wait) and holds its connection for the same time,
+ * so a saturation incident can be reproduced locally with different pool settings.
+ *
+ * @author Brett Wooldridge
+ */
+public final class TraceReplay {
+   private final Supplier<HikariConfig> configSupplier;
+   private double speed = 1.0;
+   private long sampleIntervalMs = 10;
+
+   /**
+    * Construct a TraceReplay.
+    *
+    * @param configSupplier supplies a fresh, unsealed configuration for each replay
+    */
+   public TraceReplay(final Supplier<HikariConfig> configSupplier) {
+      this.configSupplier = configSupplier;
+   }
+
+   /**
+    * Set the replay speed, 2.0 replays the trace in half the time with half the hold times.
+    *
+    * @param speed the speed factor
+    */
+   public void setSpeed(final double speed) {
+      this.speed = speed;
+   }
+
+   public void setSampleIntervalMs(final long sampleIntervalMs) {
+      this.sampleIntervalMs = sampleIntervalMs;
+   }
+
+   /**
+    * Extract the requests of a trace by pairing each borrow with the following return of the same connection.
+    * Borrows without a return, for example those still in progress when the trace ended, are dropped.
+    *
+    * @param events the events of a trace, ordered by sequence
+    * @return the requests ordered by arrival time
+    */
+   public static List<Request> requests(final List<TraceRecorder.Event> events) {
+      final Map<Integer, TraceRecorder.Event> borrowed = new HashMap<>();
+      final List<Request> requests = new ArrayList<>();
+      for (TraceRecorder.Event event : events) {
+         if (event.type == TraceRecorder.BORROW) {
+            borrowed.put(event.connectionId, event);
+         } else if (event.type == TraceRecorder.RETURN) {
+            final TraceRecorder.Event borrow = borrowed.remove(event.connectionId);
+            if (borrow != null) {
+               requests.add(new Request(borrow.nanoTime - borrow.value, event.value));
+            }
+         }
+      }
+
+      requests.sort((r1, r2) -> Long.compare(r1.arrivalNanos, r2.arrivalNanos));
+      return Collections.unmodifiableList(requests);
+   }
+
+   /**
+    * Replay the requests against a new pool.
+    *
+    * @param requests the requests ordered by arrival time
+    * @return the result, where the thread count is the peak number of concurrently outstanding requests of the trace
+    */
+   public LoadSimulator.Result replay(final List<Request> requests) throws InterruptedException {
+      final HikariConfig config = configSupplier.get();
+      final long[] acquireNanos = new long[requests.size()];
+      final AtomicLong operations = new AtomicLong();
+      final AtomicLong timeouts = new AtomicLong();
+      final AtomicLong failures = new AtomicLong();
+      final List<LoadSimulator.Sample> trajectory = Collections.synchronizedList(new ArrayList<>());
+
+      final ExecutorService borrowers = Executors.newCachedThreadPool(new DefaultThreadFactory("replay borrower", true));
+      final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("replay sampler", true));
+      try (HikariDataSource ds = new HikariDataSource(config)) {
+         final HikariPoolMXBean pool = ds.getHikariPoolMXBean();
+         final long base = requests.isEmpty() ? 0L : requests.get(0).arrivalNanos;
+         final long startNanos = System.nanoTime();
+         sampler.scheduleAtFixedRate(() -> trajectory.add(LoadSimulator.Sample.of(pool, System.nanoTime() - startNanos)),
+            0, sampleIntervalMs, MILLISECONDS);
+
+         for (int i = 0; i < requests.size(); i++) {
+            final Request request = requests.get(i);
+            final long delay = startNanos + (long) ((request.arrivalNanos - base) / speed) - System.nanoTime();
+            if (delay > 0) {
+               LockSupport.parkNanos(delay);
+            }
+
+            final int index = i;
+            final long holdNanos = (long) (request.holdNanos / speed);
+            borrowers.execute(() -> {
+               final long start = System.nanoTime();
+               try (Connection ignored = ds.getConnection()) {
+                  acquireNanos[index] = System.nanoTime() - start;
+                  LockSupport.parkNanos(holdNanos);
+                  operations.incrementAndGet();
+               } catch (SQLTransientConnectionException e) {
+                  acquireNanos[index] = -1L;
+                  timeouts.incrementAndGet();
+               } catch (SQLException e) {
+                  acquireNanos[index] = -1L;
+                  failures.incrementAndGet();
+               }
+            });
+         }
+
+         borrowers.shutdown();
+         borrowers.awaitTermination(10, MINUTES);
+         final long elapsedNanos = System.nanoTime() - startNanos;
+
+         sampler.shutdown();
+         sampler.awaitTermination(1, MINUTES);
+
+         final long[] acquired = new long[(int) operations.get()];
+         int n = 0;
+         for (long nanos : acquireNanos) {
+            if (nanos >= 0 && n < acquired.length) {
+               acquired[n++] = nanos;
+            }
+         }
+
+         return new LoadSimulator.Result(peakConcurrency(requests), elapsedNanos, operations.get(), timeouts.get(), failures.get(),
+            acquired, new ArrayList<>(trajectory));
+      } finally {
+         borrowers.shutdownNow();
+         sampler.shutdownNow();
+      }
+   }
+
+   private static int peakConcurrency(final List<Request> requests) {
+      final PriorityQueue<Long> releases = new PriorityQueue<>();
+      int peak = 0;
+      for (Request request : requests) {
+         while (!releases.isEmpty() && releases.peek() <= request.arrivalNanos) {
+            releases.poll();
+         }
+         releases.add(request.arrivalNanos + request.holdNanos);
+         peak = Math.max(peak, releases.size());
+      }
+      return peak;
+   }
+
+   /**
+    * Replay a trace file against a stub driver pool and write summary.csv and trajectory.csv.
+    * <p>
+    * Arguments: traceFile [maximumPoolSize (default 10)] [speed (default 1.0)] [outputDir (default target/trace-replay)]
+    */
+   public static void main(String[] args) throws Exception {
+      if (args.length < 1) {
+         System.err.println("usage: TraceReplay traceFile [maximumPoolSize] [speed] [outputDir]");
+         return;
+      }
+
+      final List<Request> requests = requests(TraceRecorder.read(Paths.get(args[0])));
+      final int maximumPoolSize = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+      final Path dir = Paths.get(args.length > 3 ? args[3] : "target/trace-replay");
+      Files.createDirectories(dir);
+
+      final TraceReplay replay = new TraceReplay(() -> {
+         final HikariConfig config = new HikariConfig();
+         config.setPoolName("replay");
+         config.setMaximumPoolSize(maximumPoolSize);
+         config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+         return config;
+      });
+      if (args.length > 2) {
+         replay.setSpeed(Double.parseDouble(args[2]));
+      }
+
+      final List<LoadSimulator.Result> results = Collections.singletonList(replay.replay(requests));
+      try (Writer out = Files.newBufferedWriter(dir.resolve("summary.csv"))) {
+         LoadSimulator.writeSummary(results, out);
+      }
+      try (Writer out = Files.newBufferedWriter(dir.resolve("trajectory.csv"))) {
+         LoadSimulator.writeTrajectories(results, out);
+      }
+   }
+
+   /**
+    * A request reconstructed from a trace.
+    */
+   public static final class Request {
+      final long arrivalNanos;
+      final long holdNanos;
+
+      Request(final long arrivalNanos, final long holdNanos) {
+         this.arrivalNanos = arrivalNanos;
+         this.holdNanos = holdNanos;
+      }
+
+      public long getArrivalNanos() {
+         return arrivalNanos;
+      }
+
+      public long getHoldNanos() {
+         return holdNanos;
+      }
+   }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2013, 2014 Brett Wooldridge
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.reploop.hikari.pool;
+
+import org.junit.Test;
+import org.reploop.hikari.HikariConfig;
+import org.reploop.hikari.HikariDataSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.List;
+
+import static java.lang.Thread.sleep;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.reploop.hikari.pool.TestElf.newHikariConfig;
+
+public class TraceReplayTest {
+   @Test
+   public void testRingWraparound() throws Exception {
+      Path file = Files.createTempFile("hikari", ".trace");
+      try {
+         try (TraceRecorder recorder = new TraceRecorder(file, 4)) {
+            for (int i = 0; i < 10; i++) {
+               recorder.record(TraceRecorder.BORROW, this, i);
+            }
+         }
+
+         List<TraceRecorder.Event> events = TraceRecorder.read(file);
+         assertEquals(4, events.size());
+         for (int i = 0; i < 4; i++) {
+            assertEquals(7 + i, events.get(i).sequence);
+            assertEquals(6 + i, events.get(i).value);
+            assertEquals(Thread.currentThread().getId(), events.get(i).threadId);
+         }
+      } finally {
+         Files.deleteIfExists(file);
+      }
+   }
+
+   @Test
+   public void testRecordAndReplay() throws Exception {
+      Path dir = Files.createTempDirectory("hikari-trace");
+      Path file = dir.resolve("testRecordAndReplay.trace");
+
+      HikariConfig config = config(2);
+      config.setPoolName("testRecordAndReplay");
+
+      System.setProperty("org.reploop.hikari.traceDir", dir.toString());
+      try {
+         try (HikariDataSource ds = new HikariDataSource(config)) {
+            for (int i = 0; i < 5; i++) {
+               try (Connection connection = ds.getConnection()) {
+                  sleep(20);
+               }
+            }
+         }
+      } finally {
+         System.clearProperty("org.reploop.hikari.traceDir");
+      }
+
+      try {
+         List<TraceRecorder.Event> events = TraceRecorder.read(file);
+         assertTrue(events.stream().anyMatch(e -> e.type == TraceRecorder.CREATE));
+         assertTrue(events.stream().anyMatch(e -> e.type == TraceRecorder.EVICT));
+         assertEquals(5, events.stream().filter(e -> e.type == TraceRecorder.BORROW).count());
+         assertEquals(5, events.stream().filter(e -> e.type == TraceRecorder.RETURN).count());
+
+         List<TraceReplay.Request> requests = TraceReplay.requests(events);
+         assertEquals(5, requests.size());
+         for (TraceReplay.Request request : requests) {
+            assertTrue(request.getHoldNanos() >= 15_000_000L);
+         }
+
+         TraceReplay replay = new TraceReplay(() -> config(1));
+         replay.setSpeed(2.0);
+         LoadSimulator.Result result = replay.replay(requests);
+         assertEquals(5, result.getOperations());
+         assertEquals(0, result.getTimeouts());
+         assertEquals(1, result.getThreads());
+      } finally {
+         Files.deleteIfExists(file);
+         Files.deleteIfExists(dir);
+      }
+   }
+
+   private static HikariConfig config(final int maxPoolSize) {
+      HikariConfig config = newHikariConfig();
+      config.setMinimumIdle(1);
+      config.setMaximumPoolSize(maxPoolSize);
+      config.setConnectionTestQuery("VALUES 1");
+      config.setDataSourceClassName("org.reploop.hikari.mocks.StubDataSource");
+      return config;
+   }
+}
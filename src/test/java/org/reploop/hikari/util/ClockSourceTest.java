@@ -48,4 +48,32 @@ public class ClockSourceTest {
       String ds3 = nsSource.elapsedDisplayString0(sTime2, eTime3);
       Assert.assertEquals("1d10h31m5s204ms676µs159ns", ds3);
    }
+
+   @Test
+   public void testCoarseClockSource() throws InterruptedException {
+      ClockSource nsSource = new ClockSource.NanosecondClockSource();
+      try (ClockSource.CoarseClockSource coarseSource = new ClockSource.CoarseClockSource(nsSource, 1)) {
+         final long start = coarseSource.currentTime0();
+         Assert.assertTrue(start <= nsSource.currentTime0());
+
+         Thread.sleep(50);
+
+         final long later = coarseSource.currentTime0();
+         Assert.assertTrue("Coarse clock did not advance", nsSource.elapsedMillis0(start, later) >= 25);
+         Assert.assertTrue("Coarse clock ran ahead", later <= nsSource.currentTime0());
+         Assert.assertEquals(NANOSECONDS, coarseSource.getSourceTimeUnit0());
+      }
+   }
+
+   @Test
+   public void testCoarseClockSourceClose() throws InterruptedException {
+      ClockSource nsSource = new ClockSource.NanosecondClockSource();
+      ClockSource.CoarseClockSource coarseSource = new ClockSource.CoarseClockSource(nsSource, 1);
+      coarseSource.close();
+      Thread.sleep(20);
+
+      final long stopped = coarseSource.currentTime0();
+      Thread.sleep(20);
+      Assert.assertEquals("Coarse clock advanced after close", stopped, coarseSource.currentTime0());
+   }
 }
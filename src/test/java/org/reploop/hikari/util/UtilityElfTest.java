@@ -0,0 +1,15 @@
+package org.reploop.hikari.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class UtilityElfTest {
+   @Test
+   public void maskJdbcUrls() {
+      assertEquals("jdbc:stub://primary/db?user=app&password=<masked>&ssl=true jdbc:stub://replica/db;password=<masked>;user=app",
+         UtilityElf.maskJdbcUrls(" jdbc:stub://primary/db?user=app&password=secret1&ssl=true\n\tjdbc:stub://replica/db;password=secret2;user=app "));
+      assertEquals("jdbc:stub://host/db?password=<masked>", UtilityElf.maskJdbcUrls("jdbc:stub://host/db?password=secret"));
+      assertEquals("jdbc:stub://host/db", UtilityElf.maskJdbcUrls("jdbc:stub://host/db"));
+   }
+}